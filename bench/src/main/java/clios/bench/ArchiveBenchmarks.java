@@ -0,0 +1,95 @@
+package clios.bench;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * zip -r/unzip against pack/unpack over many small files, mixed
+ * compressible/incompressible data and near-identical build outputs. The
+ * archive sizes of both formats are printed at the end of each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ArchiveBenchmarks {
+    @Param("1")
+    public int scale;
+
+    @Param({Fixtures.SMALL, Fixtures.MIXED, Fixtures.BUILDS})
+    public String tree;
+
+    private Path root;
+    private MethodHandle zip;
+    private MethodHandle unzip;
+    private MethodHandle pack;
+    private MethodHandle unpack;
+    private String archive;
+    private String packed;
+
+    @Setup
+    public void setup() throws Throwable {
+        root = Fixtures.prepare(scale);
+        TerminalDriver terminal = new TerminalDriver(root);
+        zip = terminal.command("zip");
+        unzip = terminal.command("unzip");
+        pack = terminal.command("pack");
+        unpack = terminal.command("unpack");
+        archive = "out/" + tree + "-fixture.zip";
+        packed = "out/" + tree + "-fixture.pack";
+        Files.createDirectories(root.resolve("out"));
+        zip.invokeExact(new String[]{"-r", archive, tree});
+        pack.invokeExact(new String[]{packed, tree});
+    }
+
+    @TearDown
+    public void clean() throws IOException {
+        System.out.printf("%n%s: zip %,d bytes, pack %,d bytes%n", tree,
+                Files.size(root.resolve(archive)), Files.size(root.resolve(packed)));
+        Fixtures.delete(root.resolve("out"));
+    }
+
+    @TearDown(Level.Iteration)
+    public void cleanExtracted() throws IOException {
+        Fixtures.delete(root.resolve("out").resolve("extracted"));
+    }
+
+    @Benchmark
+    public void zipTree() throws Throwable {
+        zip.invokeExact(new String[]{"-r", "out/" + tree + ".zip", tree});
+    }
+
+    @Benchmark
+    public void unzipTree() throws Throwable {
+        unzip.invokeExact(new String[]{archive, "-d", "out/extracted"});
+    }
+
+    @Benchmark
+    public void packTree() throws Throwable {
+        pack.invokeExact(new String[]{"out/" + tree + ".pack", tree});
+    }
+
+    @Benchmark
+    public void unpackTree() throws Throwable {
+        unpack.invokeExact(new String[]{packed, "-d", "out/extracted"});
+    }
+}
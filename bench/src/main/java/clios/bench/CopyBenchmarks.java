@@ -0,0 +1,61 @@
+package clios.bench;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** cp of one large file and cp -r of the small-file and deep trees. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CopyBenchmarks {
+    @Param("1")
+    public int scale;
+
+    private Path root;
+    private MethodHandle cp;
+
+    @Setup
+    public void setup() {
+        root = Fixtures.prepare(scale);
+        cp = new TerminalDriver(root).command("cp");
+    }
+
+    @TearDown(Level.Iteration)
+    public void clean() throws IOException {
+        Fixtures.delete(root.resolve("out"));
+    }
+
+    @Benchmark
+    public void copyLargeFile() throws Throwable {
+        cp.invokeExact(new String[]{Fixtures.RANDOM, "out.bin"});
+    }
+
+    @Benchmark
+    public void copySmallFileTree() throws Throwable {
+        cp.invokeExact(new String[]{"-r", Fixtures.SMALL, "out/small"});
+    }
+
+    @Benchmark
+    public void copyDeepTree() throws Throwable {
+        cp.invokeExact(new String[]{"-r", Fixtures.DEEP, "out/deep"});
+    }
+}
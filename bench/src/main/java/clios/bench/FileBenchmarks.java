@@ -0,0 +1,77 @@
+package clios.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Single-file readers: wc, cat and grep over the large text and random files. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileBenchmarks {
+    @Param("1")
+    public int scale;
+
+    private MethodHandle wc;
+    private MethodHandle cat;
+    private MethodHandle grep;
+
+    @Setup
+    public void setup() {
+        Path root = Fixtures.prepare(scale);
+        TerminalDriver terminal = new TerminalDriver(root);
+        wc = terminal.command("wc");
+        cat = terminal.command("cat");
+        grep = terminal.command("grep");
+    }
+
+    @Benchmark
+    public void wcText() throws Throwable {
+        wc.invokeExact(new String[]{Fixtures.LARGE_TEXT});
+    }
+
+    @Benchmark
+    public void wcRandom() throws Throwable {
+        wc.invokeExact(new String[]{Fixtures.RANDOM});
+    }
+
+    @Benchmark
+    public void catText() throws Throwable {
+        cat.invokeExact(new String[]{Fixtures.LARGE_TEXT});
+    }
+
+    @Benchmark
+    public void grepLiteral() throws Throwable {
+        grep.invokeExact(new String[]{"-c", "rollback commit", Fixtures.LARGE_TEXT});
+    }
+
+    @Benchmark
+    public void grepLiteralIgnoreCase() throws Throwable {
+        grep.invokeExact(new String[]{"-c", "-i", "ROLLBACK COMMIT", Fixtures.LARGE_TEXT});
+    }
+
+    @Benchmark
+    public void grepRegex() throws Throwable {
+        grep.invokeExact(new String[]{"-c", "time(out|r) (hit|miss)", Fixtures.LARGE_TEXT});
+    }
+
+    @Benchmark
+    public void grepRecursive() throws Throwable {
+        grep.invokeExact(new String[]{"-r", "-c", "latency", Fixtures.SMALL});
+    }
+}
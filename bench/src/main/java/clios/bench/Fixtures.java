@@ -0,0 +1,173 @@
+package clios.bench;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Random;
+
+/**
+ * Synthetic inputs shared by all benchmarks. Everything is generated from a
+ * fixed seed under {@code clios.bench.dir} (default: a folder in java.io.tmpdir)
+ * and reused by later forks and runs; a marker file records that generation
+ * finished, and is renamed whenever the set of fixtures changes.
+ *
+ * <ul>
+ *   <li>{@code large.txt}: one large text file (words and newlines)</li>
+ *   <li>{@code random.bin}: one large incompressible file</li>
+ *   <li>{@code wide/}: a single directory with many entries</li>
+ *   <li>{@code deep/}: a chain of nested directories with a few files per level</li>
+ *   <li>{@code small/}: many small text files spread over 100 directories</li>
+ *   <li>{@code mixed/}: compressible and incompressible files of varying sizes</li>
+ *   <li>{@code builds/}: successive "build outputs", each a lightly edited copy of the previous one</li>
+ * </ul>
+ */
+public final class Fixtures {
+    public static final String LARGE_TEXT = "large.txt";
+    public static final String RANDOM = "random.bin";
+    public static final String WIDE = "wide";
+    public static final String DEEP = "deep";
+    public static final String SMALL = "small";
+    public static final String MIXED = "mixed";
+    public static final String BUILDS = "builds";
+
+    private static final String[] WORDS = {
+            "error", "warning", "info", "debug", "request", "response", "latency", "thread",
+            "socket", "timeout", "cache", "miss", "hit", "flush", "commit", "rollback"};
+
+    private Fixtures() {
+    }
+
+    /** Returns the fixture root for the given scale, generating it on first use. */
+    public static synchronized Path prepare(int scale) {
+        Path root = Paths.get(System.getProperty("clios.bench.dir",
+                Paths.get(System.getProperty("java.io.tmpdir"), "clios-bench").toString()), "scale-" + scale);
+        Path marker = root.resolve(".complete-2");
+        if (Files.exists(marker)) {
+            return root;
+        }
+        try {
+            delete(root);
+            Files.createDirectories(root);
+            Random random = new Random(42);
+            writeText(root.resolve(LARGE_TEXT), 64L * scale << 20, random);
+            writeRandom(root.resolve(RANDOM), 64L * scale << 20, random);
+            Files.createDirectories(root.resolve(WIDE));
+            for (int i = 0; i < 10_000 * scale; i++) {
+                Files.write(root.resolve(WIDE).resolve("entry-" + i + ".txt"), new byte[i % 512]);
+            }
+            Path level = root.resolve(DEEP);
+            for (int depth = 0; depth < 64; depth++) {
+                level = level.resolve("d" + depth);
+                Files.createDirectories(level);
+                for (int f = 0; f < 4 * scale; f++) {
+                    writeText(level.resolve("f" + f + ".txt"), 4096, random);
+                }
+            }
+            for (int i = 0; i < 20_000 * scale; i++) {
+                writeText(root.resolve(SMALL).resolve("dir" + i % 100).resolve("file" + i + ".txt"),
+                        256 + random.nextInt(4096), random);
+            }
+            for (int i = 0; i < 64; i++) {
+                long size = (1L << (10 + i % 14)) * scale;
+                Path file = root.resolve(MIXED).resolve("part" + i + (i % 2 == 0 ? ".txt" : ".bin"));
+                if (i % 2 == 0) {
+                    writeText(file, size, random);
+                } else {
+                    writeRandom(file, size, random);
+                }
+            }
+            writeBuilds(root.resolve(BUILDS), scale, random);
+            Files.createFile(marker);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return root;
+    }
+
+    private static void writeText(Path file, long size, Random random) throws IOException {
+        Files.createDirectories(file.getParent());
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+            long written = 0;
+            int column = 0;
+            while (written < size) {
+                byte[] word = WORDS[random.nextInt(WORDS.length)].getBytes(StandardCharsets.US_ASCII);
+                out.write(word);
+                column += word.length + 1;
+                int separator = column > 80 ? '\n' : ' ';
+                if (separator == '\n') {
+                    column = 0;
+                }
+                out.write(separator);
+                written += word.length + 1;
+            }
+        }
+    }
+
+    // Eight builds of 32 text files; each build inserts a few words at random
+    // places in every file of the previous one, shifting the rest of its bytes.
+    private static void writeBuilds(Path dir, int scale, Random random) throws IOException {
+        Path base = dir.resolve("base");
+        byte[][] files = new byte[32][];
+        for (int f = 0; f < files.length; f++) {
+            Path file = base.resolve("part" + f + ".txt");
+            writeText(file, (64L << 10) * scale, random);
+            files[f] = Files.readAllBytes(file);
+        }
+        Fixtures.delete(base);
+        for (int build = 0; build < 8; build++) {
+            for (int f = 0; f < files.length; f++) {
+                for (int edit = 0; edit < 4; edit++) {
+                    byte[] word = (WORDS[random.nextInt(WORDS.length)] + " ").getBytes(StandardCharsets.US_ASCII);
+                    int at = random.nextInt(files[f].length + 1);
+                    byte[] edited = new byte[files[f].length + word.length];
+                    System.arraycopy(files[f], 0, edited, 0, at);
+                    System.arraycopy(word, 0, edited, at, word.length);
+                    System.arraycopy(files[f], at, edited, at + word.length, files[f].length - at);
+                    files[f] = edited;
+                }
+                Path file = dir.resolve("build" + build).resolve("part" + f + ".txt");
+                Files.createDirectories(file.getParent());
+                Files.write(file, files[f]);
+            }
+        }
+    }
+
+    private static void writeRandom(Path file, long size, Random random) throws IOException {
+        Files.createDirectories(file.getParent());
+        byte[] block = new byte[1 << 16];
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (long written = 0; written < size; written += block.length) {
+                random.nextBytes(block);
+                out.write(block, 0, (int) Math.min(block.length, size - written));
+            }
+        }
+    }
+
+    /** Deletes a directory tree if it exists (benchmark outputs between iterations). */
+    public static void delete(Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
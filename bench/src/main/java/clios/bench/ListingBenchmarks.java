@@ -0,0 +1,62 @@
+package clios.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** ls over the wide directory (cached after the first call) and ls -R over the trees. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListingBenchmarks {
+    @Param("1")
+    public int scale;
+
+    private MethodHandle ls;
+
+    @Setup
+    public void setup() {
+        Path root = Fixtures.prepare(scale);
+        ls = new TerminalDriver(root).command("ls");
+    }
+
+    @Benchmark
+    public void listWide() throws Throwable {
+        ls.invokeExact(new String[]{Fixtures.WIDE});
+    }
+
+    @Benchmark
+    public void listWideLong() throws Throwable {
+        ls.invokeExact(new String[]{"-l", Fixtures.WIDE});
+    }
+
+    @Benchmark
+    public void listWideBySize() throws Throwable {
+        ls.invokeExact(new String[]{"-lS", Fixtures.WIDE});
+    }
+
+    @Benchmark
+    public void listDeepRecursive() throws Throwable {
+        ls.invokeExact(new String[]{"-R", Fixtures.DEEP});
+    }
+
+    @Benchmark
+    public void listSmallRecursiveLong() throws Throwable {
+        ls.invokeExact(new String[]{"-lR", Fixtures.SMALL});
+    }
+}
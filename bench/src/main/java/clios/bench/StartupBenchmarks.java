@@ -0,0 +1,140 @@
+package clios.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Start-up cost of the shell as scripts see it, one new process per
+ * invocation: {@code firstPrompt} times an interactive shell from launch to
+ * its first prompt, {@code oneCommandScript} a one-command {@code -f} script
+ * from launch to exit.
+ *
+ * <p>{@code launcher} selects what is started: {@code jvm} runs the shell jar,
+ * {@code appcds} runs it with the class archive from {@code mvn -Pappcds package}
+ * and {@code native} runs the executable from {@code mvn -Pnative package}.
+ * All three are looked up in {@code clios.shell.dir} (default {@code shell/target}).
+ *
+ * <pre>
+ *   java -jar bench/target/benchmarks.jar StartupBenchmarks -p launcher=jvm,appcds
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 30)
+@Fork(1)
+public class StartupBenchmarks {
+    @Param("jvm")
+    public String launcher;
+
+    private List<String> command;
+    private Path dir;
+    private Path script;
+    private Process shell;
+
+    @Setup
+    public void setup() throws IOException {
+        Path shellDir = Paths.get(System.getProperty("clios.shell.dir", "shell/target")).toAbsolutePath();
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        command = switch (launcher) {
+            case "jvm" -> List.of(java, "-jar", jar(shellDir));
+            case "appcds" -> List.of(java, "-XX:SharedArchiveFile=" + built(shellDir.resolve("clios.jsa"), "appcds"),
+                    "-jar", jar(shellDir));
+            case "native" -> List.of(built(shellDir.resolve("clios"), "native"));
+            default -> throw new IllegalArgumentException("Unknown launcher " + launcher);
+        };
+        dir = Files.createTempDirectory("clios-startup");
+        Files.writeString(dir.resolve("notes.txt"), "hello\n");
+        script = dir.resolve("script.txt");
+        Files.writeString(script, "ls\n");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(script);
+        Files.deleteIfExists(dir.resolve("notes.txt"));
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public void firstPrompt() throws IOException {
+        shell = new ProcessBuilder(command).directory(dir.toFile())
+                .redirectError(ProcessBuilder.Redirect.DISCARD).start();
+        InputStream out = shell.getInputStream();
+        byte[] prompt = "> ".getBytes(StandardCharsets.US_ASCII);
+        int matched = 0;
+        int b;
+        while ((b = out.read()) >= 0) {
+            matched = b == prompt[matched] ? matched + 1 : b == prompt[0] ? 1 : 0;
+            if (matched == prompt.length) {
+                return;
+            }
+        }
+        throw new IllegalStateException("The shell exited before its first prompt");
+    }
+
+    // Ends the interactive shell outside the measured time.
+    @TearDown(Level.Invocation)
+    public void closeShell() throws InterruptedException, IOException {
+        if (shell != null) {
+            shell.getOutputStream().close();
+            shell.waitFor();
+            shell = null;
+        }
+    }
+
+    @Benchmark
+    public int oneCommandScript() throws IOException, InterruptedException {
+        List<String> scriptCommand = new ArrayList<>(command);
+        scriptCommand.add("-f");
+        scriptCommand.add(script.toString());
+        Process process = new ProcessBuilder(scriptCommand).directory(dir.toFile())
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        int status = process.waitFor();
+        if (status != 0) {
+            throw new IllegalStateException("The script exited with status " + status);
+        }
+        return status;
+    }
+
+    private static String jar(Path shellDir) throws IOException {
+        try (DirectoryStream<Path> jars = Files.newDirectoryStream(shellDir, "clios-*.jar")) {
+            for (Path jar : jars) {
+                return jar.toString();
+            }
+        }
+        throw new IllegalStateException("No shell jar in " + shellDir + "; run mvn package first");
+    }
+
+    private static String built(Path artifact, String profile) {
+        if (!Files.exists(artifact)) {
+            throw new IllegalStateException(artifact + " is missing; build it with mvn -P" + profile + " package");
+        }
+        return artifact.toString();
+    }
+}
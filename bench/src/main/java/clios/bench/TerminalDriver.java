@@ -0,0 +1,75 @@
+package clios.bench;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Path;
+
+/**
+ * Calls the shell's commands from the benchmarks. {@code Terminal} lives in
+ * the unnamed package, which named packages can't import, so it is reached
+ * through method handles resolved once per benchmark trial. A command that
+ * exits with a non-zero status fails the benchmark instead of timing its
+ * error path.
+ */
+public final class TerminalDriver {
+    private static final Class<?> TERMINAL;
+    private static final MethodHandle CONSTRUCTOR;
+    private static final MethodHandle RUN;
+    private static final MethodHandle STATUS;
+    private static final MethodHandle CHECKED;
+
+    static {
+        try {
+            TERMINAL = Class.forName("Terminal");
+            CONSTRUCTOR = MethodHandles.publicLookup().findConstructor(TERMINAL,
+                    MethodType.methodType(void.class, Path.class, InputStream.class, PrintStream.class));
+            RUN = MethodHandles.publicLookup().findVirtual(TERMINAL, "chooseCommandAction",
+                    MethodType.methodType(void.class, String.class, String[].class));
+            STATUS = MethodHandles.publicLookup().findVirtual(TERMINAL, "getStatus", MethodType.methodType(int.class));
+            CHECKED = MethodHandles.lookup().findVirtual(TerminalDriver.class, "checked",
+                    MethodType.methodType(void.class, String.class, MethodHandle.class, String[].class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Object terminal;
+
+    public TerminalDriver(Path dir) {
+        try {
+            terminal = CONSTRUCTOR.invoke(dir, InputStream.nullInputStream(),
+                    new PrintStream(OutputStream.nullOutputStream()));
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Returns a {@code void (String[])} handle that runs one of the terminal's commands. */
+    public MethodHandle command(String name) {
+        MethodHandle command = MethodHandles.insertArguments(RUN.bindTo(terminal), 0, name);
+        return MethodHandles.insertArguments(CHECKED.bindTo(this), 0, name, command);
+    }
+
+    private void checked(String name, MethodHandle command, String[] args) throws Throwable {
+        command.invokeExact(args);
+        int status = (int) STATUS.invoke(terminal);
+        if (status != 0) {
+            throw new IllegalStateException(name + " " + String.join(" ", args) + " exited with status " + status);
+        }
+    }
+
+    /** Runs a full command line through the parser, pipelines and redirection. */
+    public int execute(String line) {
+        try {
+            return (int) MethodHandles.publicLookup()
+                    .findVirtual(TERMINAL, "execute", MethodType.methodType(int.class, String.class))
+                    .invoke(terminal, line);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
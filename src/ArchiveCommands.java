@@ -0,0 +1,521 @@
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+// zip and unzip for standard zip archives, pack and unpack for the
+// deduplicating archives of ChunkArchive.
+final class ArchiveCommands extends Invocation{
+    ArchiveCommands(Terminal terminal){
+        super(terminal);
+    }
+
+    void zip(String[] args) {
+        if (args.length < 2) {
+            error("zip: invalid number of arguments");
+            error("Usage: zip archive_name.zip file1 [file2 ...]");
+            return;
+        }
+
+        boolean recursive = false;
+        int startIndex = 1;
+        String zipName = args[0];
+
+        // Handle -r flag
+        if (args[0].equals("-r")) {
+            if (args.length < 3) {
+                error("zip: missing archive name or directory");
+                return;
+            }
+            recursive = true;
+            zipName = args[1];
+            startIndex = 2;
+        }
+
+        Path zipPath = currentDir.resolve(zipName);
+        List<ParallelZip.Source> sources = collectSources("zip", args, startIndex, recursive);
+
+        try {
+            if (ParallelZip.fits(sources)) {
+                if (ParallelZip.write(zipPath, sources, out, cancelled::get) > 0) {
+                    status = 1;
+                }
+            } else {
+                zipSequential(zipPath, sources);
+            }
+            for (ParallelZip.Source source : sources) {
+                io.read(source.size);
+            }
+            io.wrote(Files.size(zipPath));
+            io.touched(sources.size() + 1);
+            out.println("zip: created '" + zipName + "' successfully");
+        } catch (IOException e) {
+            if (cancelled("zip")) {
+                try {
+                    Files.deleteIfExists(zipPath);
+                } catch (IOException ignored) {
+                }
+                return;
+            }
+            error("zip: error creating '" + zipName + "': " + e.getMessage());
+        }
+    }
+
+    // Files named by args[from..] for an archive, each with its entry name:
+    // the path relative to the parent of the argument it was found under.
+    private List<ParallelZip.Source> collectSources(String command, String[] args, int from, boolean recursive) {
+        List<ParallelZip.Source> sources = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (int i = from; i < args.length; i++) {
+            Path target = currentDir.resolve(args[i]);
+            if (!Files.exists(target)) {
+                error(command + ": cannot find '" + args[i] + "'");
+                continue;
+            }
+
+            if (Files.isDirectory(target)) {
+                if (recursive) {
+                    // The walk visits files in no particular order; sorting by
+                    // path keeps archives reproducible.
+                    Map<String, Path> found = new ConcurrentSkipListMap<>();
+                    String arg = args[i];
+                    try {
+                        new TreeWalker(new TreeWalker.Visitor() {
+                            @Override
+                            public long visitFile(Path file, BasicFileAttributes attrs) {
+                                if (!attrs.isSymbolicLink() || !Files.isDirectory(file)) {
+                                    found.put(target.getParent() == null ? file.toString()
+                                            : target.getParent().relativize(file).toString(), file);
+                                }
+                                return 0;
+                            }
+
+                            @Override
+                            public void failed(Path path, IOException e) {
+                                error(command + ": failed to read '" + arg + "': " + e.getMessage());
+                            }
+                        }, null, false, cancelled::get).walk(target);
+                    } catch (IOException e) {
+                        error(command + ": failed to read '" + arg + "': " + e.getMessage());
+                    }
+                    found.forEach((entryName, file) -> addSource(command, sources, names, file, entryName));
+                } else {
+                    error(command + ": " + args[i] + " is a directory (use -r to include it)");
+                }
+            } else {
+                addSource(command, sources, names, target, target.getFileName().toString());
+            }
+        }
+        return sources;
+    }
+
+    private void addSource(String command, List<ParallelZip.Source> sources, Set<String> names, Path file,
+                           String entryName) {
+        entryName = entryName.replace(File.separatorChar, '/');
+        if (!names.add(entryName)) {
+            error(command + ": duplicate entry '" + entryName + "' skipped");
+            return;
+        }
+        try {
+            sources.add(new ParallelZip.Source(file, entryName, Files.size(file)));
+        } catch (IOException e) {
+            error(command + ": failed to add " + file.getFileName());
+        }
+    }
+
+    // Archives too large for the classic zip format go through ZipOutputStream,
+    // which switches to zip64 records on its own.
+    private void zipSequential(Path zipPath, List<ParallelZip.Source> sources) throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(zipPath.toFile());
+             ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(fos, 64 << 10))) {
+            for (ParallelZip.Source source : sources) {
+                checkCancelled();
+                try {
+                    ZipEntry entry = new ZipEntry(source.name);
+                    if (ParallelZip.isStored(source.name)) {
+                        entry.setMethod(ZipEntry.STORED);
+                        entry.setSize(source.size);
+                        entry.setCompressedSize(source.size);
+                        entry.setCrc(crc32(source.file));
+                    }
+                    zos.putNextEntry(entry);
+                    Files.copy(source.file, zos);
+                    zos.closeEntry();
+                } catch (IOException e) {
+                    error("zip: failed to add " + source.file.getFileName());
+                }
+            }
+        }
+    }
+
+    // pack archive path...: writes a deduplicating archive of files and
+    // directory trees (see ChunkArchive).
+    void pack(String[] args) {
+        if (args.length < 2) {
+            error("Usage: pack archive path...");
+            return;
+        }
+        Path packPath = currentDir.resolve(args[0]);
+        List<ParallelZip.Source> sources = collectSources("pack", args, 1, true);
+        try {
+            ChunkArchive.Summary summary = ChunkArchive.write(packPath, sources, out, cancelled::get);
+            if (summary.failed > 0) {
+                status = 1;
+            }
+            io.read(summary.bytes);
+            io.wrote(summary.archiveSize);
+            io.touched(summary.files + 1);
+            out.println("pack: created '" + args[0] + "': " + summary.files + " files, "
+                    + CommandStats.bytes(summary.bytes) + " in " + summary.chunks + " chunks ("
+                    + summary.uniqueChunks + " unique), " + CommandStats.bytes(summary.archiveSize) + " on disk");
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(packPath);
+            } catch (IOException ignored) {
+            }
+            if (cancelled("pack")) {
+                return;
+            }
+            error("pack: error creating '" + args[0] + "': " + e.getMessage());
+        }
+    }
+
+    // unpack archive [-d dir] [pattern...]: extracts all members of a pack
+    // archive, or only those matching the patterns, on a worker pool.
+    void unpack(String[] args) {
+        String archiveArg = null;
+        Path destDir = currentDir;
+        List<String> patterns = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if ("-d".equals(args[i]) && i + 1 < args.length) {
+                destDir = currentDir.resolve(args[++i]).normalize();
+            } else if (archiveArg == null) {
+                archiveArg = args[i];
+            } else {
+                patterns.add(args[i]);
+            }
+        }
+        if (archiveArg == null) {
+            error("Usage: unpack archive [-d dir] [pattern...]");
+            return;
+        }
+        Path packPath = currentDir.resolve(archiveArg).normalize();
+        if (!Files.exists(packPath)) {
+            error("unpack: cannot find '" + archiveArg + "'");
+            return;
+        }
+
+        try (ChunkArchive.Reader reader = new ChunkArchive.Reader(packPath)) {
+            List<Pattern> filters = new ArrayList<>();
+            for (String pattern : patterns) {
+                filters.add(globToRegex(pattern));
+            }
+            boolean[] matched = new boolean[filters.size()];
+            List<ChunkArchive.Member> members = new ArrayList<>();
+            List<Path> targets = new ArrayList<>();
+            Path root = destDir.toAbsolutePath();
+            for (ChunkArchive.Member member : reader.members) {
+                if (!filters.isEmpty() && !matches(filters, matched, member.name)) {
+                    continue;
+                }
+                Path target = root.resolve(member.name).normalize();
+                if (!target.startsWith(root)) {
+                    error("unpack: skipping suspicious entry: " + member.name);
+                    continue;
+                }
+                members.add(member);
+                targets.add(target);
+            }
+            for (int i = 0; i < matched.length; i++) {
+                if (!matched[i]) error("unpack: caution: filename not matched: " + patterns.get(i));
+            }
+
+            ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+            try {
+                List<Future<?>> pending = new ArrayList<>();
+                for (int i = 0; i < members.size(); i++) {
+                    ChunkArchive.Member member = members.get(i);
+                    Path target = targets.get(i);
+                    pending.add(pool.submit(() -> unpackMember(reader, member, target)));
+                }
+                for (Future<?> future : pending) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            } finally {
+                pool.shutdownNow();
+            }
+            if (cancelled("unpack")) {
+                return;
+            }
+            out.println("unpack: extracted '" + packPath.getFileName() + "' successfully");
+        } catch (IOException e) {
+            if (cancelled("unpack")) {
+                return;
+            }
+            error("unpack: error extracting '" + packPath.getFileName() + "': " + e.getMessage());
+        }
+    }
+
+    private void unpackMember(ChunkArchive.Reader reader, ChunkArchive.Member member, Path target) {
+        if (cancelled.get()) {
+            return;
+        }
+        Inflater inflater = new Inflater();
+        try {
+            Files.createDirectories(target.getParent());
+            try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(target), 64 << 10)) {
+                reader.extract(member, file, inflater);
+            }
+            Files.setLastModifiedTime(target, FileTime.fromMillis(member.modified));
+            io.read(reader.storedSize(member));
+            io.wrote(member.size);
+            io.touched(1);
+        } catch (IOException e) {
+            error("unpack: failed to extract " + member.name + ": " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static long crc32(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream in = new CheckedInputStream(Files.newInputStream(file), crc)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return crc.getValue();
+    }
+
+    void unzip(String[] args) {
+        if (args == null || args.length == 0) {
+            error("unzip: missing archive name");
+            return;
+        }
+
+        // Parse args flexibly: allow either "unzip archive.zip -d dest" or "unzip -d dest archive.zip".
+        // Any further arguments are entry-name patterns ('*' and '?' wildcards) to extract.
+        // --verify checks every entry against the CRC-32 stored in the archive as it is extracted.
+        String archiveArg = null;
+        String destArg = null;
+        boolean verify = false;
+        List<String> patterns = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            if ("-d".equals(args[i]) && i + 1 < args.length) {
+                destArg = args[i + 1];
+                i++;
+            } else if ("--verify".equals(args[i])) {
+                verify = true;
+            } else {
+                if (archiveArg == null) archiveArg = args[i];
+                else patterns.add(args[i]);
+            }
+        }
+
+        if (archiveArg == null) {
+            error("unzip: missing archive name");
+            return;
+        }
+
+        Path zipPath = Paths.get(archiveArg);
+        if (!zipPath.isAbsolute()) zipPath = currentDir.resolve(zipPath);
+        zipPath = zipPath.normalize();
+
+        Path destDir = currentDir;
+        if (destArg != null) {
+            Path t = Paths.get(destArg);
+            if (!t.isAbsolute()) t = currentDir.resolve(t);
+            destDir = t.normalize();
+        }
+
+        if (!Files.exists(zipPath)) {
+            error("unzip: cannot find '" + zipPath.getFileName() + "'");
+            return;
+        }
+
+        try {
+            if (!Files.exists(destDir)) Files.createDirectories(destDir);
+
+            try (ZipFile zip = new ZipFile(zipPath.toFile())) {
+                List<Pattern> filters = new ArrayList<>();
+                for (String pattern : patterns) {
+                    filters.add(globToRegex(pattern));
+                }
+                boolean[] matched = new boolean[filters.size()];
+
+                // Read the central directory once: pick the wanted entries and
+                // collect every directory they need.
+                List<ZipEntry> files = new ArrayList<>();
+                List<Path> targets = new ArrayList<>();
+                Set<Path> directories = new TreeSet<>();
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    if (!filters.isEmpty() && !matches(filters, matched, entry.getName())) {
+                        continue;
+                    }
+                    Path newFilePath = destDir.resolve(entry.getName()).normalize();
+
+                    if (!newFilePath.startsWith(destDir.toAbsolutePath())) {
+                        error("unzip: skipping suspicious entry: " + entry.getName());
+                        continue;
+                    }
+
+                    if (entry.isDirectory()) {
+                        directories.add(newFilePath);
+                    } else {
+                        if (newFilePath.getParent() != null) directories.add(newFilePath.getParent());
+                        files.add(entry);
+                        targets.add(newFilePath);
+                    }
+                }
+                for (int i = 0; i < matched.length; i++) {
+                    if (!matched[i]) error("unzip: caution: filename not matched: " + patterns.get(i));
+                }
+
+                for (Path directory : directories) {
+                    Files.createDirectories(directory);
+                }
+                extractAll(zip, files, targets, verify);
+                if (cancelled("unzip")) {
+                    return;
+                }
+                if (verify) {
+                    if (status != 0) {
+                        return;
+                    }
+                    out.println("unzip: verified " + files.size() + " entries");
+                }
+            }
+
+            out.println("unzip: extracted '" + zipPath.getFileName() + "' successfully");
+        } catch (IOException e) {
+            if (cancelled("unzip")) {
+                return;
+            }
+            error("unzip: error extracting '" + zipPath.getFileName() + "': " + e.getMessage());
+        }
+    }
+
+    // Inflates entries on a worker pool. ZipFile reads each entry through the
+    // central directory, so workers can seek to their entries independently.
+    private void extractAll(ZipFile zip, List<ZipEntry> files, List<Path> targets, boolean verify) throws IOException {
+        if (files.size() == 1) {
+            extract(zip, files.get(0), targets.get(0), verify);
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            List<Future<?>> pending = new ArrayList<>();
+            for (int i = 0; i < files.size(); i++) {
+                ZipEntry entry = files.get(i);
+                Path target = targets.get(i);
+                pending.add(pool.submit(() -> {
+                    if (cancelled.get()) {
+                        return;
+                    }
+                    try {
+                        extract(zip, entry, target, verify);
+                    } catch (IOException e) {
+                        error("unzip: failed to extract " + entry.getName() + ": " + e.getMessage());
+                    }
+                }));
+            }
+            for (Future<?> future : pending) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // ZipFile doesn't check CRCs itself; with verify the inflated bytes are
+    // run through CRC-32 on their way to the file and compared with the
+    // entry's stored CRC.
+    private void extract(ZipFile zip, ZipEntry entry, Path target, boolean verify) throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream in = verify ? new CheckedInputStream(zip.getInputStream(entry), crc)
+                : zip.getInputStream(entry)) {
+            Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        countExtracted(entry);
+        if (verify && entry.getCrc() != -1 && crc.getValue() != entry.getCrc()) {
+            error(String.format("unzip: %s: bad CRC %08x (should be %08x)", entry.getName(), crc.getValue(),
+                    entry.getCrc()));
+        }
+    }
+
+    private void countExtracted(ZipEntry entry) {
+        io.read(entry.getCompressedSize());
+        io.wrote(entry.getSize());
+        io.touched(1);
+    }
+
+    private static boolean matches(List<Pattern> filters, boolean[] matched, String name) {
+        boolean any = false;
+        for (int i = 0; i < filters.size(); i++) {
+            if (filters.get(i).matcher(name).matches()) {
+                matched[i] = true;
+                any = true;
+            }
+        }
+        return any;
+    }
+
+    static Pattern globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+};
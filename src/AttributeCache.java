@@ -0,0 +1,57 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Bounded cache of file attributes for the read-only tree walks (find, du).
+// An entry is trusted for a couple of seconds, so a walk repeated right away
+// (du after find over the same tree) doesn't stat every file again, while
+// anything older is read fresh. Past the capacity, expired entries are
+// dropped first and then arbitrary ones. Commands that change files (cp,
+// rm) walk without it.
+class AttributeCache{
+    private static final class Cached{
+        final BasicFileAttributes attrs;
+        final long expires;
+
+        Cached(BasicFileAttributes attrs, long expires){
+            this.attrs = attrs;
+            this.expires = expires;
+        }
+    }
+
+    private final ConcurrentHashMap<Path, Cached> entries = new ConcurrentHashMap<>();
+    private final int capacity;
+    private final long ttlNanos;
+
+    AttributeCache(int capacity, long ttlNanos){
+        this.capacity = capacity;
+        this.ttlNanos = ttlNanos;
+    }
+
+    BasicFileAttributes read(Path path, LinkOption... options) throws IOException{
+        long now = System.nanoTime();
+        Cached cached = entries.get(path);
+        if(cached != null && cached.expires - now > 0){
+            return cached.attrs;
+        }
+        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class, options);
+        if(entries.size() >= capacity){
+            trim(now);
+        }
+        entries.put(path, new Cached(attrs, now + ttlNanos));
+        return attrs;
+    }
+
+    private void trim(long now){
+        entries.values().removeIf(cached -> cached.expires - now <= 0);
+        Iterator<Path> it = entries.keySet().iterator();
+        for(int excess = entries.size() - capacity / 2; excess > 0 && it.hasNext(); excess--){
+            it.next();
+            it.remove();
+        }
+    }
+};
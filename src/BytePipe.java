@@ -0,0 +1,128 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// A bounded in-memory pipe between two pipeline stages. The writer blocks
+// while the ring buffer is full and the reader blocks while it is empty, so a
+// fast producer can never run ahead of its consumer by more than the capacity.
+// Once the reader closes its end, writes fail with "Broken pipe" and
+// onReaderClosed runs, so the writing stage can be stopped even when it
+// writes through a PrintStream, which swallows the error.
+class BytePipe{
+    private final byte[] ring;
+    private final Runnable onReaderClosed;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private int head, count;
+    private boolean writerClosed, readerClosed;
+
+    BytePipe(int capacity, Runnable onReaderClosed){
+        ring = new byte[capacity];
+        this.onReaderClosed = onReaderClosed;
+    }
+
+    InputStream source(){
+        return new InputStream(){
+            @Override
+            public int read() throws IOException{
+                byte[] one = new byte[1];
+                return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException{
+                if(len == 0){
+                    return 0;
+                }
+                lock.lock();
+                try{
+                    while(count == 0 && !writerClosed){
+                        notEmpty.await();
+                    }
+                    if(count == 0){
+                        return -1;
+                    }
+                    int n = Math.min(len, count);
+                    int first = Math.min(n, ring.length - head);
+                    System.arraycopy(ring, head, b, off, first);
+                    System.arraycopy(ring, 0, b, off + first, n - first);
+                    head = (head + n) % ring.length;
+                    count -= n;
+                    notFull.signal();
+                    return n;
+                } catch(InterruptedException e){
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                } finally{
+                    lock.unlock();
+                }
+            }
+
+            @Override
+            public void close(){
+                lock.lock();
+                try{
+                    if(readerClosed){
+                        return;
+                    }
+                    readerClosed = true;
+                    notFull.signalAll();
+                } finally{
+                    lock.unlock();
+                }
+                onReaderClosed.run();
+            }
+        };
+    }
+
+    OutputStream sink(){
+        return new OutputStream(){
+            @Override
+            public void write(int b) throws IOException{
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException{
+                lock.lock();
+                try{
+                    while(len > 0){
+                        while(count == ring.length && !readerClosed){
+                            notFull.await();
+                        }
+                        if(readerClosed){
+                            throw new IOException("Broken pipe");
+                        }
+                        int tail = (head + count) % ring.length;
+                        int n = Math.min(len, Math.min(ring.length - count, ring.length - tail));
+                        System.arraycopy(b, off, ring, tail, n);
+                        count += n;
+                        off += n;
+                        len -= n;
+                        notEmpty.signal();
+                    }
+                } catch(InterruptedException e){
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                } finally{
+                    lock.unlock();
+                }
+            }
+
+            @Override
+            public void close(){
+                lock.lock();
+                try{
+                    writerClosed = true;
+                    notEmpty.signalAll();
+                } finally{
+                    lock.unlock();
+                }
+            }
+        };
+    }
+};
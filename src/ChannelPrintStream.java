@@ -0,0 +1,16 @@
+import java.io.BufferedOutputStream;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+
+// A PrintStream whose bytes end up in a FileChannel: a > or >> target, or
+// stdout in script mode. Commands that copy whole files flush it and hand
+// the channel to FileChannel.transferTo, so the data never enters the JVM.
+class ChannelPrintStream extends PrintStream{
+    final FileChannel channel;
+
+    ChannelPrintStream(FileChannel channel, int bufferSize){
+        super(new BufferedOutputStream(Channels.newOutputStream(channel), bufferSize));
+        this.channel = channel;
+    }
+};
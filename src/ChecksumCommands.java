@@ -0,0 +1,183 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+// sum and sha256sum: file digests, and checking files against them.
+final class ChecksumCommands extends Invocation{
+    ChecksumCommands(Terminal terminal){
+        super(terminal);
+    }
+
+    private static final int SUM_BUFFER_SIZE = 1 << 20;
+
+    // One direct buffer per hashing thread; the JDK hashes it in place.
+    private static final ThreadLocal<ByteBuffer> SUM_BUFFERS =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(SUM_BUFFER_SIZE));
+
+    // sum [-a crc32c|xxh64|sha256] [file...]: prints "<digest>  <file>" for
+    // each file, or for stdin with none or "-". SHA-256 is the default.
+    // Files are hashed in parallel and printed in argument order, errors
+    // included.
+    // sum -c manifest reads such lines back and checks each file. The
+    // algorithm follows from the digest's length unless -a names it.
+    void sum(String[] args) {
+        String algorithm = null, manifest = null;
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if ((args[i].equals("-a") || args[i].equals("-c")) && i + 1 < args.length) {
+                if (args[i].equals("-a")) {
+                    algorithm = args[++i];
+                } else {
+                    manifest = args[++i];
+                }
+            } else if (args[i].startsWith("-") && args[i].length() > 1) {
+                error("Usage: sum [-a " + String.join("|", FileHash.NAMES) + "] [-c manifest | file...]");
+                return;
+            } else {
+                files.add(args[i]);
+            }
+        }
+        if (algorithm != null && FileHash.create(algorithm) == null) {
+            error("sum: unknown algorithm '" + algorithm + "' (use " + String.join(", ", FileHash.NAMES) + ")");
+            return;
+        }
+        if (manifest != null) {
+            checkSums(manifest, algorithm);
+            return;
+        }
+        String name = algorithm != null ? algorithm : FileHash.DEFAULT;
+        if (files.isEmpty()) {
+            files.add("-");
+        }
+        try {
+            printInOrder(files, file -> {
+                try {
+                    byte[] digest = file.equals("-") ? hashStream(in, name) : hashFile(currentDir.resolve(file), name);
+                    return FileHash.hex(digest) + "  " + file;
+                } catch (NoSuchFileException e) {
+                    status = 1;
+                    return "sum: " + file + ": No such file";
+                } catch (IOException e) {
+                    if (cancelled.get()) {
+                        return null;
+                    }
+                    status = 1;
+                    return "sum: " + file + ": " + e.getMessage();
+                }
+            });
+        } catch (IOException e) {
+            error("sum: " + e.getMessage());
+        }
+        cancelled("sum");
+    }
+
+    void sha256sum(String[] args) {
+        String[] withAlgorithm = new String[args.length + 2];
+        withAlgorithm[0] = "-a";
+        withAlgorithm[1] = "sha256";
+        System.arraycopy(args, 0, withAlgorithm, 2, args.length);
+        sum(withAlgorithm);
+    }
+
+    // sum -c: prints "<file>: OK" or "<file>: FAILED" for every line of the
+    // manifest and fails if any file doesn't match.
+    private void checkSums(String manifest, String algorithm) {
+        List<String[]> checks = new ArrayList<>();
+        int malformed = 0;
+        try (BufferedReader reader = Files.newBufferedReader(currentDir.resolve(manifest))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int space = line.indexOf(' ');
+                // "<digest>  <file>", or "<digest> *<file>" as binary-mode tools write it.
+                if (space < 0 || space + 2 > line.length() || (line.charAt(space + 1) != ' ' && line.charAt(space + 1) != '*')) {
+                    malformed += line.isBlank() ? 0 : 1;
+                    continue;
+                }
+                String digest = line.substring(0, space).toLowerCase(Locale.ROOT);
+                String name = algorithm != null ? algorithm : FileHash.forHexLength(digest.length());
+                if (name == null) {
+                    malformed++;
+                    continue;
+                }
+                checks.add(new String[]{digest, line.substring(space + 2), name});
+            }
+        } catch (NoSuchFileException e) {
+            error("sum: " + manifest + ": No such file");
+            return;
+        } catch (IOException e) {
+            error("sum: " + manifest + ": " + e.getMessage());
+            return;
+        }
+        LongAdder failed = new LongAdder();
+        try {
+            printInOrder(checks, check -> {
+                String file = check[1];
+                try {
+                    byte[] digest = hashFile(currentDir.resolve(file), check[2]);
+                    if (FileHash.hex(digest).equals(check[0])) {
+                        return file + ": OK";
+                    }
+                } catch (IOException e) {
+                    if (cancelled.get()) {
+                        return null;
+                    }
+                    failed.increment();
+                    return file + ": FAILED open or read";
+                }
+                failed.increment();
+                return file + ": FAILED";
+            });
+        } catch (IOException e) {
+            error("sum: " + e.getMessage());
+        }
+        if (cancelled("sum")) {
+            return;
+        }
+        if (malformed > 0) {
+            error("sum: WARNING: " + malformed + " line" + (malformed == 1 ? " is" : "s are") + " improperly formatted");
+        }
+        if (failed.sum() > 0) {
+            error("sum: WARNING: " + failed.sum() + " computed checksum" + (failed.sum() == 1 ? "" : "s")
+                    + " did NOT match");
+        }
+    }
+
+    private byte[] hashFile(Path file, String algorithm) throws IOException {
+        FileHash hash = FileHash.create(algorithm);
+        ByteBuffer buffer = SUM_BUFFERS.get();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer.clear();
+            while (channel.read(buffer) >= 0) {
+                checkCancelled();
+                buffer.flip();
+                io.read(buffer.remaining());
+                hash.update(buffer);
+                buffer.clear();
+            }
+        }
+        io.touched(1);
+        return hash.digest();
+    }
+
+    private byte[] hashStream(InputStream input, String algorithm) throws IOException {
+        FileHash hash = FileHash.create(algorithm);
+        byte[] bytes = new byte[SUM_BUFFER_SIZE];
+        int n;
+        while ((n = input.read(bytes)) >= 0) {
+            checkCancelled();
+            io.read(n);
+            hash.update(ByteBuffer.wrap(bytes, 0, n));
+        }
+        return hash.digest();
+    }
+};
@@ -0,0 +1,458 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+// Deduplicating archive written by pack and read by unpack. Files are cut
+// into chunks at content-defined boundaries (FastCDC: a gear rolling hash
+// with normalized chunking), so an insertion only changes the chunks around
+// it instead of shifting every block after it. Each distinct chunk (by
+// SHA-256) is stored once, deflated unless that doesn't make it smaller.
+//
+// Layout: magic and version, the chunk data back to back, a deflated index
+// (chunk table: stored length, raw length, method and CRC32C of each chunk;
+// file table: name, size, mtime and chunk ids of each file), then the index
+// offset and the magic again. Readers start from the trailer, so any file
+// can be extracted without reading the rest of the archive.
+class ChunkArchive{
+    static final int MAGIC = 0x434c504b; // "CLPK"
+    static final int VERSION = 1;
+    static final int MIN_CHUNK = 2 << 10;
+    static final int AVG_CHUNK = 8 << 10;
+    static final int MAX_CHUNK = 64 << 10;
+    // A stricter mask before the average size and a looser one after it pull
+    // chunk sizes towards the average. The gear hash shifts left, so its top
+    // bits depend on the most bytes.
+    private static final long MASK_SMALL = 0xfffe000000000000L;
+    private static final long MASK_LARGE = 0xffe0000000000000L;
+    private static final long[] GEAR = new long[256];
+    private static final int HEADER_SIZE = 8;
+    private static final int TRAILER_SIZE = 12;
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+    private static final byte STORED = 0, DEFLATED = 1;
+
+    static{
+        SplittableRandom random = new SplittableRandom(0x9e3779b97f4a7c15L);
+        for(int i = 0; i < GEAR.length; i++){
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private static class Chunk{
+        int id;
+        int length;
+        int rawLength;
+        byte method;
+        int crc;
+    }
+
+    static class Member{
+        final String name;
+        final long size;
+        final long modified;
+        final int[] chunks;
+
+        Member(String name, long size, long modified, int[] chunks){
+            this.name = name;
+            this.size = size;
+            this.modified = modified;
+            this.chunks = chunks;
+        }
+    }
+
+    // What a pack run stored, for the command's report.
+    static class Summary{
+        int files;
+        int failed;
+        long bytes;
+        long chunks;
+        long uniqueChunks;
+        long archiveSize;
+    }
+
+    private final FileChannel channel;
+    private final BooleanSupplier cancelled;
+    private final ConcurrentHashMap<ByteBuffer, Chunk> known = new ConcurrentHashMap<>();
+    private int stored;
+
+    private ChunkArchive(FileChannel channel, BooleanSupplier cancelled){
+        this.channel = channel;
+        this.cancelled = cancelled;
+    }
+
+    // Chunks every source on a pool of workers and writes the archive. Files
+    // that can't be read are reported to log and left out; a failed write to
+    // the archive itself fails the whole pack.
+    static Summary write(Path archive, List<ParallelZip.Source> sources, PrintStream log, BooleanSupplier cancelled)
+            throws IOException{
+        Summary summary = new Summary();
+        List<List<Chunk>> contents = new ArrayList<>(Collections.nCopies(sources.size(), null));
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try(FileChannel channel = FileChannel.open(archive, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)){
+            ChunkArchive writer = new ChunkArchive(channel, cancelled);
+            writeFully(channel, ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip());
+            List<Future<?>> workers = new ArrayList<>();
+            for(int w = 0; w < Runtime.getRuntime().availableProcessors(); w++){
+                workers.add(pool.submit(() -> {
+                    writer.work(sources, contents, next, log);
+                    return null;
+                }));
+            }
+            for(Future<?> worker : workers){
+                try{
+                    worker.get();
+                } catch(InterruptedException e){
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("cancelled");
+                } catch(ExecutionException e){
+                    Throwable cause = e.getCause() instanceof UncheckedIOException unchecked
+                            ? unchecked.getCause() : e.getCause();
+                    throw cause instanceof IOException io ? io : new IOException(cause);
+                }
+            }
+
+            long indexOffset = channel.position();
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            try(DataOutputStream index = new DataOutputStream(new DeflaterOutputStream(buffer))){
+                Chunk[] chunks = new Chunk[writer.stored];
+                for(Chunk chunk : writer.known.values()){
+                    if(chunk.id >= 0){
+                        chunks[chunk.id] = chunk;
+                    }
+                }
+                index.writeInt(chunks.length);
+                for(Chunk chunk : chunks){
+                    index.writeInt(chunk.length);
+                    index.writeInt(chunk.rawLength);
+                    index.writeByte(chunk.method);
+                    index.writeInt(chunk.crc);
+                }
+                int members = 0;
+                for(List<Chunk> content : contents){
+                    members += content == null ? 0 : 1;
+                }
+                index.writeInt(members);
+                for(int i = 0; i < sources.size(); i++){
+                    List<Chunk> content = contents.get(i);
+                    if(content == null){
+                        summary.failed++;
+                        continue;
+                    }
+                    // The bytes actually chunked, not source.size: the file
+                    // may have changed since it was collected.
+                    long size = 0;
+                    for(Chunk chunk : content){
+                        size += chunk.rawLength;
+                    }
+                    ParallelZip.Source source = sources.get(i);
+                    index.writeUTF(source.name);
+                    index.writeLong(size);
+                    index.writeLong(Files.getLastModifiedTime(source.file).toMillis());
+                    index.writeInt(content.size());
+                    for(Chunk chunk : content){
+                        index.writeInt(chunk.id);
+                    }
+                    summary.files++;
+                    summary.bytes += size;
+                    summary.chunks += content.size();
+                }
+                summary.uniqueChunks = chunks.length;
+            }
+            writeFully(channel, ByteBuffer.wrap(buffer.toByteArray()));
+            writeFully(channel, ByteBuffer.allocate(TRAILER_SIZE).putLong(indexOffset).putInt(MAGIC).flip());
+            summary.archiveSize = channel.position();
+            return summary;
+        } finally{
+            pool.shutdownNow();
+        }
+    }
+
+    // One worker: takes the next unclaimed source until none are left.
+    private void work(List<ParallelZip.Source> sources, List<List<Chunk>> contents, AtomicInteger next, PrintStream log)
+            throws IOException{
+        Deflater deflater = new Deflater();
+        try{
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            byte[] packed = new byte[MAX_CHUNK];
+            for(int i = next.getAndIncrement(); i < sources.size(); i = next.getAndIncrement()){
+                ParallelZip.Source source = sources.get(i);
+                try(InputStream in = Files.newInputStream(source.file)){
+                    contents.set(i, add(in, buffer, packed, deflater, sha));
+                } catch(InterruptedIOException e){
+                    throw e;
+                } catch(IOException e){
+                    log.println("pack: failed to add " + source.name + ": " + e.getMessage());
+                }
+            }
+        } catch(NoSuchAlgorithmException e){
+            throw new IllegalStateException(e);
+        } finally{
+            deflater.end();
+        }
+    }
+
+    private List<Chunk> add(InputStream in, byte[] buffer, byte[] packed, Deflater deflater, MessageDigest sha)
+            throws IOException{
+        List<Chunk> chunks = new ArrayList<>();
+        int start = 0;
+        int end = 0;
+        boolean eof = false;
+        while(true){
+            if(!eof && end - start < MAX_CHUNK){
+                System.arraycopy(buffer, start, buffer, 0, end - start);
+                end -= start;
+                start = 0;
+                int read = in.readNBytes(buffer, end, buffer.length - end);
+                eof = read < buffer.length - end;
+                end += read;
+            }
+            if(start == end){
+                return chunks;
+            }
+            if(cancelled.getAsBoolean()){
+                throw new InterruptedIOException("cancelled");
+            }
+            int cut = cut(buffer, start, end);
+            chunks.add(store(buffer, start, cut - start, packed, deflater, sha));
+            start = cut;
+        }
+    }
+
+    // Returns the end of the chunk starting at start (FastCDC).
+    static int cut(byte[] data, int start, int end){
+        int length = end - start;
+        if(length <= MIN_CHUNK){
+            return end;
+        }
+        int limit = Math.min(length, MAX_CHUNK);
+        int normal = Math.min(limit, AVG_CHUNK);
+        long hash = 0;
+        int i = MIN_CHUNK;
+        for(; i < normal; i++){
+            hash = (hash << 1) + GEAR[data[start + i] & 0xff];
+            if((hash & MASK_SMALL) == 0){
+                return start + i + 1;
+            }
+        }
+        for(; i < limit; i++){
+            hash = (hash << 1) + GEAR[data[start + i] & 0xff];
+            if((hash & MASK_LARGE) == 0){
+                return start + i + 1;
+            }
+        }
+        return start + limit;
+    }
+
+    // Returns the stored chunk with these bytes, compressing and appending it
+    // first if no worker has seen it yet. The chunk only gets its id once its
+    // bytes are in the archive; a failed append is thrown unchecked so it ends
+    // the pack rather than just the current source, since other sources may
+    // already refer to the chunk.
+    private Chunk store(byte[] data, int offset, int length, byte[] packed, Deflater deflater, MessageDigest sha){
+        sha.update(data, offset, length);
+        ByteBuffer key = ByteBuffer.wrap(sha.digest());
+        Chunk chunk = known.get(key);
+        if(chunk != null){
+            return chunk;
+        }
+        Chunk created = new Chunk();
+        created.id = -1;
+        chunk = known.putIfAbsent(key, created);
+        if(chunk != null){
+            return chunk;
+        }
+
+        CRC32C crc = new CRC32C();
+        crc.update(data, offset, length);
+        created.crc = (int) crc.getValue();
+        created.rawLength = length;
+        deflater.reset();
+        deflater.setInput(data, offset, length);
+        deflater.finish();
+        int size = 0;
+        while(!deflater.finished() && size < length){
+            size += deflater.deflate(packed, size, length - size);
+        }
+        ByteBuffer body;
+        if(deflater.finished() && size < length){
+            created.method = DEFLATED;
+            body = ByteBuffer.wrap(packed, 0, size);
+        } else{
+            created.method = STORED;
+            body = ByteBuffer.wrap(data, offset, length);
+        }
+        created.length = body.remaining();
+        synchronized(this){
+            try{
+                writeFully(channel, body);
+            } catch(IOException e){
+                throw new UncheckedIOException(e);
+            }
+            created.id = stored++;
+        }
+        return created;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException{
+        while(buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+    }
+
+    // Random access to a packed archive. Reads are positional, so one reader
+    // can be shared by several extracting threads.
+    static class Reader implements Closeable{
+        private final FileChannel channel;
+        private final long[] offsets;
+        private final int[] lengths;
+        private final int[] rawLengths;
+        private final byte[] methods;
+        private final int[] crcs;
+        final List<Member> members = new ArrayList<>();
+
+        Reader(Path archive) throws IOException{
+            channel = FileChannel.open(archive, StandardOpenOption.READ);
+            try{
+                long size = channel.size();
+                ByteBuffer header = read(0, HEADER_SIZE);
+                if(size < HEADER_SIZE + TRAILER_SIZE || header.getInt() != MAGIC){
+                    throw new IOException("not a pack archive");
+                }
+                if(header.getInt() != VERSION){
+                    throw new IOException("unsupported pack version");
+                }
+                ByteBuffer trailer = read(size - TRAILER_SIZE, TRAILER_SIZE);
+                long indexOffset = trailer.getLong();
+                if(trailer.getInt() != MAGIC || indexOffset < HEADER_SIZE || indexOffset > size - TRAILER_SIZE){
+                    throw new IOException("pack archive is truncated");
+                }
+                ByteBuffer raw = read(indexOffset, (int) (size - TRAILER_SIZE - indexOffset));
+                try(DataInputStream index = new DataInputStream(new InflaterInputStream(
+                        new ByteArrayInputStream(raw.array(), 0, raw.limit())))){
+                    int count = index.readInt();
+                    offsets = new long[count];
+                    lengths = new int[count];
+                    rawLengths = new int[count];
+                    methods = new byte[count];
+                    crcs = new int[count];
+                    long offset = HEADER_SIZE;
+                    for(int i = 0; i < count; i++){
+                        offsets[i] = offset;
+                        lengths[i] = index.readInt();
+                        rawLengths[i] = index.readInt();
+                        methods[i] = index.readByte();
+                        crcs[i] = index.readInt();
+                        offset += lengths[i];
+                    }
+                    int files = index.readInt();
+                    for(int i = 0; i < files; i++){
+                        String name = index.readUTF();
+                        long fileSize = index.readLong();
+                        long modified = index.readLong();
+                        int[] chunks = new int[index.readInt()];
+                        for(int c = 0; c < chunks.length; c++){
+                            chunks[c] = index.readInt();
+                            if(chunks[c] < 0 || chunks[c] >= count){
+                                throw new IOException("pack index is corrupt");
+                            }
+                        }
+                        members.add(new Member(name, fileSize, modified, chunks));
+                    }
+                }
+            } catch(IOException | RuntimeException e){
+                channel.close();
+                throw e instanceof IOException io ? io : new IOException("pack index is corrupt", e);
+            }
+        }
+
+        // Bytes of the archive a member's chunks take up.
+        long storedSize(Member member){
+            long total = 0;
+            for(int chunk : member.chunks){
+                total += lengths[chunk];
+            }
+            return total;
+        }
+
+        // Writes a member's bytes to out, checking each chunk's CRC32C.
+        void extract(Member member, OutputStream out, Inflater inflater) throws IOException{
+            byte[] raw = new byte[MAX_CHUNK];
+            for(int chunk : member.chunks){
+                ByteBuffer stored = read(offsets[chunk], lengths[chunk]);
+                int length = rawLengths[chunk];
+                if(methods[chunk] == DEFLATED){
+                    inflater.reset();
+                    inflater.setInput(stored.array(), 0, stored.limit());
+                    try{
+                        int n = 0;
+                        while(n < length && !inflater.finished()){
+                            n += inflater.inflate(raw, n, length - n);
+                        }
+                        if(n != length){
+                            throw new IOException("chunk " + chunk + " is corrupt");
+                        }
+                    } catch(DataFormatException e){
+                        throw new IOException("chunk " + chunk + " is corrupt");
+                    }
+                } else{
+                    System.arraycopy(stored.array(), 0, raw, 0, length);
+                }
+                CRC32C crc = new CRC32C();
+                crc.update(raw, 0, length);
+                if((int) crc.getValue() != crcs[chunk]){
+                    throw new IOException("chunk " + chunk + " is corrupt");
+                }
+                out.write(raw, 0, length);
+            }
+        }
+
+        private ByteBuffer read(long position, int length) throws IOException{
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while(buffer.hasRemaining()){
+                if(channel.read(buffer, position + buffer.position()) < 0){
+                    throw new IOException("pack archive is truncated");
+                }
+            }
+            return buffer.flip();
+        }
+
+        @Override
+        public void close() throws IOException{
+            channel.close();
+        }
+    }
+};
@@ -0,0 +1,37 @@
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+// A command the shell can run. Built-in commands are methods of the command
+// groups (ShellCommands, FileCommands, ...), adapted with Command.of and
+// created by Terminal the first time they are used; others are found with
+// ServiceLoader, so a jar on the class path adds commands by naming its
+// implementations in META-INF/services/Command. An implementation needs a
+// public no-argument constructor and is shared by every terminal, so it
+// should keep no per-invocation state in fields.
+public interface Command{
+    // The name the command is invoked by.
+    String name();
+
+    // Runs the command and returns its exit status. args excludes the name.
+    // Input comes from terminal.in() and output goes to terminal.out(), which
+    // are the pipe or redirect when the command runs in a pipeline.
+    int run(Terminal terminal, String[] args);
+
+    // Adapts a built-in: every run creates a new group instance for the
+    // terminal, calls body on it and returns the status it left.
+    static <T extends Invocation> Command of(String name, Function<Terminal, T> group, BiConsumer<T, String[]> body){
+        return new Command(){
+            @Override
+            public String name(){
+                return name;
+            }
+
+            @Override
+            public int run(Terminal terminal, String[] args){
+                T invocation = group.apply(terminal);
+                body.accept(invocation, args);
+                return invocation.status;
+            }
+        };
+    }
+}
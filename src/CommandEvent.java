@@ -0,0 +1,35 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// JFR event committed for every command, so command latencies and I/O can be
+// lined up with GC, thread and file I/O events in a flight recording
+// (java -XX:StartFlightRecording=filename=shell.jfr Terminal).
+@Name("clios.Command")
+@Label("Shell Command")
+@Category("CLIos")
+@Description("One command run by the shell")
+class CommandEvent extends Event{
+    @Label("Command")
+    String command;
+
+    @Label("Arguments")
+    String arguments;
+
+    @Label("Exit Status")
+    int status;
+
+    @Label("Bytes Read")
+    @DataAmount
+    long bytesRead;
+
+    @Label("Bytes Written")
+    @DataAmount
+    long bytesWritten;
+
+    @Label("Files Touched")
+    long filesTouched;
+};
@@ -0,0 +1,65 @@
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+// Finds the Command for a name. Built-ins come from the factory, which is
+// only asked for a name the first time it is used, so a command's classes
+// load when it first runs rather than at startup. Other names are looked up
+// among the Command providers on the class path, which are loaded once, on
+// the first name that is not a built-in. Found commands are cached.
+class CommandRegistry{
+    private final Function<String, Command> builtins;
+    private final ConcurrentHashMap<String, Command> commands = new ConcurrentHashMap<>();
+    private volatile Map<String, Command> plugins;
+
+    CommandRegistry(Function<String, Command> builtins){
+        this.builtins = builtins;
+    }
+
+    // Returns the command called name, or null if there is none.
+    Command find(String name){
+        Command command = commands.get(name);
+        if(command != null){
+            return command;
+        }
+        command = builtins.apply(name);
+        if(command == null){
+            command = plugins().get(name);
+        }
+        if(command != null){
+            commands.putIfAbsent(name, command);
+        }
+        return command;
+    }
+
+    private Map<String, Command> plugins(){
+        Map<String, Command> loaded = plugins;
+        if(loaded != null){
+            return loaded;
+        }
+        synchronized(this){
+            if(plugins == null){
+                loaded = new HashMap<>();
+                Iterator<Command> providers = ServiceLoader.load(Command.class, Command.class.getClassLoader()).iterator();
+                while(true){
+                    try{
+                        if(!providers.hasNext()){
+                            break;
+                        }
+                        Command command = providers.next();
+                        loaded.putIfAbsent(command.name(), command);
+                    } catch(ServiceConfigurationError e){
+                        // A broken plugin must not take the shell down with it.
+                        System.err.println("Cannot load command: " + e.getMessage());
+                    }
+                }
+                plugins = loaded;
+            }
+            return plugins;
+        }
+    }
+};
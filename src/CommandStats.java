@@ -0,0 +1,168 @@
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Per-command execution metrics shown by the stats command: invocation and
+// error counts, a latency histogram and the I/O each command did. Latencies go
+// into log-linear buckets (in the style of HdrHistogram) with 32 sub-buckets
+// per power of two, so percentiles are accurate to about 3% at any scale.
+class CommandStats{
+    private static final int SUB_BITS = 5;
+    private static final int BUCKETS = ((63 - SUB_BITS) << SUB_BITS) + (1 << SUB_BITS);
+
+    // I/O done by one command invocation; shared by any worker threads it uses.
+    static class Usage{
+        final AtomicLong bytesRead = new AtomicLong();
+        final AtomicLong bytesWritten = new AtomicLong();
+        final AtomicLong filesTouched = new AtomicLong();
+
+        void read(long bytes){
+            bytesRead.addAndGet(bytes);
+        }
+
+        void wrote(long bytes){
+            bytesWritten.addAndGet(bytes);
+        }
+
+        void touched(long files){
+            filesTouched.addAndGet(files);
+        }
+
+        void reset(){
+            bytesRead.set(0);
+            bytesWritten.set(0);
+            filesTouched.set(0);
+        }
+    }
+
+    static class Metrics{
+        final LongAdder invocations = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAdder bytesRead = new LongAdder();
+        final LongAdder bytesWritten = new LongAdder();
+        final LongAdder filesTouched = new LongAdder();
+        final AtomicLong maxNanos = new AtomicLong();
+        final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+        // Returns the latency (in nanoseconds) below which the given fraction of calls completed.
+        long percentile(double fraction){
+            long total = invocations.sum();
+            long rank = Math.max(1, (long) Math.ceil(fraction * total));
+            long seen = 0;
+            for(int i = 0; i < BUCKETS; i++){
+                seen += histogram.get(i);
+                if(seen >= rank){
+                    return Math.min(highestInBucket(i), maxNanos.get());
+                }
+            }
+            return maxNanos.get();
+        }
+    }
+
+    private final ConcurrentSkipListMap<String, Metrics> commands = new ConcurrentSkipListMap<>();
+
+    void record(String command, long nanos, int status, Usage usage){
+        Metrics metrics = commands.computeIfAbsent(command, name -> new Metrics());
+        metrics.invocations.increment();
+        if(status != 0){
+            metrics.errors.increment();
+        }
+        metrics.totalNanos.add(nanos);
+        metrics.maxNanos.accumulateAndGet(nanos, Math::max);
+        metrics.histogram.incrementAndGet(bucket(nanos));
+        metrics.bytesRead.add(usage.bytesRead.get());
+        metrics.bytesWritten.add(usage.bytesWritten.get());
+        metrics.filesTouched.add(usage.filesTouched.get());
+    }
+
+    void reset(){
+        commands.clear();
+    }
+
+    static int bucket(long value){
+        if(value < (1 << SUB_BITS)){
+            return (int) Math.max(0, value);
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BITS;
+        return (shift << SUB_BITS) + (int) (value >>> shift);
+    }
+
+    static long highestInBucket(int index){
+        if(index < (2 << SUB_BITS)){
+            return index;
+        }
+        int shift = (index >> SUB_BITS) - 1;
+        long lowest = (long) (index - (shift << SUB_BITS)) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    void print(PrintStream out){
+        out.println(String.format("%-8s %8s %6s %10s %10s %10s %10s %10s %12s %12s %8s",
+                "command", "calls", "errors", "mean", "p50", "p90", "p99", "max", "read", "written", "files"));
+        for(Map.Entry<String, Metrics> entry : commands.entrySet()){
+            Metrics m = entry.getValue();
+            long calls = m.invocations.sum();
+            out.println(String.format("%-8s %8d %6d %10s %10s %10s %10s %10s %12s %12s %8d",
+                    entry.getKey(), calls, m.errors.sum(),
+                    duration(calls == 0 ? 0 : m.totalNanos.sum() / calls), duration(m.percentile(0.5)),
+                    duration(m.percentile(0.9)), duration(m.percentile(0.99)), duration(m.maxNanos.get()),
+                    bytes(m.bytesRead.sum()), bytes(m.bytesWritten.sum()), m.filesTouched.sum()));
+        }
+    }
+
+    String toJson(){
+        StringBuilder json = new StringBuilder("{\"commands\":{");
+        boolean first = true;
+        for(Map.Entry<String, Metrics> entry : commands.entrySet()){
+            Metrics m = entry.getValue();
+            long calls = m.invocations.sum();
+            if(!first){
+                json.append(',');
+            }
+            first = false;
+            json.append('"').append(entry.getKey()).append("\":{")
+                    .append("\"invocations\":").append(calls)
+                    .append(",\"errors\":").append(m.errors.sum())
+                    .append(",\"meanNanos\":").append(calls == 0 ? 0 : m.totalNanos.sum() / calls)
+                    .append(",\"p50Nanos\":").append(m.percentile(0.5))
+                    .append(",\"p90Nanos\":").append(m.percentile(0.9))
+                    .append(",\"p99Nanos\":").append(m.percentile(0.99))
+                    .append(",\"p999Nanos\":").append(m.percentile(0.999))
+                    .append(",\"maxNanos\":").append(m.maxNanos.get())
+                    .append(",\"bytesRead\":").append(m.bytesRead.sum())
+                    .append(",\"bytesWritten\":").append(m.bytesWritten.sum())
+                    .append(",\"filesTouched\":").append(m.filesTouched.sum())
+                    .append('}');
+        }
+        return json.append("}}").toString();
+    }
+
+    private static String duration(long nanos){
+        if(nanos < 10_000){
+            return nanos + "ns";
+        }
+        if(nanos < 10_000_000){
+            return nanos / 1_000 + "us";
+        }
+        if(nanos < 10_000_000_000L){
+            return nanos / 1_000_000 + "ms";
+        }
+        return nanos / 1_000_000_000 + "s";
+    }
+
+    static String bytes(long bytes){
+        String[] units = {"B", "K", "M", "G", "T"};
+        int unit = 0;
+        double value = bytes;
+        while(value >= 1024 && unit < units.length - 1){
+            value /= 1024;
+            unit++;
+        }
+        return unit == 0 ? bytes + "B" : String.format("%.1f%s", value, units[unit]);
+    }
+};
@@ -0,0 +1,614 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32C;
+
+// cp, with its recursive, incremental (-u) and verifying (--verify) modes.
+final class CopyCommands extends Invocation{
+    CopyCommands(Terminal terminal){
+        super(terminal);
+    }
+
+    void cp(String[] args) {
+        if(args.length > 0 && args[0].startsWith("-")){
+            cp_r(args);
+            return;
+        }
+        
+        if (args.length < 2) {
+            error("Usage: cp <source> <destination>");
+            return;
+        }
+        
+        File src = new File(currentDir.toFile(), args[0]);
+        File dest = new File(currentDir.toFile(), args[1]);
+
+        if (!src.exists()) {
+            error("Source not found: " + args[0]);
+            return;
+        }
+
+        if (dest.isDirectory()) {
+            dest = new File(dest, src.getName());
+        }
+
+        try {
+            copyFile(src.toPath(), dest.toPath());
+            out.println("File copied successfully to " + dest.getPath());
+        } catch (IOException e) {
+            if (!cancelled("cp")) {
+                error("Error copying file: " + e.getMessage());
+            }
+        }
+    }
+
+    // cp [-r] [-u|--sync] [--verify[=algorithm]] <source> <destination>.
+    // With -u (--sync implies -r) files the destination already holds are
+    // left alone; see copyUpdated. --verify hashes every file as it is
+    // copied and prints sum lines for the copies instead of the summary.
+    private void cp_r(String[] args) {
+        boolean recursive = false;
+        boolean sync = false;
+        String verify = null;
+        int startIndex = 0;
+
+        for (; startIndex < args.length && args[startIndex].startsWith("-"); startIndex++) {
+            String flag = args[startIndex];
+            if (flag.equals("--sync")) {
+                recursive = true;
+                sync = true;
+                continue;
+            }
+            if (flag.equals("--verify") || flag.startsWith("--verify=")) {
+                verify = flag.equals("--verify") ? FileHash.DEFAULT : flag.substring("--verify=".length());
+                if (FileHash.create(verify) == null) {
+                    error("cp: unknown algorithm '" + verify + "' (use " + String.join(", ", FileHash.NAMES) + ")");
+                    return;
+                }
+                continue;
+            }
+            for (int i = 1; i < flag.length(); i++) {
+                char c = flag.charAt(i);
+                if (c == 'r') {
+                    recursive = true;
+                } else if (c == 'u') {
+                    sync = true;
+                } else {
+                    error("cp: invalid option '" + flag + "'");
+                    return;
+                }
+            }
+        }
+        if (args.length - startIndex < 2) {
+            error("Usage: cp [-r] [-u|--sync] [--verify[=algorithm]] <source> <destination>");
+            return;
+        }
+
+        File src = new File(currentDir.toFile(), args[startIndex]);
+        File dest = new File(currentDir.toFile(), args[startIndex + 1]);
+
+        if (!src.exists()) {
+            error("Source not found: " + src.getPath());
+            return;
+        }
+
+        SyncState state = sync ? new SyncState() : null;
+        try {
+            if (src.isDirectory()) {
+                if (!recursive) {
+                    error("Omitting directory '" + src.getName() + "' (use -r to copy recursively)");
+                    return;
+                }
+                Path indexes = terminal.stateDirectory().resolve("cp");
+                if (sync) {
+                    Files.createDirectories(dest.toPath());
+                    Files.createDirectories(indexes);
+                    state.index = FileIndex.load(syncIndex(indexes, dest.toPath()));
+                }
+                copyDirectory(src.toPath(), dest.toPath(), state, verify);
+                if (sync) {
+                    state.index.save();
+                    pruneSyncIndexes(indexes, syncIndex(indexes, dest.toPath()));
+                }
+            } else {
+                if (dest.isDirectory()) {
+                    dest = new File(dest, src.getName());
+                }
+                if (sync) {
+                    copyUpdated(src.toPath(), Files.readAttributes(src.toPath(), BasicFileAttributes.class),
+                            dest.toPath(), null, state, verify);
+                } else {
+                    copyFile(src.toPath(), dest.toPath(), verify);
+                }
+            }
+        } catch (IOException e) {
+            if (!cancelled("cp")) {
+                error("Error copying file: " + e.getMessage());
+            }
+            return;
+        } finally {
+            sums.values().forEach(out::println);
+        }
+        if (cancelled("cp") || verify != null) {
+            return;
+        }
+
+        if (sync) {
+            out.println("Synced " + dest.getPath() + ": " + state.copied + " copied, " + state.unchanged + " unchanged");
+        } else {
+            out.println("Copied successfully to " + dest.getPath());
+        }
+    }
+
+    private static final long SPLIT_FILE_SIZE = 64L << 20;
+
+    // Copies src to dest; with an algorithm (cp --verify), see copyHashed.
+    private void copyFile(Path src, Path dest, String verify) throws IOException {
+        if (verify != null) {
+            copyHashed(src, dest, verify, false);
+        } else {
+            copyFile(src, dest);
+        }
+    }
+
+    private void copyFile(Path src, Path dest) throws IOException {
+        try (FileChannel in = FileChannel.open(src, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(dest, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            copyRange(in, out, 0, in.size());
+            io.touched(1);
+        }
+    }
+
+    // Copies [position, position + count) of in to the same offset of out.
+    // transferTo lets the kernel move the bytes; if it stops making progress
+    // (some file systems and channel types don't support it) the rest is copied
+    // through a large direct buffer.
+    private void copyRange(FileChannel in, FileChannel out, long position, long count) throws IOException {
+        long start = position;
+        long end = position + count;
+        out.position(position);
+        while (position < end) {
+            checkCancelled();
+            long copied = in.transferTo(position, Math.min(CANCEL_CHECK_SIZE, end - position), out);
+            if (copied <= 0) {
+                break;
+            }
+            position += copied;
+        }
+        if (position < end) {
+            position = copyBuffered(in, out, position, end, null);
+        }
+        io.read(position - start);
+        io.wrote(position - start);
+    }
+
+    // Like copyRange, but the bytes go through a direct buffer so they can be
+    // summed on the way; returns their CRC32C. A range the file no longer
+    // has is an error, since its sum would not describe the copy.
+    private long copyRangeChecked(FileChannel in, FileChannel out, long position, long count) throws IOException {
+        CRC32C crc = new CRC32C();
+        long end = copyBuffered(in, out, position, position + count, crc);
+        io.read(end - position);
+        io.wrote(end - position);
+        if (end < position + count) {
+            throw new IOException("file shrank while it was copied");
+        }
+        return crc.getValue();
+    }
+
+    // Copies [position, end) of in to out through a direct buffer, updating
+    // crc if there is one, and returns where it stopped (early at end of file).
+    private long copyBuffered(FileChannel in, FileChannel out, long position, long end, CRC32C crc) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) Math.max(1, Math.min(COPY_BUFFER_SIZE, end - position)));
+        while (position < end) {
+            checkCancelled();
+            buffer.clear();
+            if (buffer.remaining() > end - position) {
+                buffer.limit((int) (end - position));
+            }
+            int read = in.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            buffer.flip();
+            if (crc != null) {
+                crc.update(buffer.duplicate());
+            }
+            while (buffer.hasRemaining()) {
+                out.write(buffer, position + buffer.position());
+            }
+            position += read;
+        }
+        return position;
+    }
+
+    // Returns the CRC32C of a followed by b, from their separate CRCs and b's
+    // length, as zlib's crc32_combine does: appending length2 zero bits to
+    // crc1 is a linear map, applied by repeated squaring of its matrix.
+    static long crc32cCombine(long crc1, long crc2, long length2) {
+        if (length2 <= 0) {
+            return crc1;
+        }
+        long[] even = new long[32];
+        long[] odd = new long[32];
+        odd[0] = 0x82F63B78L; // CRC-32C polynomial, reflected
+        long row = 1;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        gf2Square(even, odd); // two zero bits
+        gf2Square(odd, even); // four zero bits
+        do {
+            gf2Square(even, odd);
+            if ((length2 & 1) != 0) {
+                crc1 = gf2Times(even, crc1);
+            }
+            length2 >>= 1;
+            if (length2 == 0) {
+                break;
+            }
+            gf2Square(odd, even);
+            if ((length2 & 1) != 0) {
+                crc1 = gf2Times(odd, crc1);
+            }
+            length2 >>= 1;
+        } while (length2 != 0);
+        return crc1 ^ crc2;
+    }
+
+    private static long gf2Times(long[] matrix, long vector) {
+        long sum = 0;
+        for (int i = 0; vector != 0; i++, vector >>>= 1) {
+            if ((vector & 1) != 0) {
+                sum ^= matrix[i];
+            }
+        }
+        return sum;
+    }
+
+    private static void gf2Square(long[] square, long[] matrix) {
+        for (int n = 0; n < 32; n++) {
+            square[n] = gf2Times(matrix, matrix[n]);
+        }
+    }
+
+    // Sum lines of the copies made with --verify, by destination. Files are
+    // copied in parallel, so the lines are printed sorted once cp is done.
+    private final ConcurrentSkipListMap<Path, String> sums = new ConcurrentSkipListMap<>();
+
+    // Copies src to dest through a direct buffer, hashing the bytes on their
+    // way through, so the source is only read once. With an algorithm
+    // (cp --verify) it records the sum line of the copy, which can be checked
+    // later with sum -c; with crc it returns the copy's CRC32C for cp -u's
+    // index, and null otherwise.
+    private byte[] copyHashed(Path src, Path dest, String algorithm, boolean crc) throws IOException {
+        FileHash hash = algorithm == null ? null : FileHash.create(algorithm);
+        CRC32C crc32c = crc ? new CRC32C() : null;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+        long copied = 0;
+        try (FileChannel in = FileChannel.open(src, StandardOpenOption.READ);
+             FileChannel target = FileChannel.open(dest, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (in.read(buffer) >= 0) {
+                checkCancelled();
+                buffer.flip();
+                copied += buffer.remaining();
+                if (hash != null) {
+                    hash.update(buffer.duplicate());
+                }
+                if (crc32c != null) {
+                    crc32c.update(buffer.duplicate());
+                }
+                while (buffer.hasRemaining()) {
+                    target.write(buffer);
+                }
+                buffer.clear();
+            }
+        }
+        io.read(copied);
+        io.wrote(copied);
+        io.touched(1);
+        if (hash != null) {
+            Path copy = dest.toAbsolutePath().normalize();
+            sums.put(copy, FileHash.hex(hash.digest()) + "  " + displayName(copy));
+        }
+        return crc32c == null ? null : ByteBuffer.allocate(4).putInt((int) crc32c.getValue()).array();
+    }
+
+    // Bookkeeping for one cp -u run.
+    private static final class SyncState {
+        FileIndex index;
+        final LongAdder copied = new LongAdder();
+        final LongAdder unchanged = new LongAdder();
+        // Split copies finish on several workers; their mtimes and index
+        // entries are set once the pool is done.
+        final List<SplitCopy> pending = Collections.synchronizedList(new ArrayList<>());
+    }
+
+    // A file copied in SPLIT_FILE_SIZE ranges by cp -u. Each worker stores
+    // the CRC32C of its range (-1 until it succeeds); combined in order they
+    // are the file's.
+    private static final class SplitCopy {
+        final Path src;
+        final Path target;
+        final String key;
+        final BasicFileAttributes attrs;
+        final long[] crcs;
+
+        SplitCopy(Path src, Path target, String key, BasicFileAttributes attrs) {
+            this.src = src;
+            this.target = target;
+            this.key = key;
+            this.attrs = attrs;
+            this.crcs = new long[(int) ((attrs.size() + SPLIT_FILE_SIZE - 1) / SPLIT_FILE_SIZE)];
+            Arrays.fill(crcs, -1);
+        }
+    }
+
+    // Indexes of destination checksums kept by cp -u, one per destination
+    // tree, in the cp folder of the terminal's state directory. They are kept
+    // outside the tree, so the copy holds only what was copied and find,
+    // dupes and zip never come across them. An index not used for
+    // SYNC_INDEX_MAX_AGE is deleted, so those of trees that are gone don't
+    // pile up; losing one only costs a re-read.
+    private static final long SYNC_INDEX_MAX_AGE = TimeUnit.DAYS.toMillis(30);
+
+    // The index of a destination tree is named after its absolute path.
+    private static Path syncIndex(Path indexes, Path destDir) {
+        FileHash hash = FileHash.create("xxh64");
+        hash.update(ByteBuffer.wrap(destDir.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8)));
+        return indexes.resolve(FileHash.hex(hash.digest()) + ".index");
+    }
+
+    // Marks current as used and deletes the indexes nobody has used lately.
+    private static void pruneSyncIndexes(Path indexes, Path current) throws IOException {
+        long now = System.currentTimeMillis();
+        if (Files.exists(current)) {
+            Files.setLastModifiedTime(current, FileTime.fromMillis(now));
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(indexes, "*.index")) {
+            for (Path index : stream) {
+                try {
+                    if (now - Files.getLastModifiedTime(index).toMillis() > SYNC_INDEX_MAX_AGE) {
+                        Files.deleteIfExists(index);
+                    }
+                } catch (IOException ignored) {
+                    // Another cp may be replacing it; it is only a cache.
+                }
+            }
+        }
+    }
+
+    // Copies src to target unless target already holds the same bytes, then
+    // gives target the source's mtime so the next run's size+mtime check
+    // passes without reading anything. Files of a tree are summed while they
+    // are copied and their CRC32C goes into the index, so a later run that
+    // finds only the mtime changed reads just the source.
+    private void copyUpdated(Path src, BasicFileAttributes attrs, Path target, String key, SyncState state,
+                             String verify) throws IOException {
+        if (unchanged(src, attrs, target, key, state.index)) {
+            state.unchanged.increment();
+            return;
+        }
+        if (state.index == null) {
+            copyFile(src, target, verify);
+        } else {
+            byte[] crc = copyHashed(src, target, verify, true);
+            state.index.put(key, attrs.size(), attrs.lastModifiedTime().toMillis(), crc);
+        }
+        Files.setLastModifiedTime(target, attrs.lastModifiedTime());
+        state.copied.increment();
+    }
+
+    private void copyUpdatedLogged(Path src, BasicFileAttributes attrs, Path target, String key, SyncState state,
+                                   String verify) {
+        if (cancelled.get()) {
+            return;
+        }
+        try {
+            copyUpdated(src, attrs, target, key, state, verify);
+        } catch (IOException e) {
+            if (!cancelled.get()) {
+                error("Error copying file: " + e.getMessage());
+            }
+        }
+    }
+
+    // Decides whether target already matches src. Equal size and mtime (to the
+    // millisecond, as file systems store it) is trusted as is. With equal size
+    // but a different mtime both sides are compared by CRC32C; the target's
+    // checksum comes from the index when the target hasn't changed since it
+    // was recorded, so only the source has to be read.
+    private boolean unchanged(Path src, BasicFileAttributes attrs, Path target, String key, FileIndex index)
+            throws IOException {
+        BasicFileAttributes current;
+        try {
+            current = Files.readAttributes(target, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            current = null;
+        }
+        if (current == null || !current.isRegularFile() || current.size() != attrs.size()) {
+            if (index != null) {
+                index.remove(key);
+            }
+            return false;
+        }
+        long modified = attrs.lastModifiedTime().toMillis();
+        if (current.lastModifiedTime().toMillis() == modified) {
+            return true;
+        }
+        byte[] targetSum = index == null ? null
+                : index.digest(key, current.size(), current.lastModifiedTime().toMillis());
+        if (targetSum == null) {
+            targetSum = crc32c(target);
+        }
+        byte[] sourceSum = crc32c(src);
+        if (index != null) {
+            index.put(key, attrs.size(), modified, sourceSum);
+        }
+        if (!Arrays.equals(sourceSum, targetSum)) {
+            return false;
+        }
+        Files.setLastModifiedTime(target, attrs.lastModifiedTime());
+        return true;
+    }
+
+    private byte[] crc32c(Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                checkCancelled();
+                buffer.flip();
+                io.read(buffer.remaining());
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return ByteBuffer.allocate(4).putInt((int) crc.getValue()).array();
+    }
+
+    // Copies the tree on the shared TreeWalker: directories are created as
+    // they are entered and files are copied by the walker threads as they
+    // are visited. Files of SPLIT_FILE_SIZE or more are split into ranges
+    // copied by a separate bounded pool, unless the copies are hashed
+    // (verify), which has to happen in order. With a sync state (cp -u)
+    // unchanged files are skipped.
+    private void copyDirectory(Path srcDir, Path destDir, SyncState sync, String verify) throws IOException {
+        int workers = Math.max(4, Runtime.getRuntime().availableProcessors());
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(workers * 4), new ThreadPoolExecutor.CallerRunsPolicy());
+        Path destRoot = destDir.toAbsolutePath().normalize();
+        TreeWalker walker = new TreeWalker(new TreeWalker.Visitor() {
+            @Override
+            public boolean enterDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (dir.toAbsolutePath().normalize().equals(destRoot)) {
+                    return false;
+                }
+                Files.createDirectories(destDir.resolve(srcDir.relativize(dir).toString()));
+                return true;
+            }
+
+            @Override
+            public long visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                String key = srcDir.relativize(file).toString();
+                Path target = destDir.resolve(key);
+                long size = attrs.size();
+                if (size < SPLIT_FILE_SIZE || verify != null) {
+                    if (sync == null) {
+                        copyLogged(file, target, verify);
+                    } else {
+                        copyUpdatedLogged(file, attrs, target, key, sync, verify);
+                    }
+                } else if (sync == null) {
+                    submitSplit(pool, file, target, size, null);
+                } else if (unchanged(file, attrs, target, key, sync.index)) {
+                    sync.unchanged.increment();
+                } else {
+                    SplitCopy copy = new SplitCopy(file, target, key, attrs);
+                    submitSplit(pool, file, target, size, copy.crcs);
+                    sync.pending.add(copy);
+                    sync.copied.increment();
+                }
+                return size;
+            }
+
+            @Override
+            public void failed(Path path, IOException e) {
+                if (!cancelled.get()) {
+                    error("Error copying file: " + e.getMessage());
+                }
+            }
+        }, null, true, cancelled::get);
+        try {
+            walker.walk(srcDir);
+        } finally {
+            pool.shutdown();
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (sync != null && !cancelled.get()) {
+            for (SplitCopy copy : sync.pending) {
+                Files.setLastModifiedTime(copy.target, copy.attrs.lastModifiedTime());
+                long crc = 0;
+                long done = 0;
+                for (long range : copy.crcs) {
+                    if (range < 0) {
+                        crc = -1;
+                        break;
+                    }
+                    long count = Math.min(SPLIT_FILE_SIZE, copy.attrs.size() - done);
+                    crc = crc32cCombine(crc, range, count);
+                    done += count;
+                }
+                if (crc >= 0) {
+                    sync.index.put(copy.key, copy.attrs.size(), copy.attrs.lastModifiedTime().toMillis(),
+                            ByteBuffer.allocate(4).putInt((int) crc).array());
+                }
+            }
+        }
+    }
+
+    // Copies src to dest in SPLIT_FILE_SIZE ranges on the pool. With crcs,
+    // each range is summed on the way and its CRC32C stored by range number.
+    private void submitSplit(ExecutorService pool, Path src, Path dest, long size, long[] crcs) throws IOException {
+        FileChannel.open(dest, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING).close();
+        io.touched(1);
+        for (long position = 0; position < size; position += SPLIT_FILE_SIZE) {
+            long start = position;
+            long count = Math.min(SPLIT_FILE_SIZE, size - position);
+            pool.execute(() -> {
+                try (FileChannel in = FileChannel.open(src, StandardOpenOption.READ);
+                     FileChannel out = FileChannel.open(dest, StandardOpenOption.WRITE)) {
+                    if (crcs == null) {
+                        copyRange(in, out, start, count);
+                    } else {
+                        crcs[(int) (start / SPLIT_FILE_SIZE)] = copyRangeChecked(in, out, start, count);
+                    }
+                } catch (IOException e) {
+                    if (!cancelled.get()) {
+                        error("Error copying file: " + e.getMessage());
+                    }
+                }
+            });
+        }
+    }
+
+    private void copyLogged(Path src, Path dest, String verify) {
+        if (cancelled.get()) {
+            return;
+        }
+        try {
+            copyFile(src, dest, verify);
+        } catch (IOException e) {
+            if (!cancelled.get()) {
+                error("Error copying file: " + e.getMessage());
+            }
+        }
+    }
+};
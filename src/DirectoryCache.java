@@ -0,0 +1,280 @@
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Caches sorted directory listings together with each entry's basic
+// attributes. Listings are kept up to date by a WatchService and evicted
+// least-recently-used once their estimated size passes the memory cap. A
+// listing is only trusted while its directory's modification time is
+// unchanged, so a watch event that hasn't been delivered yet can't hide a
+// file this shell just created. File systems keep mtimes in coarse ticks
+// (a few milliseconds on ext4, seconds on some), and a change in the same
+// tick as the listing leaves the mtime as it was, so a listing of a
+// directory changed within SETTLE_MILLIS of being read is not trusted at
+// all (as git does with "racily clean" index entries).
+class DirectoryCache{
+    static final Comparator<String> ORDER = String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.naturalOrder());
+    private static final long ENTRY_OVERHEAD = 120;
+    private static final long SETTLE_MILLIS = 2000;
+
+    static class Entry{
+        final String name;
+        final boolean directory;
+        final boolean symbolicLink;
+        final long size;
+        final long modified;
+
+        Entry(String name, BasicFileAttributes attrs, boolean symbolicLink){
+            this.name = name;
+            this.directory = attrs != null && attrs.isDirectory();
+            this.symbolicLink = symbolicLink;
+            this.size = attrs == null ? 0 : attrs.size();
+            this.modified = attrs == null ? 0 : attrs.lastModifiedTime().toMillis();
+        }
+    }
+
+    private static class Listing{
+        final TreeMap<String, Entry> entries = new TreeMap<>(ORDER);
+        // The directory mtime the entries are known to match; null while
+        // they can't be trusted (see settled).
+        FileTime modified;
+        WatchKey key;
+        long footprint;
+        Entry[] snapshot;
+    }
+
+    private final long capacity;
+    private final LinkedHashMap<Path, Listing> listings = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+    private WatchService watcher;
+    private long footprint;
+
+    DirectoryCache(long capacity){
+        this.capacity = capacity;
+    }
+
+    Entry[] list(Path dir) throws IOException{
+        long now = System.currentTimeMillis();
+        FileTime modified = Files.getLastModifiedTime(dir);
+        synchronized(this){
+            Listing listing = listings.get(dir);
+            if(listing != null && modified.equals(listing.modified)){
+                if(listing.snapshot == null){
+                    listing.snapshot = listing.entries.values().toArray(new Entry[0]);
+                }
+                return listing.snapshot;
+            }
+        }
+        Listing listing = load(dir, settled(modified, now));
+        Entry[] snapshot = listing.entries.values().toArray(new Entry[0]);
+        listing.snapshot = snapshot;
+        synchronized(this){
+            remove(dir);
+            if(listing.footprint <= capacity){
+                try{
+                    listing.key = dir.register(watcher(), StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                    keys.put(listing.key, dir);
+                    listings.put(dir, listing);
+                    footprint += listing.footprint;
+                    evict();
+                } catch(IOException | UnsupportedOperationException ignored){
+                    // Not watchable (e.g. a zip file system): serve it uncached.
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    private static Listing load(Path dir, FileTime modified) throws IOException{
+        Listing listing = new Listing();
+        listing.modified = modified;
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(dir)){
+            for(Path path : stream){
+                Entry entry = read(path);
+                listing.entries.put(entry.name, entry);
+                listing.footprint += ENTRY_OVERHEAD + 2L * entry.name.length();
+            }
+        }
+        return listing;
+    }
+
+    // Reads an entry's attributes with one call; only symbolic links need a
+    // second one to describe their target.
+    static Entry read(Path path){
+        String name = path.getFileName().toString();
+        BasicFileAttributes attrs;
+        try{
+            attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch(IOException e){
+            return new Entry(name, null, false);
+        }
+        if(!attrs.isSymbolicLink()){
+            return new Entry(name, attrs, false);
+        }
+        try{
+            return new Entry(name, Files.readAttributes(path, BasicFileAttributes.class), true);
+        } catch(IOException e){
+            return new Entry(name, attrs, true);
+        }
+    }
+
+    // Lists a directory without caching it, for one-off walks such as ls -R.
+    static Entry[] scan(Path dir) throws IOException{
+        List<Entry> entries = new ArrayList<>();
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(dir)){
+            for(Path path : stream){
+                entries.add(read(path));
+            }
+        }
+        Entry[] sorted = entries.toArray(new Entry[0]);
+        Arrays.sort(sorted, (a, b) -> ORDER.compare(a.name, b.name));
+        return sorted;
+    }
+
+    // Stops watching. An inotify watch still open when the JVM exits slows
+    // the exit down by hundreds of milliseconds on Linux, so the shell
+    // closes the cache before it exits.
+    synchronized void close(){
+        if(watcher != null){
+            try{
+                watcher.close();
+            } catch(IOException e){
+                // Exiting anyway.
+            }
+            watcher = null;
+        }
+        listings.clear();
+        keys.clear();
+        footprint = 0;
+    }
+
+    private WatchService watcher() throws IOException{
+        if(watcher == null){
+            watcher = FileSystems.getDefault().newWatchService();
+            Thread thread = new Thread(this::watch, "ls-cache-watcher");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return watcher;
+    }
+
+    // Applies watch events to their listings. The directory's mtime is read
+    // before the events are taken, so a change that comes after them moves
+    // the mtime past what the listing records and the next list() reloads
+    // it instead of trusting it. Files are read outside the monitor, so
+    // list() never waits on the watcher's I/O.
+    private void watch(){
+        while(true){
+            WatchKey key;
+            try{
+                key = watcher.take();
+            } catch(InterruptedException | ClosedWatchServiceException e){
+                return;
+            }
+            Path dir;
+            synchronized(this){
+                dir = keys.get(key);
+            }
+            if(dir == null){
+                continue;
+            }
+            long now = System.currentTimeMillis();
+            FileTime before = modified(dir);
+            boolean overflow = false;
+            Map<String, Entry> changed = new LinkedHashMap<>();
+            for(WatchEvent<?> event : key.pollEvents()){
+                if(event.kind() == StandardWatchEventKinds.OVERFLOW){
+                    overflow = true;
+                    break;
+                }
+                // The file as it is now, whatever the event said (null if gone).
+                String name = event.context().toString();
+                Path path = dir.resolve(name);
+                changed.put(name, Files.exists(path, LinkOption.NOFOLLOW_LINKS) ? read(path) : null);
+            }
+            boolean valid = key.reset();
+            FileTime after = modified(dir);
+            synchronized(this){
+                Listing listing = listings.get(dir);
+                if(listing == null || listing.key != key){
+                    continue;
+                }
+                if(overflow || !valid || before == null){
+                    remove(dir);
+                    continue;
+                }
+                for(Map.Entry<String, Entry> change : changed.entrySet()){
+                    String name = change.getKey();
+                    if(listing.entries.remove(name) != null){
+                        listing.footprint -= ENTRY_OVERHEAD + 2L * name.length();
+                        footprint -= ENTRY_OVERHEAD + 2L * name.length();
+                    }
+                    if(change.getValue() != null){
+                        listing.entries.put(name, change.getValue());
+                        listing.footprint += ENTRY_OVERHEAD + 2L * name.length();
+                        footprint += ENTRY_OVERHEAD + 2L * name.length();
+                    }
+                }
+                listing.snapshot = null;
+                // Up to date as of before; if the directory changed again
+                // meanwhile, its events are still to come, so reload instead.
+                listing.modified = before.equals(after) ? settled(before, now) : null;
+                evict();
+            }
+        }
+    }
+
+    // Returns modified if a directory with that mtime, seen at time now,
+    // can't still change without its mtime changing too; null otherwise.
+    private static FileTime settled(FileTime modified, long now){
+        return now - modified.toMillis() >= SETTLE_MILLIS ? modified : null;
+    }
+
+    private static FileTime modified(Path dir){
+        try{
+            return Files.getLastModifiedTime(dir);
+        } catch(IOException e){
+            return null;
+        }
+    }
+
+    private void remove(Path dir){
+        Listing listing = listings.remove(dir);
+        if(listing != null){
+            footprint -= listing.footprint;
+            keys.remove(listing.key);
+            listing.key.cancel();
+        }
+    }
+
+    private void evict(){
+        Iterator<Map.Entry<Path, Listing>> eldest = listings.entrySet().iterator();
+        while(footprint > capacity && eldest.hasNext()){
+            Listing listing = eldest.next().getValue();
+            eldest.remove();
+            footprint -= listing.footprint;
+            keys.remove(listing.key);
+            listing.key.cancel();
+        }
+    }
+};
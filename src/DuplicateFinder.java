@@ -0,0 +1,225 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.zip.CRC32C;
+
+// Finds files with identical content for the dupes command. Candidates are
+// narrowed in rounds that each cost more than the one before: equal size,
+// then an equal CRC32C of the first and last EDGE_BLOCK bytes, then an
+// equal SHA-256 of the whole content. Files are hashed in parallel. Both
+// digests go into a FileIndex (the edge digest, followed by the full one
+// once it is known), so a repeat scan only reads files that changed.
+class DuplicateFinder{
+    static final int EDGE_BLOCK = 4 << 10;
+    private static final int EDGE_DIGEST = 8;
+    private static final int HASH_BUFFER_SIZE = 1 << 20;
+
+    static final class Candidate{
+        final Path path;
+        final String key;
+        final long size;
+        final long modified;
+        volatile byte[] edge;
+        volatile byte[] full;
+
+        Candidate(Path path, long size, long modified){
+            this.path = path;
+            this.key = path.toString();
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+
+    interface Failure{
+        void failed(Path path, IOException e);
+    }
+
+    private final FileIndex index;
+    private final CommandStats.Usage io;
+    private final BooleanSupplier cancelled;
+    final LongAdder hashed = new LongAdder();
+
+    DuplicateFinder(FileIndex index, CommandStats.Usage io, BooleanSupplier cancelled){
+        this.index = index;
+        this.io = io;
+        this.cancelled = cancelled;
+    }
+
+    // Returns the sets of identical files, largest files first, each sorted
+    // by path. Files that cannot be read are reported and left out.
+    List<List<Candidate>> find(Collection<Candidate> files, Failure failure) throws IOException{
+        Map<Long, List<Candidate>> bySize = new HashMap<>();
+        for(Candidate file : files){
+            bySize.computeIfAbsent(file.size, size -> new ArrayList<>()).add(file);
+        }
+        List<List<Candidate>> groups = new ArrayList<>();
+        for(List<Candidate> group : bySize.values()){
+            if(group.size() > 1){
+                groups.add(group);
+            }
+        }
+        List<Candidate> pending = new ArrayList<>();
+        for(List<Candidate> group : groups){
+            for(Candidate file : group){
+                byte[] digest = index.digest(file.key, file.size, file.modified);
+                if(digest != null && digest.length >= EDGE_DIGEST){
+                    file.edge = Arrays.copyOf(digest, EDGE_DIGEST);
+                    file.full = digest.length > EDGE_DIGEST ? Arrays.copyOfRange(digest, EDGE_DIGEST, digest.length) : null;
+                } else{
+                    pending.add(file);
+                }
+            }
+        }
+        hashAll(pending, false, failure);
+        groups = split(groups, file -> file.edge);
+
+        pending.clear();
+        for(List<Candidate> group : groups){
+            for(Candidate file : group){
+                if(file.full == null){
+                    pending.add(file);
+                }
+            }
+        }
+        hashAll(pending, true, failure);
+        groups = split(groups, file -> file.full);
+
+        for(List<Candidate> group : groups){
+            group.sort(Comparator.comparing(file -> file.path));
+        }
+        groups.sort(Comparator.<List<Candidate>>comparingLong(group -> -group.get(0).size)
+                .thenComparing(group -> group.get(0).path));
+        return groups;
+    }
+
+    // Splits every group by digest, dropping files without one and sets of one.
+    private static List<List<Candidate>> split(List<List<Candidate>> groups,
+                                               Function<Candidate, byte[]> digest){
+        List<List<Candidate>> result = new ArrayList<>();
+        for(List<Candidate> group : groups){
+            Map<ByteBuffer, List<Candidate>> byDigest = new HashMap<>();
+            for(Candidate file : group){
+                byte[] bytes = digest.apply(file);
+                if(bytes != null){
+                    byDigest.computeIfAbsent(ByteBuffer.wrap(bytes), key -> new ArrayList<>()).add(file);
+                }
+            }
+            for(List<Candidate> same : byDigest.values()){
+                if(same.size() > 1){
+                    result.add(same);
+                }
+            }
+        }
+        return result;
+    }
+
+    private void hashAll(List<Candidate> files, boolean full, Failure failure) throws IOException{
+        if(files.isEmpty()){
+            return;
+        }
+        int workers = Math.min(files.size(), Math.max(4, Runtime.getRuntime().availableProcessors()));
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try{
+            List<Future<?>> tasks = new ArrayList<>();
+            for(Candidate file : files){
+                tasks.add(pool.submit(() -> {
+                    if(cancelled.getAsBoolean()){
+                        return;
+                    }
+                    try{
+                        if(full){
+                            file.full = fullDigest(file.path);
+                            hashed.increment();
+                        } else{
+                            file.edge = edgeDigest(file.path, file.size);
+                        }
+                        byte[] digest = file.full == null ? file.edge : concat(file.edge, file.full);
+                        index.put(file.key, file.size, file.modified, digest);
+                    } catch(IOException e){
+                        if(!cancelled.getAsBoolean()){
+                            failure.failed(file.path, e);
+                        }
+                    }
+                }));
+            }
+            for(Future<?> task : tasks){
+                task.get();
+            }
+        } catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted");
+        } catch(ExecutionException e){
+            throw new IOException(e.getCause());
+        } finally{
+            pool.shutdownNow();
+        }
+        if(cancelled.getAsBoolean()){
+            throw new InterruptedIOException("cancelled");
+        }
+    }
+
+    private byte[] edgeDigest(Path path, long size) throws IOException{
+        ByteBuffer buffer = ByteBuffer.allocate(EDGE_BLOCK);
+        ByteBuffer digest = ByteBuffer.allocate(EDGE_DIGEST);
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            for(long position : new long[]{0, Math.max(0, size - EDGE_BLOCK)}){
+                buffer.clear();
+                while(buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0){
+                }
+                buffer.flip();
+                io.read(buffer.remaining());
+                CRC32C crc = new CRC32C();
+                crc.update(buffer);
+                digest.putInt((int) crc.getValue());
+            }
+        }
+        return digest.array();
+    }
+
+    private byte[] fullDigest(Path path) throws IOException{
+        MessageDigest sha;
+        try{
+            sha = MessageDigest.getInstance("SHA-256");
+        } catch(NoSuchAlgorithmException e){
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(HASH_BUFFER_SIZE);
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            while(channel.read(buffer) >= 0){
+                if(cancelled.getAsBoolean()){
+                    throw new InterruptedIOException("cancelled");
+                }
+                buffer.flip();
+                io.read(buffer.remaining());
+                sha.update(buffer);
+                buffer.clear();
+            }
+        }
+        return sha.digest();
+    }
+
+    private static byte[] concat(byte[] a, byte[] b){
+        byte[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+};
@@ -0,0 +1,274 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.BooleanSupplier;
+
+// External merge sort behind the sort command. Lines are collected until
+// their estimated heap footprint reaches the memory budget, sorted with
+// Arrays.parallelSort, and, if more input follows, written to a temporary
+// run file. Runs are then merged through a heap of buffered readers, in
+// several passes if there are more than MAX_FAN_IN of them, so the heap in
+// use stays within the budget however large the input is.
+class ExternalSort{
+    // Bytes counted per line on top of its content: the array header, the
+    // reference to it and parallelSort's scratch copy of that reference.
+    private static final int LINE_OVERHEAD = 48;
+    private static final int MAX_FAN_IN = 128;
+    private static final int MIN_MERGE_BUFFER = 4 << 10;
+    private static final int MAX_MERGE_BUFFER = 1 << 20;
+
+    private final Comparator<byte[]> order;
+    private final boolean unique;
+    private final long budget;
+    private final Path tempDir;
+    private final BooleanSupplier cancelled;
+    private final List<Path> runs = new ArrayList<>();
+    private final List<Path> temporary = new ArrayList<>();
+    long bytesWritten;
+
+    // With unique, only the first of the lines that order considers equal is kept.
+    ExternalSort(Comparator<byte[]> order, boolean unique, long budget, Path tempDir, BooleanSupplier cancelled){
+        this.order = order;
+        this.unique = unique;
+        this.budget = budget;
+        this.tempDir = tempDir;
+        this.cancelled = cancelled;
+    }
+
+    void sort(List<LineReader> inputs, OutputStream out) throws IOException{
+        try{
+            List<byte[]> lines = new ArrayList<>();
+            long used = 0;
+            for(LineReader input : inputs){
+                byte[] line;
+                while((line = input.readLine()) != null){
+                    lines.add(line);
+                    used += line.length + LINE_OVERHEAD;
+                    if(used >= budget){
+                        spill(lines);
+                        used = 0;
+                    }
+                }
+            }
+            if(runs.isEmpty()){
+                write(sorted(lines), out);
+                return;
+            }
+            if(!lines.isEmpty()){
+                spill(lines);
+            }
+            // Runs are merged in consecutive groups, keeping their order so
+            // that equal lines still come out in input order.
+            while(runs.size() > MAX_FAN_IN){
+                List<Path> level = new ArrayList<>(runs);
+                runs.clear();
+                for(int from = 0; from < level.size(); from += MAX_FAN_IN){
+                    List<Path> group = level.subList(from, Math.min(level.size(), from + MAX_FAN_IN));
+                    Path merged = newRun();
+                    runs.add(merged);
+                    try(OutputStream run = new BufferedOutputStream(Files.newOutputStream(merged), MAX_MERGE_BUFFER)){
+                        merge(group, run);
+                    } finally{
+                        for(Path path : group){
+                            Files.deleteIfExists(path);
+                        }
+                    }
+                }
+            }
+            merge(runs, out);
+        } finally{
+            for(Path run : temporary){
+                Files.deleteIfExists(run);
+            }
+        }
+    }
+
+    private Path newRun() throws IOException{
+        Path run = Files.createTempFile(tempDir, "clios-sort", ".run");
+        temporary.add(run);
+        return run;
+    }
+
+    private byte[][] sorted(List<byte[]> lines) throws IOException{
+        checkCancelled();
+        byte[][] array = lines.toArray(new byte[0][]);
+        lines.clear();
+        Arrays.parallelSort(array, order);
+        return array;
+    }
+
+    private void spill(List<byte[]> lines) throws IOException{
+        byte[][] array = sorted(lines);
+        Path run = newRun();
+        runs.add(run);
+        try(OutputStream out = new BufferedOutputStream(Files.newOutputStream(run), MAX_MERGE_BUFFER)){
+            write(array, out);
+        }
+    }
+
+    private void write(byte[][] lines, OutputStream out) throws IOException{
+        byte[] previous = null;
+        for(byte[] line : lines){
+            if(unique && previous != null && order.compare(previous, line) == 0){
+                continue;
+            }
+            writeLine(line, out);
+            previous = line;
+        }
+    }
+
+    private void writeLine(byte[] line, OutputStream out) throws IOException{
+        out.write(line);
+        out.write('\n');
+        bytesWritten += line.length + 1;
+    }
+
+    // k-way merge of sorted runs. Ties go to the earlier run, so the merge
+    // is stable. Each reader gets an equal share of the budget as its buffer.
+    private void merge(List<Path> group, OutputStream out) throws IOException{
+        int bufferSize = (int) Math.max(MIN_MERGE_BUFFER, Math.min(MAX_MERGE_BUFFER, budget / (group.size() + 1)));
+        List<LineReader> readers = new ArrayList<>();
+        try{
+            PriorityQueue<Object[]> heap = new PriorityQueue<>(group.size(), (a, b) -> {
+                int c = order.compare((byte[]) a[0], (byte[]) b[0]);
+                return c != 0 ? c : Integer.compare((Integer) a[1], (Integer) b[1]);
+            });
+            for(Path run : group){
+                LineReader reader = new LineReader(Channels.newInputStream(FileChannel.open(run,
+                        StandardOpenOption.READ)), bufferSize);
+                readers.add(reader);
+                byte[] line = reader.readLine();
+                if(line != null){
+                    heap.add(new Object[]{line, readers.size() - 1});
+                }
+            }
+            byte[] previous = null;
+            long merged = 0;
+            while(!heap.isEmpty()){
+                if((++merged & 0xfff) == 0){
+                    checkCancelled();
+                }
+                Object[] head = heap.poll();
+                byte[] line = (byte[]) head[0];
+                if(!unique || previous == null || order.compare(previous, line) != 0){
+                    writeLine(line, out);
+                    previous = line;
+                }
+                byte[] next = readers.get((Integer) head[1]).readLine();
+                if(next != null){
+                    head[0] = next;
+                    heap.add(head);
+                }
+            }
+        } finally{
+            for(LineReader reader : readers){
+                reader.close();
+            }
+        }
+    }
+
+    private void checkCancelled() throws InterruptedIOException{
+        if(cancelled.getAsBoolean()){
+            throw new InterruptedIOException("cancelled");
+        }
+    }
+
+    // The order for sort's options. Keys (-k) are fields separated by runs of
+    // blanks, or by separator when it is not negative. As in GNU sort, a
+    // blank-separated field starts with the blanks in front of it. Lines are
+    // compared as unsigned bytes (like LC_ALL=C sort),
+    // or by their leading number with numeric. Lines with equal keys fall back
+    // to comparing whole lines, unless unique asks for key equality.
+    static Comparator<byte[]> comparator(boolean numeric, boolean reverse, int startField, int endField,
+                                         int separator, boolean unique){
+        boolean keyed = startField > 0;
+        Comparator<byte[]> key = (a, b) -> {
+            int aStart = keyed ? fieldStart(a, startField, separator) : 0;
+            int aEnd = keyed && endField > 0 ? fieldEnd(a, endField, separator) : a.length;
+            int bStart = keyed ? fieldStart(b, startField, separator) : 0;
+            int bEnd = keyed && endField > 0 ? fieldEnd(b, endField, separator) : b.length;
+            aEnd = Math.max(aStart, aEnd);
+            bEnd = Math.max(bStart, bEnd);
+            return numeric ? Double.compare(number(a, aStart, aEnd), number(b, bStart, bEnd))
+                    : Arrays.compareUnsigned(a, aStart, aEnd, b, bStart, bEnd);
+        };
+        if((keyed || numeric) && !unique){
+            key = key.thenComparing(Arrays::compareUnsigned);
+        }
+        return reverse ? key.reversed() : key;
+    }
+
+    // Offset of field (1-based) in line; line.length if there is none.
+    static int fieldStart(byte[] line, int field, int separator){
+        int i = 0;
+        for(int f = 1; f < field; f++){
+            if(separator < 0){
+                while(i < line.length && isBlank(line[i])){
+                    i++;
+                }
+                while(i < line.length && !isBlank(line[i])){
+                    i++;
+                }
+            } else{
+                while(i < line.length && line[i] != separator){
+                    i++;
+                }
+                if(i < line.length){
+                    i++;
+                }
+            }
+        }
+        return i;
+    }
+
+    static int fieldEnd(byte[] line, int field, int separator){
+        int i = fieldStart(line, field, separator);
+        while(separator < 0 && i < line.length && isBlank(line[i])){
+            i++;
+        }
+        while(i < line.length && (separator < 0 ? !isBlank(line[i]) : line[i] != separator)){
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isBlank(byte b){
+        return b == ' ' || b == '\t';
+    }
+
+    // The number at the start of line[from, to): optional '-', digits and a
+    // fraction. Anything else, including no number at all, counts as 0.
+    static double number(byte[] line, int from, int to){
+        int i = from;
+        while(i < to && isBlank(line[i])){
+            i++;
+        }
+        boolean negative = i < to && line[i] == '-';
+        if(negative){
+            i++;
+        }
+        double value = 0;
+        for(; i < to && line[i] >= '0' && line[i] <= '9'; i++){
+            value = value * 10 + (line[i] - '0');
+        }
+        if(i < to && line[i] == '.'){
+            double scale = 0.1;
+            for(i++; i < to && line[i] >= '0' && line[i] <= '9'; i++){
+                value += (line[i] - '0') * scale;
+                scale /= 10;
+            }
+        }
+        return negative ? -value : value;
+    }
+};
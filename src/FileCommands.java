@@ -0,0 +1,700 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiPredicate;
+import java.util.function.ToLongFunction;
+import java.util.regex.PatternSyntaxException;
+
+// Commands that list, create, find, measure and remove files and
+// directories.
+final class FileCommands extends Invocation{
+    FileCommands(Terminal terminal){
+        super(terminal);
+    }
+
+    // Shared by find and du; see AttributeCache.
+    private static final AttributeCache ATTRIBUTES = new AttributeCache(1 << 18, TimeUnit.SECONDS.toNanos(2));
+
+    private static final DateTimeFormatter LS_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    // ls [-l] [-a] [-R] [-S|-t] [dir ...]
+    void ls(String[] args){
+        boolean longFormat = false, all = false, recursive = false;
+        Comparator<DirectoryCache.Entry> order = null;
+        List<Path> dirs = new ArrayList<>();
+        for(String arg : args){
+            if(arg.startsWith("-") && arg.length() > 1){
+                for(char flag : arg.substring(1).toCharArray()){
+                    switch(flag){
+                        case 'l': longFormat = true; break;
+                        case 'a': all = true; break;
+                        case 'R': recursive = true; break;
+                        case 'S': order = Comparator.comparingLong((DirectoryCache.Entry e) -> -e.size); break;
+                        case 't': order = Comparator.comparingLong((DirectoryCache.Entry e) -> -e.modified); break;
+                        default:
+                            error("ls: invalid option -- '" + flag + "'");
+                            return;
+                    }
+                }
+            } else{
+                Path path = Paths.get(arg);
+                if(!path.isAbsolute()){
+                    path = currentDir.resolve(path);
+                }
+                dirs.add(path.toAbsolutePath().normalize());
+            }
+        }
+        boolean headers = recursive || dirs.size() > 1;
+        if(dirs.isEmpty()){
+            dirs.add(currentDir);
+        }
+        for(int i = 0; i < dirs.size(); i++){
+            Path dir = dirs.get(i);
+            if(i > 0){
+                out.println();
+            }
+            try{
+                if(!Files.isDirectory(dir)){
+                    // A file operand is listed as its own entry.
+                    Files.readAttributes(dir, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    printEntries(new DirectoryCache.Entry[]{DirectoryCache.read(dir)}, longFormat, true, null);
+                } else if(recursive){
+                    printTree(new TreeLister(dir, all), longFormat, all, order);
+                } else{
+                    if(headers){
+                        out.println(dir + ":");
+                    }
+                    printEntries(Terminal.LISTINGS.list(dir), longFormat, all, order);
+                }
+            }
+            catch(NoSuchFileException e){
+                error("ls: cannot access '" + dir + "': No such file or directory");
+            }
+            catch(InterruptedIOException e){
+                if(!cancelled("ls")){
+                    error("ls: " + e.getMessage());
+                }
+                return;
+            }
+            catch(Exception e){
+                error("ls: " + e.getMessage());
+            }
+        }
+    }
+
+    // Prints each directory as soon as it is read, so ls -R of a large tree
+    // starts at once and never holds more than the lister's read-ahead.
+    private void printTree(TreeLister lister, boolean longFormat, boolean all,
+                           Comparator<DirectoryCache.Entry> order) throws InterruptedIOException{
+        try{
+            boolean first = true;
+            for(TreeLister.Listing listing = lister.next(); listing != null; listing = lister.next()){
+                checkCancelled();
+                if(!first){
+                    out.println();
+                }
+                first = false;
+                out.println(listing.dir + ":");
+                if(listing.error != null){
+                    error("ls: cannot open directory " + listing.dir + ": " + listing.error.getMessage());
+                    continue;
+                }
+                printEntries(listing.entries, longFormat, all, order);
+            }
+        } finally{
+            lister.cancel();
+        }
+    }
+
+    private void printEntries(DirectoryCache.Entry[] entries, boolean longFormat, boolean all,
+                              Comparator<DirectoryCache.Entry> order){
+        if(order != null){
+            entries = entries.clone();
+            Arrays.sort(entries, order.thenComparing(e -> e.name, DirectoryCache.ORDER));
+        }
+        for(DirectoryCache.Entry entry : entries){
+            if(!all && entry.name.startsWith(".")){
+                continue;
+            }
+            if(longFormat){
+                char type = entry.symbolicLink ? 'l' : entry.directory ? 'd' : '-';
+                String time = LS_TIME.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(entry.modified), ZoneId.systemDefault()));
+                out.println(type + " " + String.format("%12d", entry.size) + " " + time + " " + entry.name);
+            } else{
+                out.println(entry.name);
+            }
+        }
+    }
+
+    void mkdir(String[] args){
+        if(args == null || args.length == 0){
+            error("mkdir: No arguments provided");
+            return;
+        }
+        for(String arg : args){
+            try{
+                Path path = Paths.get(arg);
+                if(!path.isAbsolute()){
+                    path = currentDir.resolve(path);
+                }
+                Files.createDirectory(path);
+                io.touched(1);
+            }
+            catch(Exception e){
+                error("mkdir: "+e.getMessage());
+            }
+        }
+    }
+
+    void rmdir(String[] args){
+        if(args == null || args.length == 0){
+            error("rmdir: No arguments provided");
+            return;
+        }
+        String target = args[0];
+        try{
+            if("*".equals(target)){
+                try(DirectoryStream<Path> stream = Files.newDirectoryStream(currentDir)){
+                    for(Path path : stream){
+                        if(Files.isDirectory(path)){
+                            try{
+                                Files.delete(path);
+                                io.touched(1);
+                            } catch(IOException IOE){
+                                error("rmdir: Couldn't delete "+IOE.getMessage());
+                            }
+                        }
+                    }
+                }
+                return;
+            }
+            Path path = Paths.get(target);
+            if(!path.isAbsolute()){
+                path = currentDir.resolve(path);
+            }
+            path = path.toAbsolutePath().normalize();
+            if(!Files.exists(path)){
+                error("rmdir: No such a directory: "+path);
+                return;
+            }
+            if(!Files.isDirectory(path)){
+                error("rmdir: Not a directory: "+path);
+                return;
+            }
+            try{
+                Files.delete(path);
+                io.touched(1);
+            } catch(IOException ioe){
+                error("rmdir: Couldn't delete "+ioe.getMessage());
+            }
+        }catch(Exception e){
+            error("rmdir: "+e.getMessage());
+        }
+    }
+
+    void touch(String[] args){
+        if(args == null || args.length == 0){
+            error("touch: No arguments provided");
+            return;
+        }
+        try{
+            Path path = Paths.get(args[0]);
+            if(!path.isAbsolute()){
+                path = currentDir.resolve(path);
+            }
+            path = path.toAbsolutePath().normalize();
+            Path parent = path.getParent();
+            if(parent != null && !Files.exists(parent)){
+                Files.createDirectory(parent);
+            }
+            if(!Files.exists(path)){
+                Files.createFile(path);
+            }
+            io.touched(1);
+
+        }
+        catch(Exception e){
+            error("touch: "+e.getMessage());
+        }
+    }
+
+    // rm [-r] [-f] path...: removes files and, with -r, whole directory
+    // trees (see TreeRemover). Arguments may be globs like *.tmp. -f
+    // ignores paths that don't exist. Errors are reported and the remaining
+    // paths are still removed.
+    void rm(String[] args){
+        boolean recursive = false, force = false;
+        int first = 0;
+        for(; first < args.length && args[first].startsWith("-") && args[first].length() > 1; first++){
+            if(args[first].equals("--")){
+                first++;
+                break;
+            }
+            for(int i = 1; i < args[first].length(); i++){
+                char c = args[first].charAt(i);
+                if(c == 'r' || c == 'R'){
+                    recursive = true;
+                } else if(c == 'f'){
+                    force = true;
+                } else{
+                    error("rm: invalid option '" + args[first] + "'");
+                    return;
+                }
+            }
+        }
+        if(first == args.length){
+            if(!force){
+                error("rm: missing operand");
+            }
+            return;
+        }
+
+        TreeRemover remover = new TreeRemover(this::error);
+        List<Path> trees = new ArrayList<>();
+        for(int a = first; a < args.length; a++){
+            String arg = args[a];
+            String name = arg.endsWith("/") && arg.length() > 1 ? arg.substring(0, arg.length() - 1) : arg;
+            name = name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf(File.separatorChar)) + 1);
+            if(name.equals(".") || name.equals("..")){
+                error("rm: refusing to remove '.' or '..' directory: skipping '" + arg + "'");
+                continue;
+            }
+            List<Path> matches = glob(arg);
+            if(matches.isEmpty() && !force){
+                error("rm: cannot remove '" + arg + "': No such file or directory");
+            }
+            for(Path path : matches){
+                if(path.getParent() == null){
+                    error("rm: refusing to remove '" + path + "'");
+                    continue;
+                }
+                BasicFileAttributes attrs;
+                try{
+                    attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch(IOException e){
+                    if(!force || !(e instanceof NoSuchFileException)){
+                        error("rm: cannot remove '" + arg + "': " + TreeRemover.reason(e));
+                    }
+                    continue;
+                }
+                if(!attrs.isDirectory()){
+                    remover.visitFile(path, attrs);
+                } else if(!recursive){
+                    error("rm: cannot remove '" + path + "': Is a directory");
+                } else{
+                    trees.add(path);
+                }
+            }
+        }
+        if(!trees.isEmpty()){
+            removeTrees(trees, remover);
+            if(cancelled("rm")){
+                return;
+            }
+            out.println("rm: removed " + remover.files.sum() + " files, " + remover.directories.sum()
+                    + " directories" + (remover.errors.sum() > 0 ? ", " + remover.errors.sum() + " errors" : ""));
+        }
+        io.touched(remover.files.sum() + remover.directories.sum());
+    }
+
+    private static final long RM_PROGRESS_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // Removes the trees on the walker's pool and, at the console, prints the
+    // counters once a second while it takes. A kill is seen by the walk
+    // itself (between entries), so an interrupt here only stops waiting.
+    private void removeTrees(List<Path> trees, TreeRemover remover){
+        TreeWalker walker = new TreeWalker(remover, null, false, cancelled::get);
+        ForkJoinTask<?> all = TreeWalker.POOL.submit(() -> {
+            for(Path tree : trees){
+                try{
+                    walker.walk(tree);
+                } catch(IOException e){
+                    remover.failed(tree, e);
+                }
+            }
+        });
+        while(true){
+            try{
+                all.get(RM_PROGRESS_NANOS, TimeUnit.NANOSECONDS);
+                return;
+            } catch(TimeoutException e){
+                if(out == System.out){
+                    System.err.println("rm: " + remover.files.sum() + " files, " + remover.directories.sum()
+                            + " directories removed so far");
+                }
+            } catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                return;
+            } catch(ExecutionException e){
+                error("rm: " + e.getCause());
+                return;
+            }
+        }
+    }
+
+    // Expands a glob ('*', '?', [...]) in the last component of arg against
+    // the file system, sorted. Like the shell, a wildcard doesn't match a
+    // leading dot unless the pattern starts with one. An argument without
+    // wildcards comes back as its path, whether or not it exists.
+    private List<Path> glob(String arg){
+        int slash = Math.max(arg.lastIndexOf('/'), arg.lastIndexOf(File.separatorChar));
+        String pattern = arg.substring(slash + 1);
+        if(pattern.chars().noneMatch(c -> c == '*' || c == '?' || c == '[')){
+            return List.of(currentDir.resolve(arg).normalize());
+        }
+        Path dir = currentDir.resolve(arg.substring(0, slash + 1)).normalize();
+        List<Path> matches = new ArrayList<>();
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(dir, pattern)){
+            for(Path path : stream){
+                if(!path.getFileName().toString().startsWith(".") || pattern.startsWith(".")){
+                    matches.add(path);
+                }
+            }
+        } catch(IOException | PatternSyntaxException e){
+            return List.of();
+        }
+        Collections.sort(matches);
+        return matches;
+    }
+
+    // find [path...] [-name glob] [-iname glob] [-type f|d|l] [-size [+-]N[ckMG]]
+    //      [-mtime [+-]N] [-mmin [+-]N]
+    // Prints every path under the given ones (default .) that passes all the
+    // tests. The tree is walked in parallel, so output is not in tree order.
+    void find(String[] args) {
+        int first = 0;
+        while (first < args.length && !args[first].startsWith("-")) {
+            first++;
+        }
+        List<String> roots = first == 0 ? List.of(".") : Arrays.asList(args).subList(0, first);
+        List<BiPredicate<Path, BasicFileAttributes>> tests = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (int i = first; i < args.length; i++) {
+            String test = args[i];
+            if (i + 1 >= args.length) {
+                error("find: missing argument to '" + test + "'");
+                return;
+            }
+            String value = args[++i];
+            try {
+                switch (test) {
+                    case "-name":
+                    case "-iname": {
+                        boolean fold = test.equals("-iname");
+                        PathMatcher matcher = FileSystems.getDefault()
+                                .getPathMatcher("glob:" + (fold ? value.toLowerCase(Locale.ROOT) : value));
+                        tests.add((path, attrs) -> {
+                            Path name = path.getFileName();
+                            if (name == null) {
+                                return false;
+                            }
+                            return matcher.matches(fold ? Paths.get(name.toString().toLowerCase(Locale.ROOT)) : name);
+                        });
+                        break;
+                    }
+                    case "-type":
+                        switch (value) {
+                            case "f" -> tests.add((path, attrs) -> attrs.isRegularFile());
+                            case "d" -> tests.add((path, attrs) -> attrs.isDirectory());
+                            case "l" -> tests.add((path, attrs) -> attrs.isSymbolicLink());
+                            default -> {
+                                error("find: unknown argument to -type: " + value);
+                                return;
+                            }
+                        }
+                        break;
+                    case "-size": {
+                        char unit = Character.isLetter(value.charAt(value.length() - 1))
+                                ? value.charAt(value.length() - 1) : 'b';
+                        long scale = switch (unit) {
+                            case 'c' -> 1;
+                            case 'k' -> 1L << 10;
+                            case 'M' -> 1L << 20;
+                            case 'G' -> 1L << 30;
+                            case 'b' -> 512;
+                            default -> throw new NumberFormatException();
+                        };
+                        String number = Character.isLetter(value.charAt(value.length() - 1))
+                                ? value.substring(0, value.length() - 1) : value;
+                        // Like GNU find, the size is rounded up to whole units before comparing.
+                        tests.add(compare(number, attrs -> (attrs.size() + scale - 1) / scale));
+                        break;
+                    }
+                    case "-mtime":
+                    case "-mmin": {
+                        long unit = test.equals("-mtime") ? TimeUnit.DAYS.toMillis(1) : TimeUnit.MINUTES.toMillis(1);
+                        tests.add(compare(value, attrs -> (now - attrs.lastModifiedTime().toMillis()) / unit));
+                        break;
+                    }
+                    default:
+                        error("find: unknown predicate '" + test + "'");
+                        return;
+                }
+            } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+                error("find: invalid argument '" + value + "' to " + test);
+                return;
+            }
+        }
+
+        for (String root : roots) {
+            Path start = currentDir.resolve(root).normalize();
+            String prefix = root.endsWith("/") ? root.substring(0, root.length() - 1) : root;
+            TreeWalker.Visitor visitor = new TreeWalker.Visitor() {
+                @Override
+                public boolean enterDirectory(Path dir, BasicFileAttributes attrs) {
+                    report(dir, attrs);
+                    return true;
+                }
+
+                @Override
+                public long visitFile(Path file, BasicFileAttributes attrs) {
+                    report(file, attrs);
+                    return 1;
+                }
+
+                @Override
+                public void failed(Path path, IOException e) {
+                    error("find: '" + name(path) + "': " + TreeRemover.reason(e));
+                }
+
+                private void report(Path path, BasicFileAttributes attrs) {
+                    for (BiPredicate<Path, BasicFileAttributes> test : tests) {
+                        if (!test.test(path, attrs)) {
+                            return;
+                        }
+                    }
+                    out.println(name(path));
+                }
+
+                private String name(Path path) {
+                    return path.equals(start) ? root : prefix + "/" + start.relativize(path);
+                }
+            };
+            try {
+                io.touched(new TreeWalker(visitor, ATTRIBUTES, false, cancelled::get).walk(start));
+            } catch (IOException e) {
+                error("find: '" + root + "': " + TreeRemover.reason(e));
+            }
+        }
+        cancelled("find");
+    }
+
+    // A numeric test in find's style: "+N" is more than N, "-N" less than N
+    // and "N" exactly N.
+    private static BiPredicate<Path, BasicFileAttributes> compare(String value,
+                                                                  ToLongFunction<BasicFileAttributes> measure) {
+        long n = Long.parseLong(value.startsWith("+") || value.startsWith("-") ? value.substring(1) : value);
+        if (value.startsWith("+")) {
+            return (path, attrs) -> measure.applyAsLong(attrs) > n;
+        }
+        if (value.startsWith("-")) {
+            return (path, attrs) -> measure.applyAsLong(attrs) < n;
+        }
+        return (path, attrs) -> measure.applyAsLong(attrs) == n;
+    }
+
+    // du [-s] [-h] [-a] [path...]: bytes of the files under each directory,
+    // counted on the parallel TreeWalker. Sizes are apparent sizes (the
+    // length of each file, as du --apparent-size reports), in KiB rounded
+    // up, or with -h in human-readable units. -s prints only the totals of
+    // the given paths; -a also prints every file.
+    void du(String[] args) {
+        boolean summarize = false, human = false, all = false;
+        int first = 0;
+        for (; first < args.length && args[first].startsWith("-") && args[first].length() > 1; first++) {
+            for (int i = 1; i < args[first].length(); i++) {
+                char c = args[first].charAt(i);
+                if (c == 's') {
+                    summarize = true;
+                } else if (c == 'h') {
+                    human = true;
+                } else if (c == 'a') {
+                    all = true;
+                } else {
+                    error("du: invalid option '" + args[first] + "'");
+                    return;
+                }
+            }
+        }
+        List<String> roots = first == args.length ? List.of(".") : Arrays.asList(args).subList(first, args.length);
+        boolean eachDirectory = !summarize, eachFile = all && !summarize, readable = human;
+        for (String root : roots) {
+            Path start = currentDir.resolve(root).normalize();
+            String prefix = root.endsWith("/") ? root.substring(0, root.length() - 1) : root;
+            TreeWalker.Visitor visitor = new TreeWalker.Visitor() {
+                @Override
+                public long visitFile(Path file, BasicFileAttributes attrs) {
+                    if (eachFile && !file.equals(start)) {
+                        out.println(size(attrs.size(), readable) + "\t" + prefix + "/" + start.relativize(file));
+                    }
+                    return attrs.size();
+                }
+
+                @Override
+                public long exitDirectory(Path dir, BasicFileAttributes attrs, long total) {
+                    if (eachDirectory && !dir.equals(start)) {
+                        out.println(size(total, readable) + "\t" + prefix + "/" + start.relativize(dir));
+                    }
+                    return total;
+                }
+
+                @Override
+                public void failed(Path path, IOException e) {
+                    error("du: cannot read '" + path + "': " + TreeRemover.reason(e));
+                }
+            };
+            try {
+                long total = new TreeWalker(visitor, ATTRIBUTES, false, cancelled::get).walk(start);
+                out.println(size(total, human) + "\t" + root);
+            } catch (IOException e) {
+                error("du: cannot access '" + root + "': " + TreeRemover.reason(e));
+            }
+        }
+        cancelled("du");
+    }
+
+    // dupes [-S] [-m] [path...]: lists sets of files with the same content
+    // under the given paths (the current directory by default), one file per
+    // line and a blank line between sets. -S heads each set with the file
+    // size, -m prints only a summary. Empty files are skipped, as are extra
+    // hard links to a file already seen. Digests are remembered between runs,
+    // keyed by absolute path, in dupes.index in the terminal's state directory.
+    void dupes(String[] args) {
+        boolean showSize = false, summary = false;
+        List<String> roots = new ArrayList<>();
+        for (String arg : args) {
+            if (!arg.startsWith("-") || arg.length() == 1) {
+                roots.add(arg);
+                continue;
+            }
+            for (char flag : arg.substring(1).toCharArray()) {
+                switch (flag) {
+                    case 'S': showSize = true; break;
+                    case 'm': summary = true; break;
+                    default:
+                        error("dupes: invalid option -- '" + flag + "'");
+                        return;
+                }
+            }
+        }
+        if (roots.isEmpty()) {
+            roots.add(".");
+        }
+        Queue<DuplicateFinder.Candidate> files = new ConcurrentLinkedQueue<>();
+        // Of several links to one file, the one with the smallest path is kept.
+        Map<Object, DuplicateFinder.Candidate> linked = new ConcurrentHashMap<>();
+        Set<String> live = ConcurrentHashMap.newKeySet();
+        List<String> walked = new ArrayList<>();
+        TreeWalker.Visitor visitor = new TreeWalker.Visitor() {
+            @Override
+            public long visitFile(Path file, BasicFileAttributes attrs) {
+                if (!attrs.isRegularFile() || attrs.size() == 0) {
+                    return 0;
+                }
+                DuplicateFinder.Candidate candidate = new DuplicateFinder.Candidate(file, attrs.size(),
+                        attrs.lastModifiedTime().toMillis());
+                live.add(candidate.key);
+                if (attrs.fileKey() == null) {
+                    files.add(candidate);
+                } else {
+                    linked.merge(attrs.fileKey(), candidate, (a, b) -> a.path.compareTo(b.path) <= 0 ? a : b);
+                }
+                return 0;
+            }
+
+            @Override
+            public void failed(Path path, IOException e) {
+                error("dupes: cannot read '" + displayName(path) + "': " + TreeRemover.reason(e));
+            }
+        };
+        for (String root : roots) {
+            Path start = currentDir.resolve(root).toAbsolutePath().normalize();
+            try {
+                new TreeWalker(visitor, null, false, cancelled::get).walk(start);
+                walked.add(start.toString());
+            } catch (IOException e) {
+                error("dupes: cannot access '" + root + "': " + TreeRemover.reason(e));
+            }
+        }
+        if (cancelled("dupes")) {
+            return;
+        }
+        files.addAll(linked.values());
+
+        Path indexFile = terminal.stateDirectory().resolve("dupes.index");
+        FileIndex index = FileIndex.load(indexFile);
+        DuplicateFinder finder = new DuplicateFinder(index, io, cancelled::get);
+        List<List<DuplicateFinder.Candidate>> sets;
+        try {
+            sets = finder.find(files, (path, e) ->
+                    error("dupes: cannot read '" + displayName(path) + "': " + TreeRemover.reason(e)));
+        } catch (IOException e) {
+            if (!cancelled("dupes")) {
+                error("dupes: " + e.getMessage());
+            }
+            return;
+        }
+        io.touched(finder.hashed.sum());
+        for (String root : walked) {
+            index.retain(root.endsWith(File.separator) ? root : root + File.separator, live);
+        }
+        try {
+            Files.createDirectories(indexFile.getParent());
+            index.save();
+        } catch (IOException e) {
+            error("dupes: cannot save index: " + e.getMessage());
+        }
+
+        long duplicates = 0, wasted = 0;
+        for (List<DuplicateFinder.Candidate> set : sets) {
+            duplicates += set.size() - 1;
+            wasted += (set.size() - 1) * set.get(0).size;
+            if (summary) {
+                continue;
+            }
+            if (showSize) {
+                out.println(set.get(0).size + " bytes each:");
+            }
+            for (DuplicateFinder.Candidate file : set) {
+                out.println(displayName(file.path));
+            }
+            out.println();
+        }
+        if (summary) {
+            out.println(duplicates + " duplicate files (in " + sets.size() + " sets), occupying "
+                    + CommandStats.bytes(wasted));
+        }
+    }
+
+    private static String size(long bytes, boolean human) {
+        return human ? CommandStats.bytes(bytes) : Long.toString((bytes + 1023) / 1024);
+    }
+};
@@ -0,0 +1,160 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+// The checksums behind sum and the --verify option of cp: CRC32C, xxHash64
+// and SHA-256. All of them take ByteBuffers, so direct and mapped buffers
+// are hashed where they are.
+abstract class FileHash{
+    static final String DEFAULT = "sha256";
+    static final List<String> NAMES = List.of("crc32c", "xxh64", "sha256");
+
+    abstract void update(ByteBuffer buffer);
+
+    abstract byte[] digest();
+
+    // Returns a new hash for one of NAMES, or null for an unknown name.
+    static FileHash create(String name){
+        switch(name){
+            case "crc32c": {
+                CRC32C crc = new CRC32C();
+                return new FileHash(){
+                    @Override
+                    void update(ByteBuffer buffer){
+                        crc.update(buffer);
+                    }
+
+                    @Override
+                    byte[] digest(){
+                        return ByteBuffer.allocate(4).putInt((int) crc.getValue()).array();
+                    }
+                };
+            }
+            case "xxh64":
+                return new XxHash64();
+            case "sha256": {
+                MessageDigest sha;
+                try{
+                    sha = MessageDigest.getInstance("SHA-256");
+                } catch(NoSuchAlgorithmException e){
+                    throw new IllegalStateException(e);
+                }
+                return new FileHash(){
+                    @Override
+                    void update(ByteBuffer buffer){
+                        sha.update(buffer);
+                    }
+
+                    @Override
+                    byte[] digest(){
+                        return sha.digest();
+                    }
+                };
+            }
+            default:
+                return null;
+        }
+    }
+
+    // The algorithm whose digests are hexLength digits long, for manifests
+    // that don't say; null if none is.
+    static String forHexLength(int hexLength){
+        return switch(hexLength){
+            case 8 -> "crc32c";
+            case 16 -> "xxh64";
+            case 64 -> "sha256";
+            default -> null;
+        };
+    }
+
+    static String hex(byte[] digest){
+        return HexFormat.of().formatHex(digest);
+    }
+
+    // xxHash64 with seed 0, streaming: input is consumed in 32-byte stripes
+    // of four little-endian lanes and a partial stripe waits in pending.
+    static final class XxHash64 extends FileHash{
+        private static final long PRIME1 = 0x9E3779B185EBCA87L;
+        private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+        private static final long PRIME3 = 0x165667B19E3779F9L;
+        private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+        private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+        private long v1 = PRIME1 + PRIME2;
+        private long v2 = PRIME2;
+        private long v3 = 0;
+        private long v4 = -PRIME1;
+        private long length;
+        private final ByteBuffer pending = ByteBuffer.allocate(32).order(ByteOrder.LITTLE_ENDIAN);
+
+        @Override
+        void update(ByteBuffer buffer){
+            ByteBuffer input = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            length += input.remaining();
+            if(pending.position() > 0){
+                while(pending.hasRemaining() && input.hasRemaining()){
+                    pending.put(input.get());
+                }
+                if(pending.hasRemaining()){
+                    buffer.position(buffer.limit());
+                    return;
+                }
+                pending.flip();
+                stripe(pending);
+                pending.clear();
+            }
+            while(input.remaining() >= 32){
+                stripe(input);
+            }
+            pending.put(input);
+            buffer.position(buffer.limit());
+        }
+
+        private void stripe(ByteBuffer input){
+            v1 = round(v1, input.getLong());
+            v2 = round(v2, input.getLong());
+            v3 = round(v3, input.getLong());
+            v4 = round(v4, input.getLong());
+        }
+
+        private static long round(long acc, long lane){
+            return Long.rotateLeft(acc + lane * PRIME2, 31) * PRIME1;
+        }
+
+        private static long merge(long hash, long acc){
+            return (hash ^ round(0, acc)) * PRIME1 + PRIME4;
+        }
+
+        @Override
+        byte[] digest(){
+            long hash;
+            if(length >= 32){
+                hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+                hash = merge(merge(merge(merge(hash, v1), v2), v3), v4);
+            } else{
+                hash = PRIME5;
+            }
+            hash += length;
+            ByteBuffer rest = pending.duplicate().flip().order(ByteOrder.LITTLE_ENDIAN);
+            while(rest.remaining() >= 8){
+                hash = Long.rotateLeft(hash ^ round(0, rest.getLong()), 27) * PRIME1 + PRIME4;
+            }
+            if(rest.remaining() >= 4){
+                hash = Long.rotateLeft(hash ^ (rest.getInt() & 0xffffffffL) * PRIME1, 23) * PRIME2 + PRIME3;
+            }
+            while(rest.hasRemaining()){
+                hash = Long.rotateLeft(hash ^ (rest.get() & 0xff) * PRIME5, 11) * PRIME1;
+            }
+            hash ^= hash >>> 33;
+            hash *= PRIME2;
+            hash ^= hash >>> 29;
+            hash *= PRIME3;
+            hash ^= hash >>> 32;
+            return ByteBuffer.allocate(8).putLong(hash).array();
+        }
+    }
+};
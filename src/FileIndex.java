@@ -0,0 +1,130 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// A small on-disk map from a file's path (relative for cp -u, absolute for
+// dupes) to its size, mtime and a content digest. A lookup only succeeds
+// while size and mtime still match, so a later run can reuse the digest
+// without reading the file again.
+//
+// File layout: magic, entry count, then the entries sorted by path, each as
+// (characters shared with the previous path, rest of the path, size, mtime,
+// digest length, digest). Sorting and prefix sharing keep deep trees compact.
+class FileIndex{
+    private static final int MAGIC = 0x434c4958; // "CLIX"
+
+    private static final class Entry{
+        final long size;
+        final long modified;
+        final byte[] digest;
+
+        Entry(long size, long modified, byte[] digest){
+            this.size = size;
+            this.modified = modified;
+            this.digest = digest;
+        }
+    }
+
+    private final Path file;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+
+    private FileIndex(Path file){
+        this.file = file;
+    }
+
+    // Loads the index stored at file. A missing or unreadable index is
+    // treated as empty: it only ever saves work, so losing it is harmless.
+    static FileIndex load(Path file){
+        FileIndex index = new FileIndex(file);
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 << 10))){
+            if(in.readInt() != MAGIC){
+                return index;
+            }
+            int count = in.readInt();
+            String previous = "";
+            for(int i = 0; i < count; i++){
+                int shared = in.readUnsignedShort();
+                String key = previous.substring(0, shared) + in.readUTF();
+                long size = in.readLong();
+                long modified = in.readLong();
+                byte[] digest = new byte[in.readUnsignedByte()];
+                in.readFully(digest);
+                index.entries.put(key, new Entry(size, modified, digest));
+                previous = key;
+            }
+        } catch(IOException | RuntimeException e){
+            index.entries.clear();
+        }
+        return index;
+    }
+
+    // Returns the recorded digest of key, or null if there is none or the
+    // file has changed since it was recorded.
+    byte[] digest(String key, long size, long modified){
+        Entry entry = entries.get(key);
+        return entry != null && entry.size == size && entry.modified == modified ? entry.digest : null;
+    }
+
+    void put(String key, long size, long modified, byte[] digest){
+        entries.put(key, new Entry(size, modified, digest));
+        dirty = true;
+    }
+
+    void remove(String key){
+        if(entries.remove(key) != null){
+            dirty = true;
+        }
+    }
+
+    // Drops the entries under prefix that are not in live, such as files
+    // deleted since they were recorded.
+    void retain(String prefix, Set<String> live){
+        if(entries.keySet().removeIf(key -> key.startsWith(prefix) && !live.contains(key))){
+            dirty = true;
+        }
+    }
+
+    // Writes the index if it changed, through a temporary file so a crash
+    // never leaves a half-written index behind.
+    void save() throws IOException{
+        if(!dirty){
+            return;
+        }
+        List<String> keys = new ArrayList<>(entries.keySet());
+        Collections.sort(keys);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 64 << 10))){
+            out.writeInt(MAGIC);
+            out.writeInt(keys.size());
+            String previous = "";
+            for(String key : keys){
+                Entry entry = entries.get(key);
+                int shared = 0;
+                int limit = Math.min(Math.min(previous.length(), key.length()), 0xffff);
+                while(shared < limit && previous.charAt(shared) == key.charAt(shared)){
+                    shared++;
+                }
+                out.writeShort(shared);
+                out.writeUTF(key.substring(shared));
+                out.writeLong(entry.size);
+                out.writeLong(entry.modified);
+                out.writeByte(entry.digest.length);
+                out.write(entry.digest);
+                previous = key;
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        dirty = false;
+    }
+};
@@ -0,0 +1,235 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+// Line matcher behind the grep command. Literal patterns are searched
+// directly in memory-mapped file bytes with Boyer-Moore-Horspool, so files are
+// neither decoded nor split into lines unless a line actually matches;
+// java.util.regex is only used for real regular expressions and for text
+// read from a stream. Like grep, a file with a NUL byte near its start is
+// treated as binary: its lines are not printed, only that it matches.
+class Grep{
+    static final int WINDOW_SIZE = 64 << 20;
+    // How much of a file's start is checked for NUL bytes.
+    private static final int BINARY_CHECK_SIZE = 32 << 10;
+    private static final String REGEX_METACHARACTERS = "\\.[]{}()*+?^$|";
+
+    private final Pattern linePattern;
+    private final byte[] needle;
+    private final int[] shift = new int[256];
+    private final boolean ignoreCase;
+    final boolean lineNumbers;
+    final boolean countOnly;
+    // Mapped bytes per window; a window only grows past it for a longer line.
+    int windowSize = WINDOW_SIZE;
+
+    Grep(String pattern, boolean ignoreCase, boolean fixed, boolean lineNumbers, boolean countOnly){
+        this.ignoreCase = ignoreCase;
+        this.lineNumbers = lineNumbers;
+        this.countOnly = countOnly;
+        boolean literal = fixed || pattern.chars().noneMatch(c -> REGEX_METACHARACTERS.indexOf(c) >= 0);
+        boolean ascii = pattern.chars().allMatch(c -> c < 0x80);
+        int flags = ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0;
+        linePattern = Pattern.compile(literal ? Pattern.quote(pattern) : pattern, flags);
+        if(literal && (ascii || !ignoreCase)){
+            needle = pattern.getBytes(StandardCharsets.UTF_8);
+            for(int i = 0; i < needle.length; i++){
+                needle[i] = fold(needle[i]);
+            }
+            Arrays.fill(shift, Math.max(1, needle.length));
+            for(int i = 0; i < needle.length - 1; i++){
+                shift[needle[i] & 0xFF] = needle.length - 1 - i;
+            }
+        } else{
+            needle = null;
+        }
+    }
+
+    boolean matches(String line){
+        return linePattern.matcher(line).find();
+    }
+
+    // Searches a whole file and writes matching lines (or the count) to sink,
+    // prefixed by "name:" if named. Returns the number of matching lines,
+    // though a binary file is only searched up to its first match.
+    long search(Path file, String name, boolean named, OutputStream sink, CommandStats.Usage usage) throws IOException{
+        String prefix = named ? name + ":" : "";
+        long matches = 0;
+        boolean binary = false;
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            long size = channel.size();
+            usage.touched(1);
+            long position = 0, line = 1;
+            long length = Math.min(windowSize, size);
+            while(position < size){
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                int limit = (int) length;
+                if(position + length < size){
+                    // End the window after its last newline and start the next
+                    // one at the partial line that follows, so no line is split.
+                    int end = limit - 1;
+                    while(end >= 0 && window.get(end) != '\n'){
+                        end--;
+                    }
+                    if(end < 0){
+                        // A line longer than the window: map more of it.
+                        if(length == Integer.MAX_VALUE){
+                            throw new IOException("line too long");
+                        }
+                        length = Math.min(size - position, Math.min(Integer.MAX_VALUE, length * 2));
+                        continue;
+                    }
+                    limit = end + 1;
+                }
+                if(position == 0){
+                    binary = containsNul(window, Math.min(limit, BINARY_CHECK_SIZE));
+                }
+                long[] counters = {matches, line};
+                boolean print = !countOnly && !binary;
+                if(needle != null){
+                    searchLiteral(window, limit, prefix, print, sink, counters);
+                } else{
+                    searchRegex(window, limit, prefix, print, sink, counters);
+                }
+                matches = counters[0];
+                line = counters[1];
+                position += limit;
+                usage.read(limit);
+                length = Math.min(windowSize, size - position);
+                if(binary && matches > 0 && !countOnly){
+                    break;
+                }
+            }
+        }
+        if(countOnly){
+            sink.write((prefix + matches + "\n").getBytes(StandardCharsets.UTF_8));
+        } else if(binary && matches > 0){
+            sink.write(("Binary file " + name + " matches\n").getBytes(StandardCharsets.UTF_8));
+        }
+        return matches;
+    }
+
+    private static boolean containsNul(ByteBuffer window, int length){
+        for(int i = 0; i < length; i++){
+            if(window.get(i) == 0){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void searchLiteral(ByteBuffer window, int limit, String prefix, boolean print, OutputStream sink,
+            long[] counters)
+            throws IOException{
+        int scanned = 0;
+        int from = 0;
+        while(true){
+            int hit = indexOf(window, from, limit);
+            if(hit < 0){
+                break;
+            }
+            int start = hit;
+            while(start > 0 && window.get(start - 1) != '\n'){
+                start--;
+            }
+            int end = hit;
+            while(end < limit && window.get(end) != '\n'){
+                end++;
+            }
+            if(lineNumbers){
+                counters[1] += countNewlines(window, scanned, start);
+                scanned = start;
+            }
+            counters[0]++;
+            if(print){
+                print(window, start, end, prefix, counters[1], sink);
+            }
+            from = end + 1;
+            if(from > limit){
+                break;
+            }
+        }
+        if(lineNumbers){
+            counters[1] += countNewlines(window, scanned, limit);
+        }
+    }
+
+    private void searchRegex(ByteBuffer window, int limit, String prefix, boolean print, OutputStream sink,
+            long[] counters)
+            throws IOException{
+        byte[] bytes = new byte[256];
+        int start = 0;
+        while(start < limit){
+            int end = start;
+            while(end < limit && window.get(end) != '\n'){
+                end++;
+            }
+            int length = end - start;
+            if(bytes.length < length){
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            window.get(start, bytes, 0, length);
+            if(matches(new String(bytes, 0, length, StandardCharsets.UTF_8))){
+                counters[0]++;
+                if(print){
+                    print(window, start, end, prefix, counters[1], sink);
+                }
+            }
+            counters[1]++;
+            start = end + 1;
+        }
+    }
+
+    private int indexOf(ByteBuffer window, int from, int limit){
+        int m = needle.length;
+        if(m == 0){
+            return from < limit ? from : -1;
+        }
+        int i = from;
+        while(i <= limit - m){
+            int j = m - 1;
+            while(j >= 0 && fold(window.get(i + j)) == needle[j]){
+                j--;
+            }
+            if(j < 0){
+                return i;
+            }
+            i += shift[fold(window.get(i + m - 1)) & 0xFF];
+        }
+        return -1;
+    }
+
+    private byte fold(byte b){
+        return ignoreCase && b >= 'A' && b <= 'Z' ? (byte) (b + 32) : b;
+    }
+
+    private static long countNewlines(ByteBuffer window, int from, int to){
+        long count = 0;
+        for(int i = from; i < to; i++){
+            if(window.get(i) == '\n'){
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void print(ByteBuffer window, int start, int end, String prefix, long line, OutputStream sink)
+            throws IOException{
+        StringBuilder head = new StringBuilder(prefix);
+        if(lineNumbers){
+            head.append(line).append(':');
+        }
+        sink.write(head.toString().getBytes(StandardCharsets.UTF_8));
+        byte[] bytes = new byte[end - start];
+        window.get(start, bytes);
+        sink.write(bytes);
+        sink.write('\n');
+    }
+};
@@ -0,0 +1,117 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// One run of a built-in command: the streams, directory, kill flag and I/O
+// counters of the terminal it runs in, and the exit status it builds up.
+// The command groups (ShellCommands, FileCommands, TextCommands, ...) extend
+// it with their commands as methods, and each Command creates a new
+// instance per run, so commands running at the same time in a pipeline or
+// a background job share no mutable state.
+abstract class Invocation{
+    static final int COPY_BUFFER_SIZE = 1 << 20;
+    // Largest single transferTo, so a kill is noticed between chunks of a big file.
+    static final long CANCEL_CHECK_SIZE = 64L << 20;
+
+    final Terminal terminal;
+    final InputStream in;
+    final PrintStream out;
+    final Path currentDir;
+    final AtomicBoolean cancelled;
+    final CommandStats.Usage io;
+    // Exit status: 0 on success, non-zero once the command reports an error.
+    // Worker threads report errors too, hence volatile.
+    volatile int status;
+
+    Invocation(Terminal terminal){
+        this.terminal = terminal;
+        this.in = terminal.in();
+        this.out = terminal.out();
+        this.currentDir = terminal.directory();
+        this.cancelled = terminal.cancelFlag();
+        this.io = terminal.usage();
+    }
+
+    // Reports a failure and marks the command as failed.
+    void error(String message){
+        error(out, message);
+    }
+
+    // Diagnostics sent to another stream (stderr) are written after what the
+    // command has printed so far, which may still sit in out's buffer.
+    void error(PrintStream stream, String message){
+        if(stream != out){
+            out.flush();
+        }
+        stream.println(message);
+        status = 1;
+    }
+
+    // Reports a cancelled command (see kill); returns true if it was cancelled.
+    boolean cancelled(String command){
+        if(!cancelled.get()){
+            return false;
+        }
+        error(command + ": cancelled");
+        status = 143;
+        return true;
+    }
+
+    void checkCancelled() throws InterruptedIOException {
+        if (cancelled.get()) {
+            throw new InterruptedIOException("cancelled");
+        }
+    }
+
+    String displayName(Path file) {
+        return file.startsWith(currentDir) ? currentDir.relativize(file).toString() : file.toString();
+    }
+
+    // Runs work for every item on a worker pool and prints the lines it
+    // returns (null for none) in item order, as soon as each line and all
+    // those before it are ready.
+    <T> void printInOrder(List<T> items, Function<T, String> work) throws IOException {
+        runInOrder(items, work, line -> {
+            if (line != null) {
+                out.println(line);
+            }
+        });
+    }
+
+    // Runs work for every item on a worker pool and hands the results to
+    // done on this thread, in item order, as soon as each result and all
+    // those before it are ready. At most a few results per worker wait.
+    <T, R> void runInOrder(List<T> items, Function<T, R> work, Consumer<R> done) throws IOException {
+        int workers = Math.max(1, Math.min(items.size(), Math.max(4, Runtime.getRuntime().availableProcessors())));
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        ArrayDeque<Future<R>> window = new ArrayDeque<>();
+        try {
+            int next = 0;
+            while (next < items.size() || !window.isEmpty()) {
+                while (next < items.size() && window.size() < workers * 4) {
+                    T item = items.get(next++);
+                    window.add(pool.submit(() -> work.apply(item)));
+                }
+                done.accept(window.poll().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+};
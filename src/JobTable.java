@@ -0,0 +1,202 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Background jobs started with "cmd &". Each job runs on a virtual thread in
+// its own child terminal whose output is captured until the job is reaped by
+// wait or reported as finished before the next command line. Captured output
+// past SPILL_THRESHOLD goes to a temporary file, so a chatty job holds no
+// more memory than a redirected one.
+class JobTable{
+    static final ExecutorService EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+    static final int SPILL_THRESHOLD = 1 << 20;
+    private static final int SPILL_BUFFER_SIZE = 64 << 10;
+
+    // A job's captured output: in memory up to SPILL_THRESHOLD, then in a
+    // temporary file that is deleted once the output has been reported. If
+    // the file can't be written, later output is dropped and counted.
+    static class Output extends OutputStream{
+        private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        private Path file;
+        private OutputStream spill;
+        private IOException failure;
+        private long dropped;
+
+        @Override
+        public synchronized void write(int b){
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len){
+            if(failure != null){
+                dropped += len;
+                return;
+            }
+            if(spill == null && memory.size() + len <= SPILL_THRESHOLD){
+                memory.write(b, off, len);
+                return;
+            }
+            try{
+                if(spill == null){
+                    file = Files.createTempFile("clios-job", ".out");
+                    spill = new BufferedOutputStream(Files.newOutputStream(file), SPILL_BUFFER_SIZE);
+                    memory.writeTo(spill);
+                    memory = null;
+                }
+                spill.write(b, off, len);
+            } catch(IOException e){
+                failure = e;
+                dropped += len;
+            }
+        }
+
+        // Bytes held in memory; the rest is in the spill file.
+        synchronized int buffered(){
+            return memory == null ? 0 : memory.size();
+        }
+
+        synchronized Path file(){
+            return file;
+        }
+
+        // Copies everything captured to out and frees it.
+        synchronized void writeTo(OutputStream out) throws IOException{
+            try{
+                if(memory != null){
+                    memory.writeTo(out);
+                } else{
+                    spill.close();
+                    spill = null;
+                    Files.copy(file, out);
+                }
+            } finally{
+                discard();
+            }
+        }
+
+        // Bytes that were lost because the spill file failed, and why.
+        synchronized String lost(){
+            return dropped == 0 ? null : dropped + " bytes of output lost: " + failure.getMessage();
+        }
+
+        private void discard(){
+            memory = new ByteArrayOutputStream();
+            try{
+                if(spill != null){
+                    spill.close();
+                }
+                if(file != null){
+                    Files.deleteIfExists(file);
+                }
+            } catch(IOException e){
+                // Only a temporary file left behind.
+            }
+            spill = null;
+            file = null;
+        }
+    }
+
+    static class Job{
+        final int id;
+        final String command;
+        final AtomicBoolean cancelled;
+        final Output output = new Output();
+        volatile Thread thread;
+        volatile Future<Integer> future;
+
+        Job(int id, String command, AtomicBoolean cancelled){
+            this.id = id;
+            this.command = command;
+            this.cancelled = cancelled;
+        }
+
+        boolean isDone(){
+            return future != null && future.isDone();
+        }
+
+        // Waits for the job and returns its exit status.
+        int await() throws InterruptedException{
+            try{
+                return future.get();
+            } catch(ExecutionException e){
+                return 1;
+            }
+        }
+
+        // The job's line in the jobs listing: id, state and command.
+        String line(){
+            return String.format("[%d] %-8s %s", id, state(), command);
+        }
+
+        // Prints the output the job captured, then its line.
+        void report(PrintStream out) throws IOException{
+            String lost = output.lost();
+            output.writeTo(out);
+            if(lost != null){
+                out.println("[" + id + "] " + lost);
+            }
+            out.println(line());
+        }
+
+        String state(){
+            if(!isDone()){
+                return cancelled.get() ? "Stopping" : "Running";
+            }
+            try{
+                int status = await();
+                return cancelled.get() ? "Killed" : status == 0 ? "Done" : "Exit " + status;
+            } catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                return "Running";
+            }
+        }
+    }
+
+    private final TreeMap<Integer, Job> jobs = new TreeMap<>();
+
+    synchronized Job add(String command, AtomicBoolean cancelled){
+        int id = jobs.isEmpty() ? 1 : jobs.lastKey() + 1;
+        Job job = new Job(id, command, cancelled);
+        jobs.put(id, job);
+        return job;
+    }
+
+    synchronized Job get(int id){
+        return jobs.get(id);
+    }
+
+    synchronized List<Job> all(){
+        return new ArrayList<>(jobs.values());
+    }
+
+    synchronized void remove(Job job){
+        jobs.remove(job.id);
+    }
+
+    // Removes and returns the jobs that have finished.
+    synchronized List<Job> reapFinished(){
+        List<Job> finished = new ArrayList<>();
+        for(Iterator<Job> it = jobs.values().iterator(); it.hasNext(); ){
+            Job job = it.next();
+            if(job.isDone()){
+                finished.add(job);
+                it.remove();
+            }
+        }
+        return finished;
+    }
+};
@@ -0,0 +1,51 @@
+import java.io.IOException;
+import java.io.OutputStream;
+
+// Copies bytes to out with a right-aligned line number and a tab before
+// every line, like cat -n. It scans raw bytes for '\n', so any encoding
+// (or binary data) passes through unchanged, keeps its place across calls
+// and files, and allocates nothing per line.
+class LineNumbers{
+    private final OutputStream out;
+    private final byte[] prefix = new byte[24];
+    private long line;
+    private boolean lineStart = true;
+
+    LineNumbers(OutputStream out){
+        this.out = out;
+    }
+
+    void write(byte[] data, int offset, int length) throws IOException{
+        int end = offset + length;
+        while(offset < end){
+            if(lineStart){
+                writePrefix();
+                lineStart = false;
+            }
+            int stop = offset;
+            while(stop < end && data[stop] != '\n'){
+                stop++;
+            }
+            if(stop < end){
+                stop++;
+                lineStart = true;
+            }
+            out.write(data, offset, stop - offset);
+            offset = stop;
+        }
+    }
+
+    private void writePrefix() throws IOException{
+        int start = prefix.length;
+        prefix[--start] = '\t';
+        long n = ++line;
+        do{
+            prefix[--start] = (byte) ('0' + n % 10);
+            n /= 10;
+        } while(n > 0);
+        while(prefix.length - start < 7){
+            prefix[--start] = ' ';
+        }
+        out.write(prefix, start, prefix.length - start);
+    }
+};
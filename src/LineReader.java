@@ -0,0 +1,61 @@
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+// Reads '\n'-terminated lines as raw bytes, so any encoding (or binary
+// data) survives sort and uniq unchanged. A last line without a newline is
+// returned like any other.
+class LineReader implements Closeable{
+    private final InputStream in;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+    long bytesRead;
+
+    LineReader(InputStream in, int bufferSize){
+        this.in = in;
+        this.buffer = new byte[bufferSize];
+    }
+
+    // Returns the next line without its newline, or null at the end.
+    byte[] readLine() throws IOException{
+        ByteArrayOutputStream partial = null;
+        while(true){
+            if(position == limit){
+                limit = in.read(buffer);
+                position = 0;
+                if(limit <= 0){
+                    limit = 0;
+                    return partial == null ? null : partial.toByteArray();
+                }
+                bytesRead += limit;
+            }
+            int start = position;
+            while(position < limit && buffer[position] != '\n'){
+                position++;
+            }
+            if(position < limit){
+                byte[] line;
+                if(partial == null){
+                    line = Arrays.copyOfRange(buffer, start, position);
+                } else{
+                    partial.write(buffer, start, position - start);
+                    line = partial.toByteArray();
+                }
+                position++;
+                return line;
+            }
+            if(partial == null){
+                partial = new ByteArrayOutputStream(Math.max(64, 2 * (limit - start)));
+            }
+            partial.write(buffer, start, limit - start);
+        }
+    }
+
+    @Override
+    public void close() throws IOException{
+        in.close();
+    }
+};
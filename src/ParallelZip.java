@@ -0,0 +1,310 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+
+// Writes a standard zip archive while deflating entries on a worker pool.
+// Each entry (or batch of small entries) is compressed into its own buffer
+// with its CRC and sizes already known, and the buffers are then appended to
+// the archive in the original order, so no data descriptors are needed.
+// Entries that would not fit in the classic (non-zip64) format are left to
+// the sequential ZipOutputStream path; see fits().
+class ParallelZip{
+    static final long SMALL_ENTRY_SIZE = 64 << 10;
+    static final int SMALL_ENTRY_BATCH = 256;
+    static final long IN_MEMORY_LIMIT = 4 << 20;
+    private static final long ZIP32_LIMIT = 0xFFFFFFFFL;
+    private static final int MAX_ENTRIES = 0xFFFF;
+    private static final Set<String> STORED_EXTENSIONS = Set.of(
+            "jpg", "jpeg", "png", "gif", "webp", "mp3", "mp4", "mkv", "avi", "mov",
+            "zip", "jar", "gz", "tgz", "bz2", "xz", "zst", "7z", "rar");
+
+    static class Source{
+        final Path file;
+        final String name;
+        final long size;
+
+        Source(Path file, String name, long size){
+            this.file = file;
+            this.name = name;
+            this.size = size;
+        }
+    }
+
+    // An entry ready to be written. size is the number of bytes actually
+    // read, which is what the headers must record: the file may have changed
+    // since its Source was collected.
+    private static class Compressed{
+        Source source;
+        int method;
+        long crc, size, compressedSize, dosTime;
+        byte[] data;
+        Path spill;
+        IOException error;
+        long offset;
+    }
+
+    static boolean fits(List<Source> sources){
+        if(sources.size() > MAX_ENTRIES){
+            return false;
+        }
+        long total = 22;
+        for(Source source : sources){
+            total += source.size + 76 + 2L * source.name.getBytes(StandardCharsets.UTF_8).length;
+        }
+        return total < ZIP32_LIMIT;
+    }
+
+    // Returns the number of entries that could not be read and were left out.
+    // Stops with an InterruptedIOException once cancelled returns true.
+    static int write(Path archive, List<Source> sources, PrintStream log, BooleanSupplier cancelled) throws IOException{
+        int workers = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        List<Compressed> written = new ArrayList<>();
+        int failed = 0;
+        ArrayDeque<Future<List<Compressed>>> window = new ArrayDeque<>();
+        try(FileChannel channel = FileChannel.open(archive, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)){
+            int next = 0;
+            while(next < sources.size() || !window.isEmpty()){
+                if(cancelled.getAsBoolean()){
+                    throw new InterruptedIOException("cancelled");
+                }
+                while(next < sources.size() && window.size() < workers * 2){
+                    int end = next + 1;
+                    if(sources.get(next).size <= SMALL_ENTRY_SIZE){
+                        while(end < sources.size() && end - next < SMALL_ENTRY_BATCH
+                                && sources.get(end).size <= SMALL_ENTRY_SIZE){
+                            end++;
+                        }
+                    }
+                    List<Source> batch = sources.subList(next, end);
+                    window.add(pool.submit(() -> compress(batch)));
+                    next = end;
+                }
+                for(Compressed entry : await(window.poll())){
+                    if(entry.error != null){
+                        log.println("zip: failed to add " + entry.source.name);
+                        failed++;
+                        continue;
+                    }
+                    entry.offset = channel.position();
+                    if(entry.offset > ZIP32_LIMIT){
+                        throw new IOException("files grew past the zip format's 4 GiB limit while being added");
+                    }
+                    byte[] name = entry.source.name.getBytes(StandardCharsets.UTF_8);
+                    ByteBuffer header = ByteBuffer.allocate(30 + name.length).order(ByteOrder.LITTLE_ENDIAN);
+                    header.putInt(0x04034b50).putShort((short) 20).putShort((short) 0x0800)
+                            .putShort((short) entry.method).putInt((int) entry.dosTime).putInt((int) entry.crc)
+                            .putInt((int) entry.compressedSize).putInt((int) entry.size)
+                            .putShort((short) name.length).putShort((short) 0).put(name).flip();
+                    writeFully(channel, header);
+                    if(entry.spill != null){
+                        try(FileChannel spill = FileChannel.open(entry.spill, StandardOpenOption.READ)){
+                            long position = 0;
+                            while(position < entry.compressedSize){
+                                long sent = spill.transferTo(position, entry.compressedSize - position, channel);
+                                if(sent <= 0){
+                                    throw new IOException("temporary file of " + entry.source.name + " was cut short");
+                                }
+                                position += sent;
+                            }
+                        } finally{
+                            Files.deleteIfExists(entry.spill);
+                        }
+                    } else{
+                        writeFully(channel, ByteBuffer.wrap(entry.data));
+                        entry.data = null;
+                    }
+                    written.add(entry);
+                }
+            }
+            writeCentralDirectory(channel, written);
+            return failed;
+        } finally{
+            pool.shutdownNow();
+            for(Future<List<Compressed>> pending : window){
+                discard(pending);
+            }
+        }
+    }
+
+    // Removes the temporary files of entries that were compressed but never
+    // written because the archive failed part-way.
+    private static void discard(Future<List<Compressed>> pending){
+        try{
+            for(Compressed entry : pending.get()){
+                discardSpill(entry);
+            }
+        } catch(Exception ignored){
+        }
+    }
+
+    private static void discardSpill(Compressed entry) throws IOException{
+        if(entry.spill != null){
+            Files.deleteIfExists(entry.spill);
+            entry.spill = null;
+        }
+    }
+
+    private static List<Compressed> await(Future<List<Compressed>> future) throws IOException{
+        try{
+            return future.get();
+        } catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch(ExecutionException e){
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static List<Compressed> compress(List<Source> batch){
+        List<Compressed> result = new ArrayList<>(batch.size());
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try{
+            for(Source source : batch){
+                Compressed entry = new Compressed();
+                entry.source = source;
+                try{
+                    entry.dosTime = dosTime(Files.getLastModifiedTime(source.file).toMillis());
+                    boolean store = isStored(source.name);
+                    if(source.size > IN_MEMORY_LIMIT){
+                        spill(entry, deflater, store);
+                    } else{
+                        deflate(entry, deflater, store);
+                    }
+                    if(entry.size > ZIP32_LIMIT || entry.compressedSize > ZIP32_LIMIT){
+                        discardSpill(entry);
+                        throw new IOException(source.name + " grew past 4 GiB while being added");
+                    }
+                } catch(IOException e){
+                    entry.error = e;
+                }
+                deflater.reset();
+                result.add(entry);
+            }
+        } finally{
+            deflater.end();
+        }
+        return result;
+    }
+
+    private static void deflate(Compressed entry, Deflater deflater, boolean store) throws IOException{
+        byte[] raw = Files.readAllBytes(entry.source.file);
+        CRC32 crc = new CRC32();
+        crc.update(raw);
+        entry.crc = crc.getValue();
+        entry.size = raw.length;
+        if(!store){
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream packed = new ByteArrayOutputStream(Math.max(64, raw.length / 2));
+            byte[] buffer = new byte[Math.max(4096, Math.min(raw.length, 64 << 10))];
+            while(!deflater.finished()){
+                packed.write(buffer, 0, deflater.deflate(buffer));
+            }
+            if(packed.size() < raw.length){
+                entry.method = ZipEntry.DEFLATED;
+                entry.data = packed.toByteArray();
+                entry.compressedSize = entry.data.length;
+                return;
+            }
+        }
+        entry.method = ZipEntry.STORED;
+        entry.data = raw;
+        entry.compressedSize = raw.length;
+    }
+
+    // Large entries are compressed into a temporary file so the number of
+    // bytes held in memory stays bounded by the window size.
+    private static void spill(Compressed entry, Deflater deflater, boolean store) throws IOException{
+        Path temp = Files.createTempFile("clios-zip", ".part");
+        CRC32 crc = new CRC32();
+        try(InputStream in = new CheckedInputStream(Files.newInputStream(entry.source.file), crc);
+            OutputStream raw = new BufferedOutputStream(Files.newOutputStream(temp), 64 << 10)){
+            if(store){
+                entry.size = in.transferTo(raw);
+            } else{
+                try(DeflaterOutputStream packed = new DeflaterOutputStream(raw, deflater, 64 << 10)){
+                    entry.size = in.transferTo(packed);
+                }
+            }
+        } catch(IOException e){
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        entry.method = store ? ZipEntry.STORED : ZipEntry.DEFLATED;
+        entry.crc = crc.getValue();
+        entry.compressedSize = Files.size(temp);
+        entry.spill = temp;
+    }
+
+    private static void writeCentralDirectory(FileChannel channel, List<Compressed> entries) throws IOException{
+        long start = channel.position();
+        for(Compressed entry : entries){
+            byte[] name = entry.source.name.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer header = ByteBuffer.allocate(46 + name.length).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(0x02014b50).putShort((short) 20).putShort((short) 20).putShort((short) 0x0800)
+                    .putShort((short) entry.method).putInt((int) entry.dosTime).putInt((int) entry.crc)
+                    .putInt((int) entry.compressedSize).putInt((int) entry.size)
+                    .putShort((short) name.length).putShort((short) 0).putShort((short) 0)
+                    .putShort((short) 0).putShort((short) 0).putInt(0).putInt((int) entry.offset)
+                    .put(name).flip();
+            writeFully(channel, header);
+        }
+        long size = channel.position() - start;
+        ByteBuffer end = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+        end.putInt(0x06054b50).putShort((short) 0).putShort((short) 0)
+                .putShort((short) entries.size()).putShort((short) entries.size())
+                .putInt((int) size).putInt((int) start).putShort((short) 0).flip();
+        writeFully(channel, end);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException{
+        while(buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+    }
+
+    static boolean isStored(String name){
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && STORED_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    static long dosTime(long millis){
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+        if(time.getYear() < 1980){
+            return (1 << 21) | (1 << 16);
+        }
+        return (long) (time.getYear() - 1980) << 25 | time.getMonthValue() << 21 | time.getDayOfMonth() << 16
+                | time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1;
+    }
+};
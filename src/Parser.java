@@ -0,0 +1,155 @@
+import java.util.Arrays;
+
+// Single-pass tokenizer for a command line. Words may be quoted with '...'
+// (taken literally) or "..." (where \\ escapes \", \\, $ and `), and a
+// backslash outside quotes escapes whitespace, quotes and operator
+// characters; other backslashes are kept so Windows paths still work.
+// Operators | > >> && ; & are separate tokens even without surrounding spaces.
+// The token arrays and the word buffer are reused from line to line, so the
+// only allocations are the word strings themselves.
+class Parser{
+    static final byte WORD = 0, PIPE = 1, REDIRECT = 2, APPEND = 3, AND = 4, SEQUENCE = 5, BACKGROUND = 6;
+    private static final String OPERATORS = "|>&;";
+
+    private byte[] types = new byte[16];
+    private String[] words = new String[16];
+    private int size;
+    private final StringBuilder word = new StringBuilder();
+    private String error;
+    private String commandName;
+    private String[] args;
+
+    public boolean parse(String input){
+        size = 0;
+        error = null;
+        commandName = null;
+        args = null;
+        if(input == null){
+            return false;
+        }
+        int n = input.length();
+        int i = 0;
+        while(i < n){
+            char c = input.charAt(i);
+            if(Character.isWhitespace(c)){
+                i++;
+            } else if(c == '|'){
+                add(PIPE, null);
+                i++;
+            } else if(c == '>'){
+                boolean append = i + 1 < n && input.charAt(i + 1) == '>';
+                add(append ? APPEND : REDIRECT, null);
+                i += append ? 2 : 1;
+            } else if(c == '&'){
+                boolean and = i + 1 < n && input.charAt(i + 1) == '&';
+                add(and ? AND : BACKGROUND, null);
+                i += and ? 2 : 1;
+            } else if(c == ';'){
+                add(SEQUENCE, null);
+                i++;
+            } else{
+                i = readWord(input, i);
+                if(i < 0){
+                    return false;
+                }
+            }
+        }
+        return size > 0;
+    }
+
+    private int readWord(String input, int i){
+        int n = input.length();
+        word.setLength(0);
+        while(i < n){
+            char c = input.charAt(i);
+            if(Character.isWhitespace(c) || OPERATORS.indexOf(c) >= 0){
+                break;
+            }
+            if(c == '\\' && i + 1 < n){
+                char next = input.charAt(i + 1);
+                if(Character.isWhitespace(next) || OPERATORS.indexOf(next) >= 0 || "'\"\\".indexOf(next) >= 0){
+                    word.append(next);
+                    i += 2;
+                    continue;
+                }
+                word.append(c);
+                i++;
+            } else if(c == '\''){
+                int close = input.indexOf('\'', i + 1);
+                if(close < 0){
+                    error = "unexpected EOF while looking for matching `''";
+                    return -1;
+                }
+                word.append(input, i + 1, close);
+                i = close + 1;
+            } else if(c == '"'){
+                i++;
+                while(i < n && input.charAt(i) != '"'){
+                    char q = input.charAt(i);
+                    if(q == '\\' && i + 1 < n && "\"\\$`".indexOf(input.charAt(i + 1)) >= 0){
+                        word.append(input.charAt(i + 1));
+                        i += 2;
+                    } else{
+                        word.append(q);
+                        i++;
+                    }
+                }
+                if(i >= n){
+                    error = "unexpected EOF while looking for matching `\"'";
+                    return -1;
+                }
+                i++;
+            } else{
+                word.append(c);
+                i++;
+            }
+        }
+        add(WORD, word.toString());
+        return i;
+    }
+
+    private void add(byte type, String text){
+        if(size == types.length){
+            types = Arrays.copyOf(types, size * 2);
+            words = Arrays.copyOf(words, size * 2);
+        }
+        types[size] = type;
+        words[size] = text;
+        size++;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public byte type(int index){
+        return types[index];
+    }
+
+    public String word(int index){
+        return words[index];
+    }
+
+    // Set when the last parse failed because of a syntax error.
+    public String getError(){
+        return error;
+    }
+
+    // The first simple command of the line: its leading run of words.
+    public String getCommandName(){
+        if(commandName == null && size > 0 && types[0] == WORD){
+            commandName = words[0];
+        }
+        return commandName;
+    }
+    public String[] getArgs(){
+        if(args == null){
+            int end = 0;
+            while(end < size && types[end] == WORD){
+                end++;
+            }
+            args = end == 0 ? new String[0] : Arrays.copyOfRange(words, 1, end);
+        }
+        return args;
+    }
+};
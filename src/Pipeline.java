@@ -0,0 +1,40 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// One parsed pipeline: the words of each stage and the file (if any) each
+// stage's output is redirected to.
+class Pipeline{
+    final List<String[]> commands = new ArrayList<>();
+    final List<String> targets = new ArrayList<>();
+    final List<Boolean> appends = new ArrayList<>();
+
+    // The pipeline as it could be typed again, for the jobs listing.
+    String text(){
+        StringBuilder text = new StringBuilder();
+        for(int i = 0; i < commands.size(); i++){
+            if(i > 0){
+                text.append(" | ");
+            }
+            for(int w = 0; w < commands.get(i).length; w++){
+                if(w > 0){
+                    text.append(' ');
+                }
+                text.append(quote(commands.get(i)[w]));
+            }
+            if(targets.get(i) != null){
+                text.append(appends.get(i) ? " >> " : " > ").append(quote(targets.get(i)));
+            }
+        }
+        return text.toString();
+    }
+
+    private static String quote(String word){
+        for(int i = 0; i < word.length(); i++){
+            char c = word.charAt(i);
+            if(Character.isWhitespace(c) || "|>&;'\"\\".indexOf(c) >= 0){
+                return "'" + word.replace("'", "'\\''") + "'";
+            }
+        }
+        return word.isEmpty() ? "''" : word;
+    }
+};
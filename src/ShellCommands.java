@@ -0,0 +1,152 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+// Commands that work on the shell itself: its directory, its background
+// jobs and its statistics, plus echo.
+final class ShellCommands extends Invocation{
+    private final JobTable jobs;
+
+    ShellCommands(Terminal terminal){
+        super(terminal);
+        jobs = terminal.jobs();
+    }
+
+    void echo(String[] args){
+        if (args == null || args.length == 0) {
+            out.println();
+        } else {
+            out.println(String.join(" ", args));
+        }
+    }
+
+    void pwd(String[] args){
+        out.println(currentDir);
+    }
+
+    // cd changes the directory of the terminal the command runs in, so in a
+    // pipeline stage or a background job it has no lasting effect.
+    void cd(String[] args){
+        try{
+            if(args == null || args.length == 0){
+                Path home = Paths.get(System.getProperty("user.home"));
+                terminal.changeDirectory(home.toAbsolutePath().normalize());
+                return;
+            }
+            if(args.length == 1){
+                String target = args[0];
+                if("..".equals(target)){
+                    Path parent = currentDir.getParent();
+                    if(parent != null){
+                        terminal.changeDirectory(parent.toAbsolutePath().normalize());
+                    }
+                    return;
+                }
+                Path path = Paths.get(target);
+                if(!path.isAbsolute()){
+                    path = currentDir.resolve(path);
+                }
+                path = path.toAbsolutePath().normalize();
+                if(Files.exists(path) && Files.isDirectory(path)){
+                    terminal.changeDirectory(path);
+                }
+                else{
+                    error("Wrong Directory: " + path);
+                }
+                return;
+            }
+            error("cd: too many arguments");
+        } catch(Exception e){
+            error("cd "+e.getMessage());
+        }
+    }
+
+    void jobs(String[] args){
+        for(JobTable.Job job : jobs.all()){
+            out.println(job.line());
+        }
+    }
+
+    // wait [id ...]: waits for the given jobs (all jobs by default), prints
+    // their output and returns the status of the last one.
+    void await(String[] args){
+        List<JobTable.Job> targets = args.length == 0 ? jobs.all() : findJobs("wait", args);
+        if(targets == null){
+            return;
+        }
+        int last = 0;
+        for(JobTable.Job job : targets){
+            try{
+                last = job.await();
+            } catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                status = 130;
+                return;
+            }
+            jobs.remove(job);
+            try{
+                job.report(out);
+            } catch(IOException e){
+                error("wait: " + e.getMessage());
+            }
+        }
+        status = last;
+    }
+
+    // kill id ...: asks jobs to stop. Copy and zip loops notice the flag
+    // between chunks and entries; blocked pipes and sleeps are interrupted.
+    void kill(String[] args){
+        if(args.length == 0){
+            error("Usage: kill id ...");
+            return;
+        }
+        List<JobTable.Job> targets = findJobs("kill", args);
+        if(targets == null){
+            return;
+        }
+        for(JobTable.Job job : targets){
+            job.cancelled.set(true);
+            Thread thread = job.thread;
+            if(thread != null){
+                thread.interrupt();
+            }
+        }
+    }
+
+    private List<JobTable.Job> findJobs(String command, String[] args){
+        List<JobTable.Job> found = new ArrayList<>();
+        for(String arg : args){
+            String id = arg.startsWith("%") ? arg.substring(1) : arg;
+            JobTable.Job job = null;
+            try{
+                job = jobs.get(Integer.parseInt(id));
+            } catch(NumberFormatException ignored){
+            }
+            if(job == null){
+                error(command + ": " + arg + ": no such job");
+                status = 127;
+                return null;
+            }
+            found.add(job);
+        }
+        return found;
+    }
+
+    // stats          per-command counts, latency percentiles and I/O
+    // stats --json   the same as JSON
+    // stats --reset  clear everything collected so far
+    void stats(String[] args){
+        if(args.length == 0){
+            Terminal.STATS.print(out);
+        } else if(args.length == 1 && "--json".equals(args[0])){
+            out.println(Terminal.STATS.toJson());
+        } else if(args.length == 1 && "--reset".equals(args[0])){
+            Terminal.STATS.reset();
+        } else{
+            error("Usage: stats [--json | --reset]");
+        }
+    }
+};
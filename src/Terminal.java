@@ -1,653 +1,622 @@
-import java.io.File;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.file.*;
-import java.util.*;
-import java.util.zip.*;
-import java.io.*;
-
-class Parser{
-    private String commandName;
-    private String[] args;
-
-    public boolean parse(String input){
-        if(input == null || input.trim().isEmpty()){
-            return false;
-        }
-        String[] parts = input.trim().split("\\s+");
-        if(parts.length == 0){
-            args = new String[0];
-            return true;
-        }
-        commandName = parts[0];
-        args = new String[parts.length-1];
-        for(int i = 1 ; i < parts.length ; i++){
-            args[i-1] = parts[i];
-        }
-        return true;
-    }
-    public String getCommandName(){
-        return commandName;
-    }
-    public String[] getArgs(){
-        return args;
-    }
-};
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import jdk.jfr.FlightRecorder;
 
 public class Terminal{
+    // Per-command counters for the stats command, shared by every terminal in the JVM.
+    static final CommandStats STATS = new CommandStats();
+    // The default state directory: the clios.state system property, or ~/.clios.
+    static final Path STATE_DIR = System.getProperty("clios.state") != null
+            ? Paths.get(System.getProperty("clios.state"))
+            : Paths.get(System.getProperty("user.home"), ".clios");
+    // Cached directory listings for ls (see DirectoryCache).
+    static final DirectoryCache LISTINGS = new DirectoryCache(64 << 20);
+
     Parser parser = new Parser();
     private Path currentDir = Paths.get(System.getProperty("user.dir")).toAbsolutePath().normalize();
-
-    public String pwd(){
-        return currentDir.toString();
+    private InputStream in = InputStream.nullInputStream();
+    private PrintStream out = System.out;
+    // Exit status of the last command: 0 on success, non-zero once it reports an error.
+    private volatile int status;
+    // Background jobs, shared with child terminals.
+    private JobTable jobs = new JobTable();
+    // Set when the job this terminal runs in is killed; long copy and zip
+    // loops check it and stop early.
+    private AtomicBoolean cancelled = new AtomicBoolean();
+    // I/O done by the running command, for the stats command and JFR events.
+    private final CommandStats.Usage io = new CommandStats.Usage();
+    // Where commands keep state between runs, such as cp -u's indexes.
+    private Path stateDir = STATE_DIR;
+
+    public Terminal(){
     }
 
-    public void cd(String[] args){
-        try{
-            if(args == null || args.length == 0){
-                Path home = Paths.get(System.getProperty("user.home"));
-                currentDir = home.toAbsolutePath().normalize();
-                return;
-            }
-            if(args.length == 1){
-                String target = args[0];
-                if("..".equals(target)){
-                    Path parent = currentDir.getParent();
-                    if(parent != null){
-                        currentDir = parent.toAbsolutePath().normalize();
-                    }
-                    return;
-                }
-                Path path = Paths.get(target);
-                if(!path.isAbsolute()){
-                    path = currentDir.resolve(path);
-                }
-                path = path.toAbsolutePath().normalize();
-                if(Files.exists(path) && Files.isDirectory(path)){
-                    currentDir = path;
-                }
-                else{
-                    System.out.println("Wrong Directory: " + path);
-                }
-                return;
-            }
-            System.out.println("cd: too many arguments");
-        } catch(Exception e){
-            System.out.println("cd "+e.getMessage());
-        }
+    // An embedded terminal that starts in dir and uses the given streams
+    // instead of the console (used by the benchmarks).
+    public Terminal(Path dir, InputStream in, PrintStream out){
+        this.currentDir = dir.toAbsolutePath().normalize();
+        this.in = in;
+        this.out = out;
     }
 
-    public String ls(){
-        try{
-            List<String> files = new ArrayList<>();
-            if(currentDir.toFile().listFiles() == null){
-                return null;
-            }
-            for(File file : currentDir.toFile().listFiles()){
-                files.add(file.getAbsoluteFile().getName());
-            }
-            files.sort(String.CASE_INSENSITIVE_ORDER);
-            for(String file : files){
-                System.out.println(file);
-            }
-            return String.join(", ", files);
-        }
-        catch(Exception e){
-            System.out.println("ls: " + e.getMessage());
-        }
-        return null;
+    // A child shell for one pipeline stage: it starts in the parent's directory
+    // but reads and writes its own streams, like a subshell.
+    Terminal(Terminal parent, InputStream in, PrintStream out){
+        this(parent, in, out, parent.cancelled);
     }
 
-    public void mkdir(String[] args){
-        if(args == null || args.length == 0){
-            System.out.println("mkdir: No arguments provided");
-            return;
-        }
-        for(String arg : args){
-            try{
-                Path path = Paths.get(arg);
-                if(!path.isAbsolute()){
-                    path = currentDir.resolve(path);
-                }
-                Files.createDirectory(path);
-            }
-            catch(Exception e){
-                System.out.println("mkdir: "+e.getMessage());
-            }
-        }
+    private Terminal(Terminal parent, InputStream in, PrintStream out, AtomicBoolean cancelled){
+        this.currentDir = parent.currentDir;
+        this.in = in;
+        this.out = out;
+        this.jobs = parent.jobs;
+        this.cancelled = cancelled;
+        this.stateDir = parent.stateDir;
     }
 
-    public void rmdir(String[] args){
-        if(args == null || args.length == 0){
-            System.out.println("rmdir: No arguments provided");
-            return;
-        }
-        String target = args[0];
-        try{
-            if("*".equals(target)){
-                try(DirectoryStream<Path> stream = Files.newDirectoryStream(currentDir)){
-                    for(Path path : stream){
-                        if(Files.isDirectory(path)){
-                            try{
-                                Files.delete(path);
-                            } catch(IOException IOE){
-                                System.out.println("rmdir: Couldn't delete "+IOE.getMessage());
-                            }
-                        }
-                    }
-                }
-                return;
-            }
-            Path path = Paths.get(target);
-            if(!path.isAbsolute()){
-                path = currentDir.resolve(path);
-            }
-            path = path.toAbsolutePath().normalize();
-            if(!Files.exists(path)){
-                System.out.println("rmdir: No such a directory: "+path);
-                return;
-            }
-            if(!Files.isDirectory(path)){
-                System.out.println("rmdir: Not a directory: "+path);
-                return;
-            }
-            try{
-                Files.delete(path);
-            } catch(IOException ioe){
-                System.out.println("rmdir: Couldn't delete "+ioe.getMessage());
-            }
-        }catch(Exception e){
-            System.out.println("rmdir: "+e.getMessage());
-        }
+    // Reports a failure and marks the running command as failed.
+    private void error(String message){
+        error(out, message);
     }
 
-    public void touch(String[] args){
-        if(args == null || args.length == 0){
-            System.out.println("touch: No arguments provided");
-            return;
-        }
-        try{
-            Path path = Paths.get(args[0]);
-            if(!path.isAbsolute()){
-                path = currentDir.resolve(path);
-            }
-            path = path.toAbsolutePath().normalize();
-            Path parent = path.getParent();
-            if(parent != null && !Files.exists(parent)){
-                Files.createDirectory(parent);
-            }
-            if(!Files.exists(path)){
-                Files.createFile(path);
-            }
-
-        }
-        catch(Exception e){
-            System.out.println("touch: "+e.getMessage());
+    private void error(PrintStream stream, String message){
+        if(stream != out){
+            out.flush();
         }
+        stream.println(message);
+        status = 1;
     }
 
-    public void rm(String[] args){
-        if(args == null || args.length == 0){
-            System.out.println("rm: No arguments provided");
-            return;
-        }
-        String target = args[0];
-        Path path = Paths.get(target);
-        if(!path.isAbsolute()){
-            path = currentDir.resolve(path);
-        }
-        path = path.toAbsolutePath().normalize();
-
-        try{
-            if(!Files.exists(path)){
-                System.out.println("rm: No such a file: "+path);
-                return;
-            }
-
-            if(Files.isDirectory(path)){
-                System.out.println("rm: Not a file: "+path);
-                return;
-            }
-            Files.delete(path);
-        }
-        catch(Exception e){
-            System.out.println("rm: "+e.getMessage());
-        }
+    public int getStatus(){
+        return status;
     }
 
-    public void cat(String[] args) {
-        if (args.length == 0 || args.length > 2) {
-            System.out.println("Wrong Input!!");
-            return;
-        }
-
-        for (String fileName : args) {
-            Path path = Paths.get(fileName);
-            if (!path.isAbsolute()) {
-                path = currentDir.resolve(path);
-            }
-            path = path.toAbsolutePath().normalize();
-
-            if (!Files.exists(path)) {
-                System.err.println("cat: " + fileName + ": No such file");
-                continue;
-            }
+    // The running command's streams and directory, for Command implementations.
+    public InputStream in(){
+        return in;
+    }
 
-            try {
-                Files.lines(path).forEach(System.out::println);
-            } catch (IOException e) {
-                System.err.println("cat: " + fileName + ": " + e.getMessage());
-            }
-        }
+    public PrintStream out(){
+        return out;
     }
 
-    public void wc(String[] args) {
-        if (args.length != 1) {
-            System.out.println("Usage: wc <filename>");
-            return;
-        }
-        Path path = Paths.get(args[0]);
-        if (!path.isAbsolute()) {
-            path = currentDir.resolve(path);
-        }
-        path = path.toAbsolutePath().normalize();
-        if (!Files.exists(path)) {
-            System.err.println("wc: " + args[0] + ": No such file");
-            return;
-        }
-        try {
-            long lineCount = 0, wordCount = 0, charCount = 0;
+    public Path directory(){
+        return currentDir;
+    }
 
-            for (String line : Files.readAllLines(path)) {
-                lineCount++;
-                charCount += line.length();
-                wordCount += line.trim().isEmpty() ? 0 : line.trim().split("\\s+").length;
-            }
+    // True once the job the command runs in has been killed; long-running
+    // commands should check it and stop.
+    public boolean isCancelled(){
+        return cancelled.get();
+    }
 
-            System.out.println(lineCount + " " + wordCount + " " + charCount + " " + path.getFileName());
+    // The directory commands keep state in between runs (see STATE_DIR).
+    public Path stateDirectory(){
+        return stateDir;
+    }
 
-        } catch (IOException e) {
-            System.err.println("wc: " + args[0] + ": " + e.getMessage());
-        }
+    public void setStateDirectory(Path dir){
+        stateDir = dir;
     }
 
-    public void cp(String[] args) {
-        if(args[0].equals("-r")){
-            cp_r(args);
-            return;
-        }
-        
-        if (args.length < 2) {
-            System.out.println("Usage: cp <source> <destination>");
-            return;
-        }
-        
-        File src = new File(currentDir.toFile(), args[0]);
-        File dest = new File(currentDir.toFile(), args[1]);
+    public String pwd(){
+        return currentDir.toString();
+    }
 
-        if (!src.exists()) {
-            System.out.println("Source not found: " + args[0]);
-            return;
-        }
+    // For the built-in commands (see Invocation).
+    void changeDirectory(Path dir){
+        currentDir = dir;
+    }
 
-        if (dest.isDirectory()) {
-            dest = new File(dest, src.getName());
-        }
+    JobTable jobs(){
+        return jobs;
+    }
 
-        try (FileInputStream in = new FileInputStream(src);
-             FileOutputStream out = new FileOutputStream(dest)) {
-            byte[] buffer = new byte[1024];
-            int bytesRead;
-            while ((bytesRead = in.read(buffer)) != -1) {
-                out.write(buffer, 0, bytesRead);
-            }
-            System.out.println("File copied successfully to " + dest.getPath());
-        } catch (IOException e) {
-            System.out.println("Error copying file: " + e.getMessage());
-        }
+    AtomicBoolean cancelFlag(){
+        return cancelled;
     }
 
-    public void cp_r(String[] args) {
-        if (args.length < 2) {
-            System.out.println("Usage: cp [-r] <source> <destination>");
-            return;
-        }
+    CommandStats.Usage usage(){
+        return io;
+    }
 
-        boolean recursive = false;
-        int startIndex = 0;
+    private void startJob(Pipeline pipeline){
+        AtomicBoolean jobCancelled = new AtomicBoolean();
+        JobTable.Job job = jobs.add(pipeline.text(), jobCancelled);
+        Terminal child = new Terminal(this, InputStream.nullInputStream(), new PrintStream(job.output, true), jobCancelled);
+        job.future = JobTable.EXECUTOR.submit(() -> {
+            job.thread = Thread.currentThread();
+            try{
+                child.run(pipeline);
+            } finally{
+                child.out.flush();
+            }
+            return child.status;
+        });
+        out.println("[" + job.id + "] " + job.command);
+        status = 0;
+    }
 
-        if (args[0].equals("-r")) {
-            recursive = true;
-            startIndex = 1;
-            if (args.length < 3) {
-                System.out.println("Usage: cp -r <source> <destination>");
-                return;
+    // Prints the captured output and final state of jobs that have finished.
+    public void reportFinishedJobs(){
+        for(JobTable.Job job : jobs.reapFinished()){
+            try{
+                job.report(out);
+            } catch(IOException e){
+                error("jobs: " + e.getMessage());
             }
         }
+    }
 
-        File src = new File(currentDir.toFile(), args[startIndex]);
-        File dest = new File(currentDir.toFile(), args[startIndex + 1]);
-
-        if (!src.exists()) {
-            System.out.println("Source not found: " + src.getPath());
-            return;
-        }
-
-        if (src.isDirectory()) {
-            if (!recursive) {
-                System.out.println("Omitting directory '" + src.getName() + "' (use -r to copy recursively)");
-                return;
-            }
-            copyDirectory(src, dest);
-        } else {
-            if (dest.isDirectory()) {
-                dest = new File(dest, src.getName());
-            }
-            copyFile(src, dest);
+    // Waits for jobs still running when the shell exits, so their work isn't cut off.
+    void finishJobs(){
+        List<JobTable.Job> running = jobs.all();
+        if(!running.isEmpty()){
+            out.flush();
+            System.err.println("waiting for " + running.size() + " background job(s)");
+            status = COMMANDS.find("wait").run(this, new String[0]);
         }
-
-        System.out.println("Copied successfully to " + dest.getPath());
     }
 
-    private void copyFile(File src, File dest) {
-        try (FileInputStream in = new FileInputStream(src);
-             FileOutputStream out = new FileOutputStream(dest)) {
-            byte[] buffer = new byte[1024];
-            int bytesRead;
-            while ((bytesRead = in.read(buffer)) != -1) {
-                out.write(buffer, 0, bytesRead);
+    public void chooseCommandAction(String cmd, String[] args){
+        status = 0;
+        io.reset();
+        // The first event class to load initializes JFR, which takes longer
+        // than most commands, so events are only created once a recording
+        // (-XX:StartFlightRecording or jcmd JFR.start) has done that.
+        CommandEvent event = FlightRecorder.isInitialized() ? new CommandEvent() : null;
+        if(event != null){
+            event.begin();
+        }
+        long start = System.nanoTime();
+        try{
+            Command command = COMMANDS.find(cmd);
+            if(command == null){
+                error("Unknown command: " + cmd);
+                status = 127;
+            } else{
+                status = command.run(this, args);
+            }
+        } finally{
+            long elapsed = System.nanoTime() - start;
+            if(status != 127){
+                STATS.record(cmd, elapsed, status, io);
+            }
+            if(event != null){
+                event.end();
+            }
+            if(event != null && event.shouldCommit()){
+                event.command = cmd;
+                event.arguments = String.join(" ", args);
+                event.status = status;
+                event.bytesRead = io.bytesRead.get();
+                event.bytesWritten = io.bytesWritten.get();
+                event.filesTouched = io.filesTouched.get();
+                event.commit();
             }
-        } catch (IOException e) {
-            System.out.println("Error copying file: " + e.getMessage());
         }
     }
 
-    private void copyDirectory(File srcDir, File destDir) {
-        if (!destDir.exists()) {
-            destDir.mkdirs();
-        }
-
-        File[] files = srcDir.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                File newDest = new File(destDir, file.getName());
-                if (file.isDirectory()) {
-                    copyDirectory(file, newDest);
-                } else {
-                    copyFile(file, newDest);
-                }
-            }
-        }
+    // The built-in commands, created on first use by the registry.
+    private static final CommandRegistry COMMANDS = new CommandRegistry(Terminal::builtin);
+
+    private static Command builtin(String name){
+        return switch(name){
+            case "echo" -> Command.of(name, ShellCommands::new, ShellCommands::echo);
+            case "pwd" -> Command.of(name, ShellCommands::new, ShellCommands::pwd);
+            case "cd" -> Command.of(name, ShellCommands::new, ShellCommands::cd);
+            case "jobs" -> Command.of(name, ShellCommands::new, ShellCommands::jobs);
+            case "wait" -> Command.of(name, ShellCommands::new, ShellCommands::await);
+            case "kill" -> Command.of(name, ShellCommands::new, ShellCommands::kill);
+            case "stats" -> Command.of(name, ShellCommands::new, ShellCommands::stats);
+            case "ls" -> Command.of(name, FileCommands::new, FileCommands::ls);
+            case "mkdir" -> Command.of(name, FileCommands::new, FileCommands::mkdir);
+            case "rmdir" -> Command.of(name, FileCommands::new, FileCommands::rmdir);
+            case "touch" -> Command.of(name, FileCommands::new, FileCommands::touch);
+            case "rm" -> Command.of(name, FileCommands::new, FileCommands::rm);
+            case "find" -> Command.of(name, FileCommands::new, FileCommands::find);
+            case "du" -> Command.of(name, FileCommands::new, FileCommands::du);
+            case "dupes" -> Command.of(name, FileCommands::new, FileCommands::dupes);
+            case "cat" -> Command.of(name, TextCommands::new, TextCommands::cat);
+            case "head" -> Command.of(name, TextCommands::new, TextCommands::head);
+            case "tail" -> Command.of(name, TextCommands::new, TextCommands::tail);
+            case "wc" -> Command.of(name, TextCommands::new, TextCommands::wc);
+            case "grep" -> Command.of(name, TextCommands::new, TextCommands::grep);
+            case "sort" -> Command.of(name, TextCommands::new, TextCommands::sort);
+            case "uniq" -> Command.of(name, TextCommands::new, TextCommands::uniq);
+            case "sum" -> Command.of(name, ChecksumCommands::new, ChecksumCommands::sum);
+            case "sha256sum" -> Command.of(name, ChecksumCommands::new, ChecksumCommands::sha256sum);
+            case "cp" -> Command.of(name, CopyCommands::new, CopyCommands::cp);
+            case "zip" -> Command.of(name, ArchiveCommands::new, ArchiveCommands::zip);
+            case "unzip" -> Command.of(name, ArchiveCommands::new, ArchiveCommands::unzip);
+            case "pack" -> Command.of(name, ArchiveCommands::new, ArchiveCommands::pack);
+            case "unpack" -> Command.of(name, ArchiveCommands::new, ArchiveCommands::unpack);
+            default -> null;
+        };
     }
 
-    public void zip(String[] args) {
-        if (args.length < 2) {
-            System.out.println("zip: invalid number of arguments");
-            System.out.println("Usage: zip archive_name.zip file1 [file2 ...]");
-            return;
-        }
+    private static final int PIPE_CAPACITY = 64 << 10;
 
-        boolean recursive = false;
-        int startIndex = 1;
-        String zipName = args[0];
+    // Runs tokens [from, to) of the parsed line as "cmd1 | cmd2 | ..." with
+    // every stage on its own virtual thread, connected by bounded pipes. A
+    // stage's "> file" or ">> file" replaces its output. A single command
+    // runs directly on this terminal so cd still takes effect.
+    private void runPipeline(int from, int to){
+        run(readPipeline(from, to));
+    }
 
-        // Handle -r flag
-        if (args[0].equals("-r")) {
-            if (args.length < 3) {
-                System.out.println("zip: missing archive name or directory");
-                return;
+    private Pipeline readPipeline(int from, int to){
+        Pipeline pipeline = new Pipeline();
+        int start = from;
+        String target = null;
+        boolean append = false;
+        for(int i = from; i <= to; i++){
+            byte type = i < to ? parser.type(i) : Parser.PIPE;
+            if(type == Parser.REDIRECT || type == Parser.APPEND){
+                target = parser.word(++i);
+                append = type == Parser.APPEND;
+            } else if(type == Parser.PIPE){
+                List<String> words = new ArrayList<>();
+                for(int w = start; w < i; w++){
+                    if(parser.type(w) == Parser.WORD){
+                        words.add(parser.word(w));
+                    } else{
+                        w++;
+                    }
+                }
+                pipeline.commands.add(words.toArray(new String[0]));
+                pipeline.targets.add(target);
+                pipeline.appends.add(append);
+                target = null;
+                append = false;
+                start = i + 1;
             }
-            recursive = true;
-            zipName = args[1];
-            startIndex = 2;
         }
+        return pipeline;
+    }
 
-        Path zipPath = currentDir.resolve(zipName);
-
-        try (FileOutputStream fos = new FileOutputStream(zipPath.toFile());
-             ZipOutputStream zos = new ZipOutputStream(fos)) {
-
-            for (int i = startIndex; i < args.length; i++) {
-                Path target = currentDir.resolve(args[i]);
-                if (!Files.exists(target)) {
-                    System.out.println("zip: cannot find '" + args[i] + "'");
-                    continue;
-                }
+    private void run(Pipeline pipeline){
+        List<String[]> commands = pipeline.commands;
+        List<String> targets = pipeline.targets;
+        List<Boolean> appends = pipeline.appends;
 
-                if (Files.isDirectory(target)) {
-                    if (recursive) {
-                        Files.walk(target)
-                                .filter(p -> !Files.isDirectory(p))
-                                .forEach(p -> {
-                                    try {
-                                        String entryName = target.getParent() == null
-                                                ? p.toString()
-                                                : target.getParent().relativize(p).toString();
-                                        zos.putNextEntry(new ZipEntry(entryName));
-                                        Files.copy(p, zos);
-                                        zos.closeEntry();
-                                    } catch (IOException e) {
-                                        System.out.println("zip: failed to add " + p.getFileName());
-                                    }
-                                });
-                    } else {
-                        System.out.println("zip: " + args[i] + " is a directory (use -r to include it)");
+        // Open every redirect target before anything runs, like the shell does.
+        PrintStream[] sinks = new PrintStream[commands.size()];
+        try{
+            for(int i = 0; i < sinks.length; i++){
+                if(targets.get(i) != null){
+                    Path outFile = currentDir.resolve(targets.get(i)).toAbsolutePath().normalize();
+                    try{
+                        sinks[i] = openRedirect(outFile, appends.get(i));
+                    } catch(IOException e){
+                        error("Redirection error: " + e.getMessage());
+                        return;
                     }
-                } else {
-                    try {
-                        zos.putNextEntry(new ZipEntry(target.getFileName().toString()));
-                        Files.copy(target, zos);
-                        zos.closeEntry();
-                    } catch (IOException e) {
-                        System.out.println("zip: failed to add file '" + args[i] + "'");
+                }
+            }
+            runStages(commands, sinks);
+        } finally{
+            for(int i = 0; i < sinks.length; i++){
+                if(sinks[i] != null){
+                    sinks[i].close();
+                    if(sinks[i].checkError()){
+                        error("Redirection error: could not write " + targets.get(i));
                     }
                 }
             }
-
-            System.out.println("zip: created '" + zipName + "' successfully");
-
-        } catch (IOException e) {
-            System.out.println("zip: error creating '" + zipName + "': " + e.getMessage());
         }
     }
 
-    public void unzip(String[] args) {
-        if (args == null || args.length == 0) {
-            System.out.println("unzip: missing archive name");
-            return;
-        }
-
-        // Parse args flexibly: allow either "unzip archive.zip -d dest" or "unzip -d dest archive.zip"
-        String archiveArg = null;
-        String destArg = null;
-
-        for (int i = 0; i < args.length; i++) {
-            if ("-d".equals(args[i]) && i + 1 < args.length) {
-                destArg = args[i + 1];
+    // Checks the whole line before anything runs: every command needs a
+    // word, every redirect needs a target, and | and && need a right side.
+    private boolean checkSyntax(){
+        boolean hasWord = false;
+        byte pending = -1;
+        for(int i = 0; i < parser.size(); i++){
+            byte type = parser.type(i);
+            if(type == Parser.WORD){
+                hasWord = true;
+                pending = -1;
+            } else if(type == Parser.REDIRECT || type == Parser.APPEND){
+                if(i + 1 >= parser.size() || parser.type(i + 1) != Parser.WORD){
+                    syntaxError(i + 1 < parser.size() ? parser.type(i + 1) : -1);
+                    return false;
+                }
                 i++;
-            } else {
-                if (archiveArg == null) archiveArg = args[i];
-
+            } else{
+                if(!hasWord){
+                    syntaxError(type);
+                    return false;
+                }
+                hasWord = false;
+                pending = type;
             }
         }
-
-        if (archiveArg == null) {
-            System.out.println("unzip: missing archive name");
-            return;
+        if(pending == Parser.PIPE || pending == Parser.AND || (!hasWord && pending == -1)){
+            syntaxError(-1);
+            return false;
         }
+        return true;
+    }
 
-        Path zipPath = Paths.get(archiveArg);
-        if (!zipPath.isAbsolute()) zipPath = currentDir.resolve(zipPath);
-        zipPath = zipPath.normalize();
-
-        Path destDir = currentDir;
-        if (destArg != null) {
-            Path t = Paths.get(destArg);
-            if (!t.isAbsolute()) t = currentDir.resolve(t);
-            destDir = t.normalize();
-        }
+    private void syntaxError(int type){
+        String token = type == Parser.PIPE ? "|" : type == Parser.REDIRECT ? ">" : type == Parser.APPEND ? ">>"
+                : type == Parser.AND ? "&&" : type == Parser.SEQUENCE ? ";" : type == Parser.BACKGROUND ? "&"
+                : "newline";
+        error("syntax error near unexpected token `" + token + "'");
+        status = 2;
+    }
 
-        if (!Files.exists(zipPath)) {
-            System.out.println("unzip: cannot find '" + zipPath.getFileName() + "'");
+    private void runStages(List<String[]> commands, PrintStream[] sinks){
+        if(commands.size() == 1){
+            PrintStream previous = out;
+            if(sinks[0] != null){
+                out = sinks[0];
+            }
+            try{
+                chooseCommandAction(commands.get(0)[0], Arrays.copyOfRange(commands.get(0), 1, commands.get(0).length));
+            } finally{
+                out = previous;
+            }
             return;
         }
-
-        try {
-            if (!Files.exists(destDir)) Files.createDirectories(destDir);
-
-            try (ZipInputStream zis = new ZipInputStream(new FileInputStream(zipPath.toFile()))) {
-                ZipEntry entry;
-                while ((entry = zis.getNextEntry()) != null) {
-                    Path newFilePath = destDir.resolve(entry.getName()).normalize();
-
-                    if (!newFilePath.startsWith(destDir.toAbsolutePath())) {
-                        System.out.println("unzip: skipping suspicious entry: " + entry.getName());
-                        zis.closeEntry();
-                        continue;
+        // Each stage has its own cancel flag: a stage whose reader has gone
+        // (head -n 1) is stopped alone, and a kill sets them all.
+        List<Thread> threads = new ArrayList<>();
+        List<AtomicBoolean> stageFlags = new ArrayList<>();
+        Terminal lastStage = null;
+        InputStream stageIn = InputStream.nullInputStream();
+        for(int i = 0; i < commands.size(); i++){
+            String[] command = commands.get(i);
+            boolean last = i == commands.size() - 1;
+            InputStream source = stageIn;
+            PrintStream stageOut;
+            boolean piped = false;
+            AtomicBoolean stageCancelled = new AtomicBoolean(cancelled.get());
+            stageFlags.add(stageCancelled);
+            if(last){
+                stageOut = sinks[i] != null ? sinks[i] : out;
+            } else{
+                // A stage redirected to a file keeps going when the next one exits.
+                BytePipe pipe = new BytePipe(PIPE_CAPACITY, sinks[i] != null ? () -> {} : () -> stageCancelled.set(true));
+                stageIn = pipe.source();
+                if(sinks[i] != null){
+                    // Output goes to the file; the next stage sees an empty pipe.
+                    stageOut = sinks[i];
+                    try{
+                        pipe.sink().close();
+                    } catch(IOException ignored){
                     }
-
-                    if (entry.isDirectory()) {
-                        Files.createDirectories(newFilePath);
-                    } else {
-                        if (newFilePath.getParent() != null) Files.createDirectories(newFilePath.getParent());
-                        Files.copy(zis, newFilePath, StandardCopyOption.REPLACE_EXISTING);
+                } else{
+                    stageOut = new PrintStream(new BufferedOutputStream(pipe.sink(), 8192));
+                    piped = true;
+                }
+            }
+            Terminal stage = new Terminal(this, source, stageOut, stageCancelled);
+            if(last){
+                lastStage = stage;
+            }
+            boolean closeOut = piped;
+            threads.add(Thread.ofVirtual().name("pipeline-" + command[0]).start(() -> {
+                try{
+                    stage.chooseCommandAction(command[0], Arrays.copyOfRange(command, 1, command.length));
+                } finally{
+                    if(closeOut){
+                        stageOut.close();
+                    } else{
+                        stageOut.flush();
+                    }
+                    try{
+                        source.close();
+                    } catch(IOException ignored){
+                    }
+                }
+            }));
+        }
+        boolean interrupted = false;
+        for(Thread thread : threads){
+            while(true){
+                try{
+                    thread.join();
+                    break;
+                } catch(InterruptedException e){
+                    // Killed: pass the interrupt on to every stage, then let them wind down.
+                    interrupted = true;
+                    for(AtomicBoolean flag : stageFlags){
+                        flag.set(true);
+                    }
+                    for(Thread stage : threads){
+                        stage.interrupt();
                     }
-                    zis.closeEntry();
                 }
             }
-
-            System.out.println("unzip: extracted '" + zipPath.getFileName() + "' successfully");
-        } catch (IOException e) {
-            System.out.println("unzip: error extracting '" + zipPath.getFileName() + "': " + e.getMessage());
         }
+        if(interrupted){
+            Thread.currentThread().interrupt();
+        }
+        status = lastStage.status;
     }
 
+    private static final int REDIRECT_BUFFER_SIZE = 64 << 10;
 
-    public void chooseCommandAction(String cmd, String[] args){
-        switch(cmd){
-            case "echo":
-                if (args == null || args.length == 0) {
-                    System.out.println();
-                } else {
-                    System.out.println(String.join(" ", args));
+    // Opens the target of > or >> before the command runs; output is written
+    // through a fixed-size buffer so memory use doesn't depend on output size.
+    static PrintStream openRedirect(Path file, boolean append) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+        return new ChannelPrintStream(channel, REDIRECT_BUFFER_SIZE);
+    }
+
+    private static final int SCRIPT_BUFFER_SIZE = 64 << 10;
+    private static final long SCRIPT_FLUSH_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    // Runs one command line and returns its exit status. The line is a list
+    // of pipelines joined by ';' (always run the next one), '&&' (run the
+    // next one only if this one succeeded) and '&' (start this one as a
+    // background job and go on).
+    public int execute(String line){
+        if(!parser.parse(line)){
+            if(parser.getError() != null){
+                error(parser.getError());
+                status = 2;
+            }
+            return status;
+        }
+        if(!checkSyntax()){
+            return status;
+        }
+        int size = parser.size();
+        boolean skip = false;
+        int from = 0;
+        while(from < size){
+            int to = from;
+            while(to < size && parser.type(to) != Parser.SEQUENCE && parser.type(to) != Parser.AND
+                    && parser.type(to) != Parser.BACKGROUND){
+                to++;
+            }
+            if(!skip){
+                if(to < size && parser.type(to) == Parser.BACKGROUND){
+                    startJob(readPipeline(from, to));
+                } else{
+                    runPipeline(from, to);
                 }
-                break;
-            case "pwd":
-                System.out.println(pwd());
-                break;
-            case "cd":
-                cd(args);
-                break;
-            case "ls":
-                ls();
-                break;
-            case "mkdir":
-                mkdir(args);
-                break;
-            case "rmdir":
-                rmdir(args);
-                break;
-            case "touch":
-                touch(args);
-                break;
-            case "rm":
-                rm(args);
-                break;
-            case "cat":
-                cat(args);
-                break;
-            case "wc":
-                wc(args);
-                break;
-            case "cp":
-                cp(args);
-                break;
-            case "zip":
-                zip(args);
-                break;
-            case "unzip":
-                unzip(args);
-                break;
-            default:
-                System.out.println("Unknown command: " + cmd);
+            }
+            if(to < size && parser.type(to) == Parser.AND){
+                skip = skip || status != 0;
+            } else{
+                skip = false;
+            }
+            from = to + 1;
         }
+        return status;
     }
 
-    public static void main(String[] args){
-        Terminal terminal = new Terminal();
-        Scanner scanner = new Scanner(System.in);
-        while(true){
-            System.out.print("> ");
+    // Non-interactive mode: reads commands from a script (or stdin when script
+    // is null) without prompting, keeps stdout block-buffered with periodic
+    // flushes, and returns the status of the last command run. With
+    // stopOnError the script ends at the first failing command.
+    public int runScript(String script, boolean stopOnError){
+        long start = System.nanoTime();
+        long lastFlush = start;
+        long commands = 0;
+        PrintStream previous = out;
+        out = new ChannelPrintStream(new FileOutputStream(FileDescriptor.out).getChannel(), SCRIPT_BUFFER_SIZE);
+        try(BufferedReader reader = script == null
+                ? new BufferedReader(new InputStreamReader(System.in), SCRIPT_BUFFER_SIZE)
+                : Files.newBufferedReader(currentDir.resolve(script))){
             String line;
-            try{
-                line = scanner.nextLine();
-            }catch(NoSuchElementException e){
-                break;
-            }
-            if(line == null){
-                break;
-            }
-            line = line.trim();
-            if(line.isEmpty()){
-                continue;
-            }
-            if("exit".equals(line)){
-                break;
-            }
-            if(!terminal.parser.parse(line)){
-                continue;
+            while((line = reader.readLine()) != null){
+                line = line.trim();
+                if(line.isEmpty() || line.startsWith("#")){
+                    continue;
+                }
+                if("exit".equals(line)){
+                    break;
+                }
+                reportFinishedJobs();
+                execute(line);
+                commands++;
+                if(status != 0 && stopOnError){
+                    break;
+                }
+                long now = System.nanoTime();
+                if(now - lastFlush >= SCRIPT_FLUSH_NANOS){
+                    out.flush();
+                    lastFlush = now;
+                }
             }
+            finishJobs();
+        } catch(IOException e){
+            error(System.err, "script: " + e.getMessage());
+        } finally{
+            out.flush();
+            out = previous;
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        System.err.println("script: " + commands + " commands in " + millis + " ms, exit status " + status);
+        return status;
+    }
 
-            String cmd = terminal.parser.getCommandName();
-            String[] cmdArgs = terminal.parser.getArgs();
-
-            // 🔽 ADD FROM HERE
-            if(line.contains(">")) {
-                boolean append = line.contains(">>");
-                String[] parts = append ? line.split(">>") : line.split(">");
-                if(parts.length == 2) {
-                    String left = parts[0].trim();
-                    String right = parts[1].trim();
-
-                    // Parse left command
-                    if(!terminal.parser.parse(left)) continue;
-                    cmd = terminal.parser.getCommandName();
-                    cmdArgs = terminal.parser.getArgs();
-
-                    // Capture output
-                    java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
-                    java.io.PrintStream ps = new java.io.PrintStream(baos);
-                    java.io.PrintStream oldOut = System.out;
-                    System.setOut(ps);
-
-                    terminal.chooseCommandAction(cmd, cmdArgs);
-
-                    System.out.flush();
-                    System.setOut(oldOut);
-
-                    String output = baos.toString();
-                    java.nio.file.Path outFile = java.nio.file.Paths.get(right);
-                    if(!outFile.isAbsolute()){
-                        outFile = terminal.currentDir.resolve(outFile);
-                    }
-                    outFile = outFile.toAbsolutePath().normalize();
-
-                    try {
-                        if(append)
-                            java.nio.file.Files.write(outFile, output.getBytes(), java.nio.file.StandardOpenOption.CREATE, java.nio.file.StandardOpenOption.APPEND);
-                        else
-                            java.nio.file.Files.write(outFile, output.getBytes(), java.nio.file.StandardOpenOption.CREATE, java.nio.file.StandardOpenOption.TRUNCATE_EXISTING);
-                    } catch (Exception e) {
-                        System.out.println("Redirection error: " + e.getMessage());
-                    }
+    // Usage: java Terminal [-e] [-f script | -s] [--stats-json file]
+    //   -f script          run the commands in script without prompting
+    //   -s                 run commands read from standard input without prompting
+    //   -e                 in script mode, stop at the first command that fails
+    //   --stats-json file  write the stats command's numbers to file as JSON on exit
+    public static void main(String[] args){
+        String script = null, statsFile = null;
+        boolean batch = false, stopOnError = false;
+        for(int i = 0; i < args.length; i++){
+            if("-f".equals(args[i]) && i + 1 < args.length){
+                script = args[++i];
+                batch = true;
+            } else if("-s".equals(args[i])){
+                batch = true;
+            } else if("-e".equals(args[i])){
+                stopOnError = true;
+            } else if("--stats-json".equals(args[i]) && i + 1 < args.length){
+                statsFile = args[++i];
+            } else{
+                System.err.println("Usage: java Terminal [-e] [-f script | -s] [--stats-json file]");
+                System.exit(2);
+            }
+        }
+        Terminal terminal = new Terminal();
+        int exitStatus = 0;
+        if(batch){
+            exitStatus = terminal.runScript(script, stopOnError);
+        } else{
+            // A plain reader rather than Scanner, which would load the regex
+            // engine before the first prompt.
+            BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+            while(true){
+                terminal.reportFinishedJobs();
+                System.out.print("> ");
+                String line;
+                try{
+                    line = reader.readLine();
+                }catch(IOException e){
+                    break;
+                }
+                if(line == null){
+                    break;
+                }
+                line = line.trim();
+                if(line.isEmpty()){
                     continue;
                 }
+                if("exit".equals(line)){
+                    break;
+                }
+                terminal.execute(line);
             }
-
-
-
-
-            terminal.chooseCommandAction(cmd, cmdArgs);
+            terminal.finishJobs();
+        }
+        LISTINGS.close();
+        if(statsFile != null){
+            try{
+                Files.writeString(terminal.currentDir.resolve(statsFile), STATS.toJson() + System.lineSeparator());
+            } catch(IOException e){
+                System.err.println("stats: " + e.getMessage());
+            }
+        }
+        if(batch){
+            System.exit(exitStatus);
         }
-        scanner.close();
     }
 };
@@ -0,0 +1,752 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.regex.PatternSyntaxException;
+
+// Commands that read files or their input as text or bytes: cat, head,
+// tail, wc, grep, sort and uniq.
+final class TextCommands extends Invocation{
+    TextCommands(Terminal terminal){
+        super(terminal);
+    }
+
+    // Not Grep, which is the search engine the command runs.
+    // cat [-n] [file...]: copies files (or stdin, for none or "-") to the
+    // output as raw bytes. Into a file channel the bytes move with
+    // transferTo; anywhere else (a pipe, the console) through one large
+    // buffer. -n numbers lines, continuing across files.
+    void cat(String[] args) {
+        LineNumbers numbers = null;
+        int first = 0;
+        for (; first < args.length && args[first].startsWith("-") && args[first].length() > 1; first++) {
+            if (!args[first].equals("-n")) {
+                error("cat: invalid option '" + args[first] + "'");
+                return;
+            }
+            numbers = new LineNumbers(out);
+        }
+        String[] files = first < args.length ? Arrays.copyOfRange(args, first, args.length) : new String[]{"-"};
+
+        byte[] buffer = null;
+        for (String fileName : files) {
+            try {
+                if (fileName.equals("-")) {
+                    if (numbers == null) {
+                        in.transferTo(out);
+                        continue;
+                    }
+                    buffer = buffer != null ? buffer : new byte[COPY_BUFFER_SIZE];
+                    for (int n; (n = in.read(buffer)) >= 0; ) {
+                        checkCancelled();
+                        numbers.write(buffer, 0, n);
+                    }
+                    continue;
+                }
+                Path path = currentDir.resolve(fileName).toAbsolutePath().normalize();
+                if (Files.isDirectory(path)) {
+                    error(System.err, "cat: " + fileName + ": Is a directory");
+                    continue;
+                }
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    buffer = buffer != null ? buffer : new byte[COPY_BUFFER_SIZE];
+                    send(channel, 0, buffer, numbers);
+                    io.touched(1);
+                }
+            } catch (NoSuchFileException e) {
+                error(System.err, "cat: " + fileName + ": No such file");
+            } catch (IOException e) {
+                if (cancelled("cat")) {
+                    return;
+                }
+                error(System.err, "cat: " + fileName + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Writes channel from position to its end to the output and returns the
+    // end position. Without line numbers and into a ChannelPrintStream the
+    // bytes go through transferTo; the read loop copies the rest (or all of
+    // it, for other outputs), which also covers files that grow while being
+    // read or report size 0, like those in /proc.
+    private long send(FileChannel channel, long position, byte[] buffer, LineNumbers numbers) throws IOException {
+        long start = position;
+        if (numbers == null && out instanceof ChannelPrintStream target) {
+            out.flush();
+            position = transfer(channel, position, target.channel);
+        }
+        ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+        try {
+            for (int n; (n = channel.read(wrapped.clear(), position)) >= 0; position += n) {
+                checkCancelled();
+                if (numbers != null) {
+                    numbers.write(buffer, 0, n);
+                } else {
+                    out.write(buffer, 0, n);
+                }
+            }
+        } finally {
+            io.read(position - start);
+        }
+        return position;
+    }
+
+    // Sends as much of in as transferTo will take to target, a chunk at a
+    // time so a kill is noticed, and returns how far it got.
+    private long transfer(FileChannel in, long position, FileChannel target) throws IOException {
+        long size = in.size();
+        while (position < size) {
+            checkCancelled();
+            long sent = in.transferTo(position, Math.min(CANCEL_CHECK_SIZE, size - position), target);
+            if (sent <= 0) {
+                break;
+            }
+            position += sent;
+        }
+        return position;
+    }
+
+    private static final int TAIL_BLOCK_SIZE = 64 << 10;
+
+    // Options shared by head and tail: -n N (or -N) and, for tail, -f.
+    private static final class LineOptions {
+        long lines = 10;
+        boolean follow;
+        final List<String> files = new ArrayList<>();
+    }
+
+    private LineOptions lineOptions(String command, String[] args, boolean followAllowed) {
+        LineOptions options = new LineOptions();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            String count = null;
+            if (arg.equals("-n") && i + 1 < args.length) {
+                count = args[++i];
+            } else if (arg.startsWith("-n")) {
+                count = arg.substring(2);
+            } else if (arg.equals("-f") && followAllowed) {
+                options.follow = true;
+                continue;
+            } else if (arg.length() > 1 && arg.startsWith("-")) {
+                count = arg.substring(1);
+            } else {
+                options.files.add(arg);
+                continue;
+            }
+            try {
+                options.lines = Long.parseLong(count);
+            } catch (NumberFormatException e) {
+                options.lines = -1;
+            }
+            if (options.lines < 0) {
+                error(command + ": invalid number of lines: '" + count + "'");
+                return null;
+            }
+        }
+        if (options.files.isEmpty()) {
+            options.files.add("-");
+        }
+        return options;
+    }
+
+    // head [-n N] [file...]: the first N lines (10 by default) of each file
+    // or of stdin. Stops reading as soon as N lines have been written.
+    void head(String[] args) {
+        LineOptions options = lineOptions("head", args, false);
+        if (options == null) {
+            return;
+        }
+        byte[] buffer = new byte[TAIL_BLOCK_SIZE];
+        for (int f = 0; f < options.files.size(); f++) {
+            String fileName = options.files.get(f);
+            try (InputStream source = fileName.equals("-") ? null
+                    : Files.newInputStream(currentDir.resolve(fileName))) {
+                printHeader(options.files, f);
+                InputStream input = source != null ? source : in;
+                long remaining = options.lines;
+                int n;
+                while (remaining > 0 && (n = input.read(buffer)) >= 0) {
+                    int end = 0;
+                    while (end < n && remaining > 0) {
+                        if (buffer[end++] == '\n') {
+                            remaining--;
+                        }
+                    }
+                    out.write(buffer, 0, end);
+                    io.read(end);
+                }
+                if (source != null) {
+                    io.touched(1);
+                }
+            } catch (NoSuchFileException e) {
+                error("head: " + fileName + ": No such file");
+            } catch (IOException e) {
+                error("head: " + fileName + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // tail [-n N] [-f] [file...]: the last N lines (10 by default). Files are
+    // read in fixed-size blocks backwards from the end, so the time taken
+    // depends on N, not on the size of the file. -f then follows one file.
+    void tail(String[] args) {
+        LineOptions options = lineOptions("tail", args, true);
+        if (options == null) {
+            return;
+        }
+        if (options.follow && (options.files.size() != 1 || options.files.get(0).equals("-"))) {
+            error("tail: -f needs exactly one file");
+            return;
+        }
+        byte[] buffer = new byte[TAIL_BLOCK_SIZE];
+        for (int f = 0; f < options.files.size(); f++) {
+            String fileName = options.files.get(f);
+            try {
+                printHeader(options.files, f);
+                if (fileName.equals("-")) {
+                    tailStream(options.lines);
+                    continue;
+                }
+                Path path = currentDir.resolve(fileName).toAbsolutePath().normalize();
+                if (options.follow) {
+                    follow(path, options.lines, buffer);
+                    return;
+                }
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    send(channel, tailStart(channel, channel.size(), options.lines), buffer, null);
+                    io.touched(1);
+                }
+            } catch (NoSuchFileException e) {
+                error("tail: " + fileName + ": No such file");
+            } catch (IOException e) {
+                if (cancelled("tail")) {
+                    return;
+                }
+                error("tail: " + fileName + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // With several files, each one's output starts with "==> name <==".
+    private void printHeader(List<String> files, int index) {
+        if (files.size() > 1) {
+            out.print((index > 0 ? "\n" : "") + "==> " + (files.get(index).equals("-") ? "standard input"
+                    : files.get(index)) + " <==\n");
+        }
+    }
+
+    // Returns the offset where the last `lines` lines of the first `size`
+    // bytes of channel begin.
+    private long tailStart(FileChannel channel, long size, long lines) throws IOException {
+        if (lines == 0) {
+            return size;
+        }
+        ByteBuffer block = ByteBuffer.allocate(TAIL_BLOCK_SIZE);
+        long count = 0;
+        for (long end = size; end > 0; ) {
+            long start = Math.max(0, end - TAIL_BLOCK_SIZE);
+            block.clear().limit((int) (end - start));
+            while (block.hasRemaining()) {
+                if (channel.read(block, start + block.position()) < 0) {
+                    return start + block.position();
+                }
+            }
+            io.read(end - start);
+            for (int i = (int) (end - start) - 1; i >= 0; i--) {
+                // A newline at the very end closes the last line instead of starting a new one.
+                if (block.get(i) == '\n' && start + i != size - 1 && ++count == lines) {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+    // tail of stdin, which can't be read backwards: keeps only as many of
+    // the most recent blocks as can still hold the last `lines` lines.
+    private void tailStream(long lines) throws IOException {
+        ArrayDeque<byte[]> blocks = new ArrayDeque<>();
+        ArrayDeque<Integer> newlines = new ArrayDeque<>();
+        long held = 0;
+        byte[] block;
+        while ((block = in.readNBytes(TAIL_BLOCK_SIZE)).length > 0) {
+            int count = 0;
+            for (byte b : block) {
+                if (b == '\n') {
+                    count++;
+                }
+            }
+            blocks.add(block);
+            newlines.add(count);
+            held += count;
+            while (blocks.size() > 1 && held - newlines.peekFirst() > lines) {
+                blocks.removeFirst();
+                held -= newlines.removeFirst();
+            }
+        }
+        ByteArrayOutputStream kept = new ByteArrayOutputStream();
+        for (byte[] b : blocks) {
+            kept.write(b);
+        }
+        byte[] data = kept.toByteArray();
+        int start = data.length;
+        long count = 0;
+        if (lines > 0) {
+            start = 0;
+            for (int i = data.length - 1; i >= 0; i--) {
+                if (data[i] == '\n' && i != data.length - 1 && ++count == lines) {
+                    start = i + 1;
+                    break;
+                }
+            }
+        }
+        out.write(data, start, data.length - start);
+    }
+
+    // tail -f: prints the last lines, then waits for the file's directory to
+    // report a change and prints whatever was appended with positional
+    // reads. Runs until the command is killed (see kill) or interrupted.
+    private void follow(Path path, long lines, byte[] buffer) throws IOException {
+        Path dir = path.getParent();
+        Path name = path.getFileName();
+        try (WatchService watcher = dir.getFileSystem().newWatchService();
+             FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // Registered before the first read so no append can slip in between.
+            dir.register(watcher, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+            long position = send(channel, tailStart(channel, channel.size(), lines), buffer, null);
+            out.flush();
+            while (true) {
+                WatchKey key = watcher.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    changed |= event.kind() == StandardWatchEventKinds.OVERFLOW || name.equals(event.context());
+                }
+                key.reset();
+                if (!changed) {
+                    continue;
+                }
+                if (channel.size() < position) {
+                    error("tail: " + name + ": file truncated");
+                    position = 0;
+                }
+                position = send(channel, position, buffer, null);
+                out.flush();
+            }
+        } catch (InterruptedException | ClosedByInterruptException e) {
+            out.flush();
+            if (!cancelled("tail")) {
+                status = 143;
+            }
+        }
+    }
+
+    private static final int LINE_BUFFER_SIZE = 64 << 10;
+
+    // sort [-rnu] [-k N[,M]] [-t c] [-S size] [-T dir] [file...]: sorts lines
+    // by unsigned bytes. Up to -S bytes of lines (a quarter of the heap by
+    // default) are sorted in memory; larger inputs are sorted in runs that
+    // are spilled to -T (the temp directory) and merged, see ExternalSort.
+    void sort(String[] args) {
+        boolean reverse = false, numeric = false, unique = false;
+        int startField = 0, endField = 0, separator = -1;
+        long budget = Runtime.getRuntime().maxMemory() / 4;
+        Path tempDir = Paths.get(System.getProperty("java.io.tmpdir"));
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-") || !arg.startsWith("-")) {
+                files.add(arg);
+                continue;
+            }
+            char option = arg.charAt(1);
+            if ("ktST".indexOf(option) >= 0) {
+                String value = arg.length() > 2 ? arg.substring(2) : i + 1 < args.length ? args[++i] : null;
+                if (value == null) {
+                    error("sort: option requires an argument -- '" + option + "'");
+                    status = 2;
+                    return;
+                }
+                try {
+                    switch (option) {
+                        case 'k' -> {
+                            int comma = value.indexOf(',');
+                            startField = Integer.parseInt(comma < 0 ? value : value.substring(0, comma));
+                            endField = comma < 0 ? 0 : Integer.parseInt(value.substring(comma + 1));
+                            if (startField < 1 || (comma >= 0 && endField < startField)) {
+                                throw new NumberFormatException();
+                            }
+                        }
+                        case 't' -> {
+                            if (value.length() != 1) {
+                                throw new NumberFormatException();
+                            }
+                            separator = value.charAt(0);
+                        }
+                        case 'S' -> budget = sortBudget(value);
+                        default -> tempDir = currentDir.resolve(value);
+                    }
+                } catch (NumberFormatException e) {
+                    error("sort: invalid argument '" + value + "' to -" + option);
+                    status = 2;
+                    return;
+                }
+                continue;
+            }
+            for (char flag : arg.substring(1).toCharArray()) {
+                switch (flag) {
+                    case 'r': reverse = true; break;
+                    case 'n': numeric = true; break;
+                    case 'u': unique = true; break;
+                    default:
+                        error("sort: invalid option -- '" + flag + "'");
+                        status = 2;
+                        return;
+                }
+            }
+        }
+        if (files.isEmpty()) {
+            files.add("-");
+        }
+        List<LineReader> inputs = new ArrayList<>();
+        try {
+            for (String fileName : files) {
+                try {
+                    inputs.add(new LineReader(fileName.equals("-") ? in
+                            : Files.newInputStream(currentDir.resolve(fileName)), LINE_BUFFER_SIZE));
+                } catch (NoSuchFileException e) {
+                    error("sort: " + fileName + ": No such file");
+                    status = 2;
+                    return;
+                }
+            }
+            ExternalSort sort = new ExternalSort(ExternalSort.comparator(numeric, reverse, startField, endField,
+                    separator, unique), unique, budget, tempDir, cancelled::get);
+            OutputStream output = new BufferedOutputStream(out, LINE_BUFFER_SIZE);
+            sort.sort(inputs, output);
+            output.flush();
+            io.wrote(sort.bytesWritten);
+        } catch (IOException e) {
+            if (!cancelled("sort")) {
+                error("sort: " + e.getMessage());
+                status = 2;
+            }
+        } finally {
+            for (int f = 0; f < inputs.size(); f++) {
+                io.read(inputs.get(f).bytesRead);
+                if (files.get(f).equals("-")) {
+                    continue;
+                }
+                io.touched(1);
+                try {
+                    inputs.get(f).close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    // -S size: bytes with a b, K, M, G or T suffix, KiB without one (as in
+    // GNU sort), or a percentage of the maximum heap.
+    private static long sortBudget(String value) {
+        char unit = value.charAt(value.length() - 1);
+        String number = Character.isDigit(unit) ? value : value.substring(0, value.length() - 1);
+        long amount = Long.parseLong(number);
+        long budget = switch (Character.isDigit(unit) ? 'K' : unit) {
+            case 'b' -> amount;
+            case 'K', 'k' -> amount << 10;
+            case 'M', 'm' -> amount << 20;
+            case 'G', 'g' -> amount << 30;
+            case 'T', 't' -> amount << 40;
+            case '%' -> Runtime.getRuntime().maxMemory() / 100 * amount;
+            default -> throw new NumberFormatException();
+        };
+        if (budget <= 0) {
+            throw new NumberFormatException();
+        }
+        return budget;
+    }
+
+    // uniq [-c] [-d] [-u] [file]: drops adjacent repeated lines. -c prefixes
+    // each line with its count, -d prints only repeated lines and -u only
+    // lines that are not repeated. Only the current run is kept in memory.
+    void uniq(String[] args) {
+        boolean count = false, repeated = false, single = false;
+        String fileName = "-";
+        for (String arg : args) {
+            if (arg.equals("-") || !arg.startsWith("-")) {
+                fileName = arg;
+                continue;
+            }
+            for (char flag : arg.substring(1).toCharArray()) {
+                switch (flag) {
+                    case 'c': count = true; break;
+                    case 'd': repeated = true; break;
+                    case 'u': single = true; break;
+                    default:
+                        error("uniq: invalid option -- '" + flag + "'");
+                        status = 2;
+                        return;
+                }
+            }
+        }
+        boolean stdin = fileName.equals("-");
+        LineReader reader = null;
+        try {
+            reader = new LineReader(stdin ? in : Files.newInputStream(currentDir.resolve(fileName)), LINE_BUFFER_SIZE);
+            OutputStream output = new BufferedOutputStream(out, LINE_BUFFER_SIZE);
+            byte[] previous = reader.readLine();
+            long run = 1, written = 0, lines = 0;
+            while (previous != null) {
+                byte[] line = reader.readLine();
+                if (line != null && Arrays.equals(previous, line)) {
+                    run++;
+                    continue;
+                }
+                if ((++lines & 0xfff) == 0) {
+                    checkCancelled();
+                }
+                if (repeated ? run > 1 : !single || run == 1) {
+                    if (count) {
+                        byte[] prefix = String.format("%7d ", run).getBytes(StandardCharsets.US_ASCII);
+                        output.write(prefix);
+                        written += prefix.length;
+                    }
+                    output.write(previous);
+                    output.write('\n');
+                    written += previous.length + 1;
+                }
+                previous = line;
+                run = 1;
+            }
+            output.flush();
+            io.wrote(written);
+        } catch (NoSuchFileException e) {
+            error("uniq: " + fileName + ": No such file");
+        } catch (IOException e) {
+            if (!cancelled("uniq")) {
+                error("uniq: " + fileName + ": " + e.getMessage());
+            }
+        } finally {
+            if (reader != null) {
+                io.read(reader.bytesRead);
+                if (!stdin) {
+                    io.touched(1);
+                    try {
+                        reader.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        }
+    }
+
+    void wc(String[] args) {
+        if (args.length == 0) {
+            try {
+                WordCount counts = WordCount.count(in);
+                out.println(counts.lines + " " + counts.words + " " + counts.bytes);
+            } catch (IOException e) {
+                error(System.err, "wc: " + e.getMessage());
+            }
+            return;
+        }
+        if (args.length != 1) {
+            error("Usage: wc <filename>");
+            return;
+        }
+        Path path = Paths.get(args[0]);
+        if (!path.isAbsolute()) {
+            path = currentDir.resolve(path);
+        }
+        path = path.toAbsolutePath().normalize();
+        if (!Files.exists(path)) {
+            error(System.err, "wc: " + args[0] + ": No such file");
+            return;
+        }
+        try {
+            WordCount counts = WordCount.count(path);
+            io.read(counts.bytes);
+            io.touched(1);
+            out.println(counts.lines + " " + counts.words + " " + counts.bytes + " " + path.getFileName());
+        } catch (IOException | UncheckedIOException e) {
+            error(System.err, "wc: " + args[0] + ": " + e.getMessage());
+        }
+    }
+
+    // grep [-i] [-n] [-c] [-r] [-F] pattern [file ...]
+    void grep(String[] args) {
+        boolean ignoreCase = false, lineNumbers = false, countOnly = false, recursive = false, fixed = false;
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("-") && args[i].length() > 1; i++) {
+            for (char flag : args[i].substring(1).toCharArray()) {
+                switch (flag) {
+                    case 'i': ignoreCase = true; break;
+                    case 'n': lineNumbers = true; break;
+                    case 'c': countOnly = true; break;
+                    case 'r': recursive = true; break;
+                    case 'F': fixed = true; break;
+                    default:
+                        error("grep: invalid option -- '" + flag + "'");
+                        status = 2;
+                        return;
+                }
+            }
+        }
+        if (i >= args.length) {
+            error("Usage: grep [-i] [-n] [-c] [-r] [-F] pattern [file ...]");
+            status = 2;
+            return;
+        }
+        Grep grep;
+        try {
+            grep = new Grep(args[i], ignoreCase, fixed, lineNumbers, countOnly);
+        } catch (PatternSyntaxException e) {
+            error("grep: " + e.getDescription());
+            status = 2;
+            return;
+        }
+        String[] operands = Arrays.copyOfRange(args, i + 1, args.length);
+        if (operands.length == 0 && !recursive) {
+            status = grepStream(grep) ? 0 : 1;
+            return;
+        }
+        if (operands.length == 0) {
+            operands = new String[]{"."};
+        }
+
+        List<Path> files = new ArrayList<>();
+        boolean failed = false;
+        for (String operand : operands) {
+            Path path = currentDir.resolve(operand).normalize();
+            if (Files.isDirectory(path)) {
+                if (!recursive) {
+                    error("grep: " + operand + ": Is a directory");
+                    failed = true;
+                    continue;
+                }
+                Queue<Path> found = new ConcurrentLinkedQueue<>();
+                AtomicBoolean unreadable = new AtomicBoolean();
+                try {
+                    new TreeWalker(new TreeWalker.Visitor() {
+                        @Override
+                        public long visitFile(Path file, BasicFileAttributes attrs) {
+                            if (attrs.isRegularFile() || (attrs.isSymbolicLink() && Files.isRegularFile(file))) {
+                                found.add(file);
+                            }
+                            return 0;
+                        }
+
+                        @Override
+                        public void failed(Path failedPath, IOException e) {
+                            error("grep: " + displayName(failedPath) + ": " + e.getMessage());
+                            unreadable.set(true);
+                        }
+                    }, null, false, cancelled::get).walk(path);
+                } catch (IOException e) {
+                    error("grep: " + operand + ": " + e.getMessage());
+                    unreadable.set(true);
+                }
+                failed |= unreadable.get();
+                found.stream().sorted().forEach(files::add);
+            } else if (Files.exists(path)) {
+                files.add(path);
+            } else {
+                error("grep: " + operand + ": No such file or directory");
+                failed = true;
+            }
+        }
+        boolean named = recursive || files.size() > 1;
+        boolean[] matched = {false};
+        boolean[] unreadable = {false};
+        Consumer<GrepResult> print = result -> {
+            out.write(result.output.toByteArray(), 0, result.output.size());
+            if (result.error != null) {
+                error("grep: " + result.error);
+                unreadable[0] = true;
+            }
+            matched[0] |= result.matched;
+        };
+        try {
+            if (files.size() == 1) {
+                print.accept(grepFile(grep, files.get(0), named));
+            } else {
+                runInOrder(files, file -> grepFile(grep, file, named), print);
+            }
+        } catch (IOException e) {
+            error("grep: " + e.getMessage());
+            failed = true;
+        }
+        // Like GNU grep: any file that could not be read makes it 2, even
+        // when other files matched.
+        status = failed || unreadable[0] ? 2 : matched[0] ? 0 : 1;
+    }
+
+    private boolean grepStream(Grep grep) {
+        long matches = 0, line = 0;
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String text;
+            while ((text = reader.readLine()) != null) {
+                line++;
+                if (grep.matches(text)) {
+                    matches++;
+                    if (!grep.countOnly) {
+                        out.println(grep.lineNumbers ? line + ":" + text : text);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            error("grep: " + e.getMessage());
+        }
+        if (grep.countOnly) {
+            out.println(matches);
+        }
+        return matches > 0;
+    }
+
+    // What searching one file printed, whether it matched and the read
+    // error it ran into, if any, so files searched on workers can be
+    // reported in order.
+    private static final class GrepResult {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        boolean matched;
+        String error;
+    }
+
+    private GrepResult grepFile(Grep grep, Path file, boolean named) {
+        GrepResult result = new GrepResult();
+        try {
+            result.matched = grep.search(file, displayName(file), named, result.output, io) > 0;
+        } catch (IOException e) {
+            result.error = displayName(file) + ": " + e.getMessage();
+        }
+        return result;
+    }
+};
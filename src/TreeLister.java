@@ -0,0 +1,123 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+// Lists a directory tree for ls -R in depth-first order, one directory at a
+// time, so the caller can print each listing and drop it before the next.
+// Only paths wait on the stack; the next few directories in print order are
+// read ahead on the tree walker's pool, and at most LOOKAHEAD listings are
+// held at once however large the tree is.
+class TreeLister{
+    static final int LOOKAHEAD = 32;
+
+    static final class Listing{
+        final Path dir;
+        final DirectoryCache.Entry[] entries;
+        final IOException error;
+
+        Listing(Path dir, DirectoryCache.Entry[] entries, IOException error){
+            this.dir = dir;
+            this.entries = entries;
+            this.error = error;
+        }
+    }
+
+    private static final class Pending{
+        final Path dir;
+        Future<DirectoryCache.Entry[]> listing;
+
+        Pending(Path dir){
+            this.dir = dir;
+        }
+    }
+
+    private final boolean all;
+    private final Deque<Pending> stack = new ArrayDeque<>();
+    private int ahead;
+
+    TreeLister(Path root, boolean all){
+        this.all = all;
+        stack.push(new Pending(root));
+    }
+
+    // The next directory in depth-first order, or null once the tree is done.
+    Listing next() throws InterruptedIOException{
+        Pending next = stack.poll();
+        if(next == null){
+            return null;
+        }
+        DirectoryCache.Entry[] entries;
+        try{
+            entries = read(next);
+        } catch(InterruptedIOException e){
+            throw e;
+        } catch(IOException e){
+            return new Listing(next.dir, null, e);
+        }
+        Deque<Pending> children = new ArrayDeque<>();
+        for(DirectoryCache.Entry entry : entries){
+            if(entry.directory && !entry.symbolicLink && (all || !entry.name.startsWith("."))){
+                children.push(new Pending(next.dir.resolve(entry.name)));
+            }
+        }
+        while(!children.isEmpty()){
+            stack.push(children.pop());
+        }
+        // The top of the stack is printed next, so that is what to read ahead.
+        for(Pending pending : stack){
+            if(ahead >= LOOKAHEAD){
+                break;
+            }
+            if(pending.listing == null){
+                pending.listing = CompletableFuture.supplyAsync(() -> scan(pending.dir), TreeWalker.POOL);
+                ahead++;
+            }
+        }
+        return new Listing(next.dir, entries, null);
+    }
+
+    // Abandons the walk; listings already being read are let finish.
+    void cancel(){
+        for(Pending pending : stack){
+            if(pending.listing != null){
+                pending.listing.cancel(false);
+            }
+        }
+        stack.clear();
+        ahead = 0;
+    }
+
+    private DirectoryCache.Entry[] read(Pending pending) throws IOException{
+        if(pending.listing == null){
+            return DirectoryCache.scan(pending.dir);
+        }
+        ahead--;
+        try{
+            return pending.listing.get();
+        } catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while listing " + pending.dir);
+        } catch(ExecutionException e){
+            Throwable cause = e.getCause() instanceof CompletionException ? e.getCause().getCause() : e.getCause();
+            if(cause instanceof UncheckedIOException unchecked){
+                throw unchecked.getCause();
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static DirectoryCache.Entry[] scan(Path dir){
+        try{
+            return DirectoryCache.scan(dir);
+        } catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+};
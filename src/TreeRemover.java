@@ -0,0 +1,77 @@
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+// rm -r on top of TreeWalker: files are deleted as they are visited, and a
+// directory once its subtree had no failures (the walk sums failures, so a
+// failure keeps only its own ancestors). Symbolic links are removed, never
+// followed. Problems are reported and counted without stopping the walk,
+// once each: an ancestor kept for a failure below it is not reported again.
+class TreeRemover implements TreeWalker.Visitor{
+    // Counters shared by every tree of one rm run, read by the progress report.
+    final LongAdder files = new LongAdder();
+    final LongAdder directories = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    private final Consumer<String> report;
+
+    TreeRemover(Consumer<String> report){
+        this.report = report;
+    }
+
+    @Override
+    public long visitFile(Path file, BasicFileAttributes attrs){
+        return delete(file, files);
+    }
+
+    @Override
+    public long exitDirectory(Path dir, BasicFileAttributes attrs, long failures){
+        return failures > 0 ? failures : delete(dir, directories);
+    }
+
+    @Override
+    public void failed(Path path, IOException e){
+        errors.increment();
+        report.accept("rm: cannot remove '" + path + "': " + reason(e));
+    }
+
+    @Override
+    public long failure(){
+        return 1;
+    }
+
+    private long delete(Path path, LongAdder counter){
+        try{
+            Files.delete(path);
+            counter.increment();
+            return 0;
+        } catch(NoSuchFileException e){
+            return 0;
+        } catch(IOException e){
+            failed(path, e);
+            return 1;
+        }
+    }
+
+    static String reason(IOException e){
+        if(e instanceof AccessDeniedException){
+            return "Permission denied";
+        }
+        if(e instanceof DirectoryNotEmptyException){
+            return "Directory not empty";
+        }
+        if(e instanceof NoSuchFileException){
+            return "No such file or directory";
+        }
+        if(e instanceof FileSystemException f && f.getReason() != null){
+            return f.getReason();
+        }
+        return e.getMessage();
+    }
+};
@@ -0,0 +1,179 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BooleanSupplier;
+
+// Parallel directory walker shared by find, du, dupes, cp -r, zip -r and
+// rm -r. Each directory is a ForkJoin task and its entries are split into
+// batches that are stat'ed and visited as tasks of their own, so work
+// stealing spreads both deep and wide trees over all cores. The visitor is
+// called from many threads at once.
+//
+// visitFile returns a number that is summed up the tree: exitDirectory gets
+// the total of its subtree (file bytes for du, failures for rm) and returns
+// what the directory passes on to its parent.
+class TreeWalker{
+    static final ForkJoinPool POOL = new ForkJoinPool(Math.max(8, 2 * Runtime.getRuntime().availableProcessors()));
+    private static final int BATCH = 256;
+
+    interface Visitor{
+        // Called before a directory's entries; false skips the directory.
+        default boolean enterDirectory(Path dir, BasicFileAttributes attrs) throws IOException{
+            return true;
+        }
+
+        long visitFile(Path file, BasicFileAttributes attrs) throws IOException;
+
+        default long exitDirectory(Path dir, BasicFileAttributes attrs, long total) throws IOException{
+            return total;
+        }
+
+        default void failed(Path path, IOException e){
+        }
+
+        // What an entry that failed passes up the tree in place of its total.
+        default long failure(){
+            return 0;
+        }
+    }
+
+    private final Visitor visitor;
+    private final AttributeCache cache;
+    private final boolean followLinks;
+    private final BooleanSupplier cancelled;
+
+    // cache may be null, in which case every entry is stat'ed on the spot.
+    TreeWalker(Visitor visitor, AttributeCache cache, boolean followLinks, BooleanSupplier cancelled){
+        this.visitor = visitor;
+        this.cache = cache;
+        this.followLinks = followLinks;
+        this.cancelled = cancelled;
+    }
+
+    // Walks root (a file or a directory) and returns what it passes up.
+    // Errors inside the tree go to the visitor; only an unreadable root is
+    // thrown.
+    long walk(Path root) throws IOException{
+        BasicFileAttributes attrs = attributes(root);
+        if(!attrs.isDirectory()){
+            return visitor.visitFile(root, attrs);
+        }
+        return POOL.invoke(new DirectoryTask(root, attrs, null));
+    }
+
+    private BasicFileAttributes attributes(Path path) throws IOException{
+        if(followLinks){
+            try{
+                return cache != null ? cache.read(path) : Files.readAttributes(path, BasicFileAttributes.class);
+            } catch(NoSuchFileException e){
+                // A dangling link: report the link itself.
+            }
+        }
+        return cache != null ? cache.read(path, LinkOption.NOFOLLOW_LINKS)
+                : Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+    }
+
+    @SuppressWarnings("serial") // fork/join tasks are never serialized
+    private class DirectoryTask extends RecursiveTask<Long>{
+        final Path dir;
+        final BasicFileAttributes attrs;
+        final DirectoryTask parent;
+
+        DirectoryTask(Path dir, BasicFileAttributes attrs, DirectoryTask parent){
+            this.dir = dir;
+            this.attrs = attrs;
+            this.parent = parent;
+        }
+
+        @Override
+        protected Long compute(){
+            if(cancelled.getAsBoolean()){
+                return 0L;
+            }
+            // Following links can lead back to an ancestor.
+            Object key = attrs.fileKey();
+            for(DirectoryTask ancestor = parent; followLinks && key != null && ancestor != null; ancestor = ancestor.parent){
+                if(key.equals(ancestor.attrs.fileKey())){
+                    visitor.failed(dir, new FileSystemLoopException(dir.toString()));
+                    return visitor.failure();
+                }
+            }
+            List<Path> children = new ArrayList<>();
+            try{
+                if(!visitor.enterDirectory(dir, attrs)){
+                    return 0L;
+                }
+                try(DirectoryStream<Path> stream = Files.newDirectoryStream(dir)){
+                    for(Path child : stream){
+                        children.add(child);
+                    }
+                }
+            } catch(IOException e){
+                visitor.failed(dir, e);
+                return visitor.failure();
+            }
+            long total;
+            if(children.size() <= BATCH){
+                total = visit(children);
+            } else{
+                List<RecursiveTask<Long>> batches = new ArrayList<>();
+                for(int i = 0; i < children.size(); i += BATCH){
+                    List<Path> batch = children.subList(i, Math.min(children.size(), i + BATCH));
+                    batches.add(new RecursiveTask<>(){
+                        @Override
+                        protected Long compute(){
+                            return visit(batch);
+                        }
+                    });
+                }
+                total = 0;
+                for(RecursiveTask<Long> batch : invokeAll(batches)){
+                    total += batch.join();
+                }
+            }
+            try{
+                return visitor.exitDirectory(dir, attrs, total);
+            } catch(IOException e){
+                visitor.failed(dir, e);
+                return total;
+            }
+        }
+
+        // Stats and visits one batch of entries; subdirectories become tasks.
+        private long visit(List<Path> entries){
+            List<DirectoryTask> subdirectories = new ArrayList<>();
+            long total = 0;
+            for(Path entry : entries){
+                if(cancelled.getAsBoolean()){
+                    break;
+                }
+                try{
+                    BasicFileAttributes entryAttrs = attributes(entry);
+                    if(entryAttrs.isDirectory()){
+                        DirectoryTask task = new DirectoryTask(entry, entryAttrs, this);
+                        task.fork();
+                        subdirectories.add(task);
+                    } else{
+                        total += visitor.visitFile(entry, entryAttrs);
+                    }
+                } catch(IOException e){
+                    visitor.failed(entry, e);
+                    total += visitor.failure();
+                }
+            }
+            for(DirectoryTask task : subdirectories){
+                total += task.join();
+            }
+            return total;
+        }
+    }
+};
@@ -0,0 +1,130 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Counts lines, words and bytes of a file by scanning memory-mapped chunks in
+// parallel. Each chunk remembers whether it starts and ends inside a word so a
+// word split across a chunk edge is only counted once when results are merged.
+class WordCount{
+    static final int CHUNK_SIZE = 16 << 20;
+    private static final boolean[] WHITESPACE = new boolean[256];
+    static{
+        for(char c : new char[]{' ', '\t', '\n', '\r', '\f', 0x0B}){
+            WHITESPACE[c] = true;
+        }
+    }
+
+    long lines, words, bytes;
+    boolean startsInWord, endsInWord, endsWithNewline;
+
+    static WordCount count(Path path) throws IOException{
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            WordCount counts = ForkJoinPool.commonPool().invoke(new Task(channel, 0, channel.size()));
+            if(counts.bytes > 0 && !counts.endsWithNewline){
+                counts.lines++;
+            }
+            return counts;
+        }
+    }
+
+    static WordCount count(InputStream in) throws IOException{
+        WordCount counts = new WordCount();
+        byte[] chunk = new byte[64 << 10];
+        int read;
+        while((read = in.read(chunk)) != -1){
+            counts.scan(ByteBuffer.wrap(chunk, 0, read).slice());
+        }
+        if(counts.bytes > 0 && !counts.endsWithNewline){
+            counts.lines++;
+        }
+        return counts;
+    }
+
+    void scan(ByteBuffer buffer){
+        int limit = buffer.limit();
+        if(limit == 0){
+            return;
+        }
+        boolean inWord = bytes > 0 && endsInWord;
+        if(bytes == 0){
+            startsInWord = !WHITESPACE[buffer.get(0) & 0xFF];
+        }
+        long lineCount = 0, wordCount = 0;
+        for(int i = buffer.position(); i < limit; i++){
+            int b = buffer.get(i) & 0xFF;
+            if(b == '\n'){
+                lineCount++;
+            }
+            if(WHITESPACE[b]){
+                inWord = false;
+            } else if(!inWord){
+                inWord = true;
+                wordCount++;
+            }
+        }
+        lines += lineCount;
+        words += wordCount;
+        bytes += limit - buffer.position();
+        endsInWord = inWord;
+        endsWithNewline = buffer.get(limit - 1) == '\n';
+    }
+
+    WordCount merge(WordCount next){
+        if(next.bytes == 0){
+            return this;
+        }
+        if(bytes == 0){
+            return next;
+        }
+        WordCount merged = new WordCount();
+        merged.lines = lines + next.lines;
+        merged.words = words + next.words - (endsInWord && next.startsInWord ? 1 : 0);
+        merged.bytes = bytes + next.bytes;
+        merged.startsInWord = startsInWord;
+        merged.endsInWord = next.endsInWord;
+        merged.endsWithNewline = next.endsWithNewline;
+        return merged;
+    }
+
+    @SuppressWarnings("serial") // fork/join tasks are never serialized
+    private static class Task extends RecursiveTask<WordCount>{
+        private final FileChannel channel;
+        private final long position, length;
+
+        Task(FileChannel channel, long position, long length){
+            this.channel = channel;
+            this.position = position;
+            this.length = length;
+        }
+
+        @Override
+        protected WordCount compute(){
+            if(length <= CHUNK_SIZE){
+                WordCount counts = new WordCount();
+                if(length > 0){
+                    try{
+                        MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                        counts.scan(chunk);
+                    } catch(IOException e){
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return counts;
+            }
+            // A chunk boundary strictly inside the range, so both halves shrink.
+            long half = Math.max(CHUNK_SIZE, length / 2 / CHUNK_SIZE * CHUNK_SIZE);
+            Task left = new Task(channel, position, half);
+            Task right = new Task(channel, position + half, length - half);
+            right.fork();
+            WordCount counts = left.compute();
+            return counts.merge(right.join());
+        }
+    }
+};
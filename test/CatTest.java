@@ -0,0 +1,70 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CatTest {
+    @TempDir
+    Path dir;
+
+    // Into a redirect the files go through transferTo, into a pipe through
+    // the copy buffer; both must give the same bytes.
+    @Test
+    void concatenatesBinaryFiles() throws IOException {
+        byte[] first = TestFiles.random(21, 1_500_000);
+        byte[] second = TestFiles.random(22, 12345);
+        Files.write(dir.resolve("a.bin"), first);
+        Files.write(dir.resolve("b.bin"), second);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(first);
+        expected.write(second);
+        expected.write(first);
+        TestShell shell = new TestShell(dir);
+        shell.ok("cat a.bin b.bin a.bin > direct.bin");
+        shell.ok("cat a.bin b.bin a.bin | cat > piped.bin");
+        assertArrayEquals(expected.toByteArray(), Files.readAllBytes(dir.resolve("direct.bin")));
+        assertArrayEquals(expected.toByteArray(), Files.readAllBytes(dir.resolve("piped.bin")));
+    }
+
+    @Test
+    void numbersContinueAcrossFilesAndStdin() throws IOException {
+        Files.writeString(dir.resolve("a"), "one\ntwo");
+        Files.writeString(dir.resolve("b"), "\nthree\n");
+        TestShell shell = new TestShell(dir, new ByteArrayInputStream("four\n".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals("     1\tone\n     2\ttwo\n     3\tthree\n     4\tfour\n", shell.ok("cat -n a b -"));
+    }
+
+    // The numbering must not depend on where the writes split the lines.
+    @Test
+    void lineNumbersAreTheSameForAnySplit() throws IOException {
+        byte[] text = "a\n\nbb\nccc\n".repeat(400_000).getBytes(StandardCharsets.US_ASCII);
+        ByteArrayOutputStream whole = new ByteArrayOutputStream();
+        new LineNumbers(whole).write(text, 0, text.length);
+        for (int piece : new int[]{1, 2, 3, 4096}) {
+            ByteArrayOutputStream split = new ByteArrayOutputStream();
+            LineNumbers numbers = new LineNumbers(split);
+            for (int i = 0; i < text.length; i += piece) {
+                numbers.write(text, i, Math.min(piece, text.length - i));
+            }
+            assertArrayEquals(whole.toByteArray(), split.toByteArray(), "pieces of " + piece);
+        }
+        String numbered = whole.toString(StandardCharsets.US_ASCII);
+        assertEquals("1600000\tccc\n", numbered.substring(numbered.length() - 12));
+    }
+
+    @Test
+    void missingFileFailsButTheRestIsPrinted() throws IOException {
+        Files.writeString(dir.resolve("a"), "x\n");
+        TestShell shell = new TestShell(dir);
+        assertEquals(1, shell.run("cat missing a"));
+        assertEquals("x\n", shell.output());
+    }
+}
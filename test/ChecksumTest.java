@@ -0,0 +1,78 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class ChecksumTest {
+    @TempDir
+    Path dir;
+
+    // Published check values: CRC-32C of "123456789", xxHash64 (seed 0)
+    // from the reference implementation, SHA-256 from FIPS 180-2.
+    @ParameterizedTest
+    @CsvSource({
+            "crc32c, 123456789, e3069283",
+            "crc32c, '', 00000000",
+            "xxh64, '', ef46db3751d8e999",
+            "xxh64, a, d24ec4f1a98c6e5b",
+            "xxh64, abc, 44bc2cf5ad770999",
+            "xxh64, Nobody inspects the spammish repetition, fbcea83c8a378bf1",
+            "sha256, abc, ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+    })
+    void knownVectors(String algorithm, String input, String expected) {
+        FileHash hash = FileHash.create(algorithm);
+        hash.update(ByteBuffer.wrap(input.getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(expected, FileHash.hex(hash.digest()));
+    }
+
+    // The same bytes fed in pieces that cut xxh64's 32-byte stripes anywhere.
+    @Test
+    void xxh64IsTheSameInAnyPieces() {
+        byte[] data = TestFiles.random(7, 1000);
+        FileHash whole = FileHash.create("xxh64");
+        whole.update(ByteBuffer.wrap(data));
+        String expected = FileHash.hex(whole.digest());
+        for (int piece : new int[]{1, 3, 31, 32, 33, 100}) {
+            FileHash hash = FileHash.create("xxh64");
+            for (int i = 0; i < data.length; i += piece) {
+                hash.update(ByteBuffer.wrap(data, i, Math.min(piece, data.length - i)));
+            }
+            assertEquals(expected, FileHash.hex(hash.digest()), "pieces of " + piece);
+        }
+    }
+
+    @Test
+    void sumPrintsErrorsInArgumentOrder() throws IOException {
+        Files.writeString(dir.resolve("a"), "123456789");
+        Files.writeString(dir.resolve("c"), "");
+        TestShell shell = new TestShell(dir);
+        assertEquals(1, shell.run("sum -a crc32c a missing c"));
+        assertEquals("e3069283  a\nsum: missing: No such file\n00000000  c\n", shell.output());
+    }
+
+    @Test
+    void verifiedCopyPrintsSortedSumsThatCheck() throws IOException {
+        TestFiles.binaryTree(dir.resolve("data"));
+        TestShell shell = new TestShell(dir);
+        shell.ok("cp -r --verify=xxh64 data copy > copy.xxh64");
+        List<String> names = Files.readAllLines(dir.resolve("copy.xxh64")).stream()
+                .map(line -> line.substring(line.indexOf("  ") + 2))
+                .toList();
+        String[] sorted = TestFiles.files(dir.resolve("data")).stream()
+                .map(file -> dir.relativize(dir.resolve("copy").resolve(file)).toString())
+                .sorted()
+                .toArray(String[]::new);
+        assertEquals(Arrays.asList(sorted), names);
+        assertEquals(6, shell.ok("sum -c copy.xxh64").lines().filter(line -> line.endsWith(": OK")).count());
+    }
+}
@@ -0,0 +1,94 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CommandTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void registryCreatesEachBuiltinOnceOnFirstUse() {
+        AtomicInteger created = new AtomicInteger();
+        CommandRegistry registry = new CommandRegistry(name -> {
+            created.incrementAndGet();
+            return name.equals("echo") ? Command.of("echo", ShellCommands::new, ShellCommands::echo) : null;
+        });
+        assertEquals(0, created.get());
+        Command echo = registry.find("echo");
+        assertEquals("echo", echo.name());
+        assertSame(echo, registry.find("echo"));
+        assertEquals(1, created.get());
+        assertNull(registry.find("no-such-command"));
+    }
+
+    // Listed in META-INF/services/Command under test/, like a plugin jar would.
+    public static final class Shout implements Command {
+        public Shout() {
+        }
+
+        @Override
+        public String name() {
+            return "shout";
+        }
+
+        @Override
+        public int run(Terminal terminal, String[] args) {
+            terminal.out().println(String.join(" ", args).toUpperCase());
+            return args.length == 0 ? 1 : 0;
+        }
+    }
+
+    @Test
+    void pluginsAreFoundOnTheClassPath() {
+        CommandRegistry registry = new CommandRegistry(name -> null);
+        assertSame(Shout.class, registry.find("shout").getClass());
+        assertSame(registry.find("shout"), registry.find("shout"));
+        TestShell shell = new TestShell(dir);
+        assertEquals("HELLO THERE\n", shell.ok("echo x | shout hello there"));
+        assertEquals(1, shell.run("shout"));
+    }
+
+    @Test
+    void commandReturnsItsOwnStatus() {
+        Terminal terminal = new Terminal(dir, InputStream.nullInputStream(), new PrintStream(new ByteArrayOutputStream()));
+        assertEquals(1, Command.of("rm", FileCommands::new, FileCommands::rm).run(terminal, new String[]{"missing"}));
+        assertEquals(0, Command.of("echo", ShellCommands::new, ShellCommands::echo).run(terminal, new String[]{"hi"}));
+        assertEquals(0, terminal.getStatus(), "running a Command directly leaves the terminal's status alone");
+    }
+
+    @Test
+    void commandWritesToTheTerminalItRunsIn() {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Terminal terminal = new Terminal(dir, InputStream.nullInputStream(), new PrintStream(output, true, StandardCharsets.UTF_8));
+        Command.of("echo", ShellCommands::new, ShellCommands::echo).run(terminal, new String[]{"a", "b"});
+        assertEquals("a b" + System.lineSeparator(), output.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void failingStageDoesNotLeakItsStatusIntoOthers() throws IOException {
+        Files.writeString(dir.resolve("t.txt"), "x\n");
+        TestShell shell = new TestShell(dir);
+        assertEquals(0, shell.run("cat missing | cat t.txt"));
+        assertEquals(1, shell.run("cat t.txt | cat missing"));
+    }
+
+    @Test
+    void cdChangesTheTerminalsDirectory() throws IOException {
+        Files.createDirectory(dir.resolve("sub"));
+        TestShell shell = new TestShell(dir);
+        shell.ok("cd sub");
+        assertEquals(dir.resolve("sub").toAbsolutePath().normalize() + System.lineSeparator(), shell.ok("pwd"));
+    }
+}
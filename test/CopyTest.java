@@ -0,0 +1,125 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CopyTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void recursiveCopyRestoresBinaryFiles() throws IOException {
+        TestFiles.binaryTree(dir.resolve("data"));
+        TestShell shell = new TestShell(dir);
+        shell.ok("cp -r data copy");
+        TestFiles.assertSameTree(dir.resolve("data"), dir.resolve("copy"));
+    }
+
+    // Files of 64 MiB or more are copied in ranges by several workers; this
+    // one ends in a short range.
+    @Test
+    void largeFilesAreCopiedInRanges() throws IOException {
+        Path data = TestFiles.binaryTree(dir.resolve("data"));
+        Files.write(data.resolve("nested/large.bin"), TestFiles.random(11, (64 << 20) + 12345));
+        TestShell shell = new TestShell(dir);
+        shell.ok("cp -r data copy");
+        TestFiles.assertSameTree(data, dir.resolve("copy"));
+        shell.ok("cp data/nested/large.bin large.bin");
+        assertArrayEquals(Files.readAllBytes(data.resolve("nested/large.bin")), Files.readAllBytes(dir.resolve("large.bin")));
+    }
+
+    @Test
+    void fileCopiedIntoADirectoryKeepsItsName() throws IOException {
+        Files.writeString(dir.resolve("a.txt"), "one\n");
+        Files.createDirectories(dir.resolve("sub"));
+        TestShell shell = new TestShell(dir);
+        shell.ok("cp a.txt sub");
+        assertEquals("one\n", Files.readString(dir.resolve("sub/a.txt")));
+        Files.writeString(dir.resolve("b.txt"), "a much longer file than the one it replaces\n");
+        shell.ok("cp a.txt b.txt");
+        assertEquals("one\n", Files.readString(dir.resolve("b.txt")));
+        assertEquals(1, shell.run("cp missing x"));
+    }
+
+    @TempDir
+    Path state;
+
+    @Test
+    void syncCopiesOnlyChangedFilesAndLeavesNothingElseInTheTree() throws IOException {
+        TestFiles.binaryTree(dir.resolve("data"));
+        TestShell shell = new TestShell(dir).withStateIn(state);
+        assertTrue(shell.ok("cp -r -u data copy").contains("6 copied, 0 unchanged"));
+        TestFiles.assertSameTree(dir.resolve("data"), dir.resolve("copy"));
+
+        // Same bytes under a new mtime are checked, not copied.
+        Files.setLastModifiedTime(dir.resolve("data/random.bin"), FileTime.fromMillis(1_000_000_000_000L));
+        Files.writeString(dir.resolve("data/nested/text.txt"), "changed\n");
+        assertTrue(shell.ok("cp -r -u data copy").contains("1 copied, 5 unchanged"));
+        TestFiles.assertSameTree(dir.resolve("data"), dir.resolve("copy"));
+        assertEquals(TestFiles.files(dir.resolve("data")), TestFiles.files(dir.resolve("copy")));
+        assertEquals("", shell.ok("find copy -name *.index*") + shell.ok("find copy -name .cpindex"));
+        try (Stream<Path> indexes = Files.list(state.resolve("cp"))) {
+            assertEquals(1, indexes.count());
+        }
+    }
+
+    // The first run records the CRC32C of what it copies, including a file
+    // copied in ranges, so when only the mtimes change the next run reads
+    // the sources but not the copies.
+    @Test
+    void syncIndexSavesReadingTheCopies() throws IOException {
+        Path data = TestFiles.binaryTree(dir.resolve("data"));
+        Files.write(data.resolve("large.bin"), TestFiles.random(12, (64 << 20) + 777));
+        TestShell shell = new TestShell(dir).withStateIn(state);
+        shell.ok("cp -r -u data copy");
+        long total = 0;
+        for (String file : TestFiles.files(data)) {
+            Files.setLastModifiedTime(data.resolve(file), FileTime.fromMillis(1_000_000_000_000L));
+            total += Files.size(data.resolve(file));
+        }
+        shell.ok("stats --reset");
+        assertTrue(shell.ok("cp -r -u data copy").contains("0 copied, 7 unchanged"));
+        String json = shell.ok("stats --json");
+        int at = json.indexOf("\"bytesRead\":", json.indexOf("\"cp\":")) + "\"bytesRead\":".length();
+        assertEquals(total, Long.parseLong(json.substring(at, json.indexOf(',', at))));
+        TestFiles.assertSameTree(data, dir.resolve("copy"));
+    }
+
+    @Test
+    void indexesUnusedForAMonthAreDeleted() throws IOException {
+        Path indexes = Files.createDirectories(state.resolve("cp"));
+        Path old = Files.writeString(indexes.resolve("0123456789abcdef.index"), "");
+        Path recent = Files.writeString(indexes.resolve("fedcba9876543210.index"), "");
+        Files.setLastModifiedTime(old, FileTime.fromMillis(System.currentTimeMillis() - 31L * 24 * 3600 * 1000));
+        Files.createDirectories(dir.resolve("data"));
+        Files.writeString(dir.resolve("data/a.txt"), "a\n");
+        new TestShell(dir).withStateIn(state).ok("cp -r -u data copy");
+        assertFalse(Files.exists(old));
+        assertTrue(Files.exists(recent));
+    }
+
+    @Test
+    void crc32cOfPiecesCombinesToTheWhole() {
+        byte[] data = TestFiles.random(13, 100_000);
+        for (int split : new int[]{0, 1, 4095, 50_000, 99_999, 100_000}) {
+            CRC32C whole = new CRC32C();
+            whole.update(data);
+            CRC32C first = new CRC32C();
+            first.update(data, 0, split);
+            CRC32C second = new CRC32C();
+            second.update(data, split, data.length - split);
+            assertEquals(whole.getValue(), CopyCommands.crc32cCombine(first.getValue(), second.getValue(),
+                    data.length - split), "split at " + split);
+        }
+    }
+}
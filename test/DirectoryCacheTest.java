@@ -0,0 +1,132 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DirectoryCacheTest {
+    private final DirectoryCache cache = new DirectoryCache(1 << 20);
+
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    void close() {
+        cache.close();
+    }
+
+    private List<String> names(Path directory) throws IOException {
+        return Arrays.stream(cache.list(directory)).map(entry -> entry.name).toList();
+    }
+
+    private long size(Path directory, String name) throws IOException {
+        return Arrays.stream(cache.list(directory)).filter(entry -> entry.name.equals(name)).findFirst()
+                .orElseThrow().size;
+    }
+
+    @Test
+    void listsInCaseInsensitiveOrder() throws IOException {
+        for (String name : List.of("b", "A", "a", "C")) {
+            Files.createFile(dir.resolve(name));
+        }
+        assertEquals(List.of("A", "a", "b", "C"), names(dir));
+    }
+
+    // A new or removed file changes the directory's mtime, which the cache
+    // checks on every lookup, so it never needs to wait for a watch event.
+    @Test
+    void seesFilesCreatedAndDeletedRightAway() throws IOException {
+        Files.createFile(dir.resolve("one"));
+        assertEquals(List.of("one"), names(dir));
+        Files.createFile(dir.resolve("two"));
+        assertEquals(List.of("one", "two"), names(dir));
+        Files.delete(dir.resolve("one"));
+        assertEquals(List.of("two"), names(dir));
+    }
+
+    // Gives dir an mtime old enough for its listing to be trusted.
+    private void settle() throws IOException {
+        Files.setLastModifiedTime(dir, FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+    }
+
+    @Test
+    void settledListingsAreServedFromTheCache() throws IOException {
+        Files.createFile(dir.resolve("one"));
+        DirectoryCache.Entry[] first = cache.list(dir);
+        assertNotSame(first, cache.list(dir), "just changed, so read again");
+        settle();
+        first = cache.list(dir);
+        assertSame(first, cache.list(dir));
+        Files.createFile(dir.resolve("two"));
+        assertEquals(List.of("one", "two"), names(dir));
+    }
+
+    // Rewriting a file leaves the directory's mtime alone; the watch event
+    // brings the new size in.
+    @Test
+    void watchUpdatesChangedFiles() throws Exception {
+        Files.writeString(dir.resolve("f"), "a");
+        settle();
+        assertEquals(1, size(dir, "f"));
+        Files.writeString(dir.resolve("f"), "abcdef");
+        long size = 1;
+        for (int i = 0; i < 100 && size != 6; i++) {
+            Thread.sleep(50);
+            size = size(dir, "f");
+        }
+        assertEquals(6, size);
+    }
+
+    // While files keep arriving the watcher applies events concurrently with
+    // lookups; every lookup must still show every file created before it.
+    @Test
+    void neverServesAListingOlderThanTheDirectory() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        Thread writer = new Thread(() -> {
+            try {
+                for (int i = 0; i < 2000; i++) {
+                    Files.createFile(dir.resolve(String.format("f%04d", i)));
+                    created.set(i + 1);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writer.start();
+        while (writer.isAlive()) {
+            int before = created.get();
+            List<String> names = names(dir);
+            for (int i = 0; i < before; i++) {
+                assertEquals(String.format("f%04d", i), names.get(i));
+            }
+        }
+        writer.join();
+        assertEquals(2000, names(dir).size());
+    }
+
+    @Test
+    void listingsOverCapacityAreStillServed() throws IOException {
+        DirectoryCache tiny = new DirectoryCache(100);
+        try {
+            for (int i = 0; i < 10; i++) {
+                Files.createFile(dir.resolve("file" + i));
+            }
+            assertEquals(10, tiny.list(dir).length);
+            Files.createFile(dir.resolve("file10"));
+            assertEquals(11, tiny.list(dir).length);
+        } finally {
+            tiny.close();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DuplicateFinderTest {
+    @TempDir
+    Path dir;
+
+    @TempDir
+    Path state;
+
+    private List<DuplicateFinder.Candidate> candidates(Path root) throws IOException {
+        List<DuplicateFinder.Candidate> files = new ArrayList<>();
+        for (String name : TestFiles.files(root)) {
+            Path file = root.resolve(name);
+            files.add(new DuplicateFinder.Candidate(file, Files.size(file), Files.getLastModifiedTime(file).toMillis()));
+        }
+        return files;
+    }
+
+    private static List<List<String>> names(Path root, List<List<DuplicateFinder.Candidate>> sets) {
+        return sets.stream().map(set -> set.stream().map(c -> root.relativize(c.path).toString()).toList()).toList();
+    }
+
+    // Same size and same first and last blocks, so only the full digest
+    // tells the middle-changed file apart.
+    @Test
+    void findsIdenticalFilesOnly() throws IOException {
+        Path root = dir.resolve("files");
+        Files.createDirectories(root);
+        byte[] data = TestFiles.random(31, 3 * DuplicateFinder.EDGE_BLOCK);
+        Files.write(root.resolve("a"), data);
+        Files.write(root.resolve("b"), data);
+        byte[] middle = data.clone();
+        middle[data.length / 2] ^= 1;
+        Files.write(root.resolve("c"), middle);
+        Files.write(root.resolve("small1"), new byte[]{1, 2});
+        Files.write(root.resolve("small2"), new byte[]{1, 2});
+        Files.write(root.resolve("other"), new byte[]{1, 3});
+
+        FileIndex index = FileIndex.load(dir.resolve("index"));
+        DuplicateFinder finder = new DuplicateFinder(index, new CommandStats.Usage(), () -> false);
+        List<List<DuplicateFinder.Candidate>> sets = finder.find(candidates(root), (path, e) -> {
+            throw new AssertionError(path.toString(), e);
+        });
+        assertEquals(List.of(List.of("a", "b"), List.of("small1", "small2")), names(root, sets));
+    }
+
+    @Test
+    void repeatScanReusesTheIndex() throws IOException {
+        Path root = TestFiles.binaryTree(dir.resolve("data"));
+        Path indexFile = dir.resolve("index");
+        FileIndex index = FileIndex.load(indexFile);
+        DuplicateFinder first = new DuplicateFinder(index, new CommandStats.Usage(), () -> false);
+        List<List<String>> expected = names(root, first.find(candidates(root), (path, e) -> { }));
+        assertEquals(List.of(List.of("nested/deeper/copy.bin", "random.bin")), expected);
+        index.save();
+
+        DuplicateFinder second = new DuplicateFinder(FileIndex.load(indexFile), new CommandStats.Usage(), () -> false);
+        assertEquals(expected, names(root, second.find(candidates(root), (path, e) -> { })));
+        assertEquals(0, second.hashed.sum());
+    }
+
+    @Test
+    void dupesCommandPrintsSetsAndSummary() throws IOException {
+        TestFiles.binaryTree(dir.resolve("data"));
+        TestShell shell = new TestShell(dir).withStateIn(state);
+        assertEquals("data/nested/deeper/copy.bin\ndata/random.bin\n\n".replace("/", dir.getFileSystem().getSeparator()),
+                shell.ok("dupes data"));
+        assertEquals("1 duplicate files (in 1 sets), occupying 293.0K\n", shell.ok("dupes -m data"));
+        assertTrue(Files.size(state.resolve("dupes.index")) > 0);
+    }
+}
@@ -0,0 +1,62 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FindDuTest {
+    @TempDir
+    Path dir;
+
+    private TestShell shell;
+
+    @BeforeEach
+    void tree() throws IOException {
+        TestFiles.binaryTree(dir.resolve("data"));
+        Files.setLastModifiedTime(dir.resolve("data/zeros.bin"), FileTime.fromMillis(System.currentTimeMillis() - 10 * 86_400_000L));
+        shell = new TestShell(dir);
+    }
+
+    // find walks in parallel, so its output is compared sorted.
+    private List<String> find(String args) {
+        return shell.ok("find " + args).lines().sorted().toList();
+    }
+
+    @Test
+    void findFiltersByNameTypeSizeAndAge() {
+        assertEquals(List.of("data", "data/nested", "data/nested/deeper"), find("data -type d"));
+        assertEquals(List.of("data/nested/deeper/copy.bin", "data/nested/deeper/repeated.bin",
+                "data/nested/empty.bin", "data/random.bin", "data/zeros.bin"), find("data -name *.bin"));
+        assertEquals(List.of("data/nested/text.txt"), find("data -iname *.TXT"));
+        assertEquals(List.of("data/nested/deeper/copy.bin", "data/nested/text.txt", "data/random.bin", "data/zeros.bin"),
+                find("data -type f -size +250k"));
+        assertEquals(List.of("data/nested/empty.bin"), find("data -type f -size -1k"));
+        assertEquals(List.of("data/zeros.bin"), find("data -type f -mtime +7"));
+        assertEquals(9, find("data").size());
+    }
+
+    @Test
+    void duSumsApparentSizes() throws IOException {
+        long total = 0;
+        for (String file : TestFiles.files(dir.resolve("data"))) {
+            total += Files.size(dir.resolve("data").resolve(file));
+        }
+        assertEquals((total + 1023) / 1024 + "\tdata\n", shell.ok("du -s data"));
+        List<String> lines = shell.ok("du data").lines().toList();
+        assertEquals(3, lines.size());
+        assertEquals((total + 1023) / 1024 + "\tdata", lines.get(2));
+        assertEquals("2.1M\tdata\n", shell.ok("du -s -h data"));
+    }
+
+    @Test
+    void badArgumentsFail() {
+        assertEquals(1, shell.run("find missing"));
+        assertEquals(1, shell.run("du missing"));
+    }
+}
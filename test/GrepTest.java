@@ -0,0 +1,101 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class GrepTest {
+    private static final String TEXT = "short needle\n"
+            + "a line much longer than the sixteen byte window with a needle in it\n"
+            + "no match here\n"
+            + "needle\n"
+            + "x".repeat(40) + "needle" + "y".repeat(40) + "\n"
+            + "unterminated needle";
+
+    @TempDir
+    Path dir;
+
+    // Windows of 16 bytes split nearly every line, and some lines need several.
+    @ParameterizedTest
+    @ValueSource(strings = {"needle", "ne+dle"})
+    void linesAreNotSplitAcrossWindows(String pattern) throws IOException {
+        Path file = Files.writeString(dir.resolve("text"), TEXT);
+        String expected = Arrays.stream(TEXT.split("\n"))
+                .filter(line -> line.contains("needle"))
+                .map(line -> line + "\n")
+                .collect(Collectors.joining());
+        for (int windowSize : new int[]{1, 7, 16, 64, Grep.WINDOW_SIZE}) {
+            Grep grep = new Grep(pattern, false, false, false, false);
+            grep.windowSize = windowSize;
+            ByteArrayOutputStream sink = new ByteArrayOutputStream();
+            assertEquals(5, grep.search(file, "text", false, sink, new CommandStats.Usage()));
+            assertEquals(expected, sink.toString(StandardCharsets.UTF_8), "window " + windowSize);
+        }
+    }
+
+    @Test
+    void lineNumbersCountAcrossWindows() throws IOException {
+        Path file = Files.writeString(dir.resolve("text"), TEXT);
+        Grep grep = new Grep("needle", false, true, true, false);
+        grep.windowSize = 16;
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        grep.search(file, "text", true, sink, new CommandStats.Usage());
+        assertEquals(String.join("", "text:1:short needle\n",
+                "text:2:a line much longer than the sixteen byte window with a needle in it\n",
+                "text:4:needle\n",
+                "text:5:" + "x".repeat(40) + "needle" + "y".repeat(40) + "\n",
+                "text:6:unterminated needle\n"), sink.toString(StandardCharsets.UTF_8));
+    }
+
+    // A socket exists but cannot be opened for reading. Its error comes out
+    // between the files around it, and it makes the status 2 even though
+    // other files matched.
+    @Test
+    void unreadableFileIsReportedInOrderAndFailsTheSearch() throws IOException {
+        for (int i = 0; i < 20; i++) {
+            if (i == 10) {
+                continue;
+            }
+            Files.writeString(dir.resolve("f" + (char) ('a' + i)), "needle " + i + "\n");
+        }
+        try (ServerSocketChannel socket = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            socket.bind(UnixDomainSocketAddress.of(dir.resolve("fk")));
+            TestShell shell = new TestShell(dir);
+            assertEquals(2, shell.run("grep needle fa fb fc fd fe ff fg fh fi fj fk fl fm fn fo fp fq fr fs ft"));
+            List<String> lines = shell.output().lines().toList();
+            assertEquals(20, lines.size(), shell.output());
+            assertEquals("fj:needle 9", lines.get(9));
+            assertTrue(lines.get(10).startsWith("grep: fk: "), lines.get(10));
+            assertEquals("fl:needle 11", lines.get(11));
+            assertEquals(2, shell.run("grep nothing fa fk"));
+        }
+    }
+
+    @Test
+    void recursiveGrepReportsBinaryFiles() throws IOException {
+        Files.createDirectories(dir.resolve("tree/sub"));
+        Files.write(dir.resolve("tree/sub/data.bin"), "\0\1\2needle\0\nneedle again\n".getBytes(StandardCharsets.UTF_8));
+        Files.writeString(dir.resolve("tree/notes.txt"), "a needle\n");
+        Files.write(dir.resolve("tree/other.bin"), new byte[]{0, 1, 2});
+        TestShell shell = new TestShell(dir);
+        assertEquals("tree/notes.txt:a needle\nBinary file tree/sub/data.bin matches\n"
+                .replace("/", dir.getFileSystem().getSeparator()), shell.ok("grep -r needle tree"));
+        assertEquals("Binary file tree/sub/data.bin matches\n".replace("/", dir.getFileSystem().getSeparator()),
+                shell.ok("grep needle tree/sub/data.bin"));
+        assertEquals("2\n", shell.ok("grep -c needle tree/sub/data.bin"));
+    }
+}
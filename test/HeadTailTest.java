@@ -0,0 +1,73 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class HeadTailTest {
+    // Lines of varying length, so block edges fall anywhere in a line.
+    private static final List<String> LINES = IntStream.range(0, 20_000)
+            .mapToObj(i -> "line " + i + " " + "x".repeat(i % 37)).toList();
+
+    @TempDir
+    Path dir;
+
+    private static String join(List<String> lines) {
+        return lines.stream().map(line -> line + "\n").collect(Collectors.joining());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 10, 99, 100, 101, 2500, 19_999, 20_000, 50_000})
+    void tailReadsBackwardsAcrossBlocks(int n) throws IOException {
+        Files.write(dir.resolve("t.txt"), LINES);
+        TestShell shell = new TestShell(dir);
+        String expected = join(LINES.subList(Math.max(0, LINES.size() - n), LINES.size()));
+        assertEquals(expected, shell.ok("tail -n " + n + " t.txt"));
+        assertEquals(join(LINES.subList(0, Math.min(n, LINES.size()))), shell.ok("head -n " + n + " t.txt"));
+    }
+
+    @Test
+    void tailOfStdinKeepsOnlyTheLastLines() {
+        byte[] input = join(LINES).getBytes(StandardCharsets.UTF_8);
+        TestShell shell = new TestShell(dir, new ByteArrayInputStream(input));
+        assertEquals(join(LINES.subList(LINES.size() - 3, LINES.size())), shell.ok("tail -n 3"));
+    }
+
+    @Test
+    void unterminatedLastLineAndHeaders() throws IOException {
+        Files.writeString(dir.resolve("a"), "1\n2\n3");
+        Files.writeString(dir.resolve("b"), "x\n");
+        TestShell shell = new TestShell(dir);
+        assertEquals("2\n3", shell.ok("tail -n 2 a"));
+        assertEquals("==> a <==\n1\n\n==> b <==\nx\n", shell.ok("head -n 1 a b"));
+    }
+
+    @Test
+    void followPrintsWhatIsAppended() throws Exception {
+        Path log = Files.writeString(dir.resolve("log"), "old\n");
+        TestShell shell = new TestShell(dir);
+        shell.ok("tail -n 1 -f log &");
+        Thread.sleep(500);
+        for (int i = 0; i < 3; i++) {
+            Files.writeString(log, "new " + i + "\n", StandardOpenOption.APPEND);
+            Thread.sleep(100);
+        }
+        Thread.sleep(500);
+        shell.ok("kill 1");
+        shell.run("wait");
+        String output = shell.output();
+        assertTrue(output.contains("new 0\nnew 1\nnew 2\n") && output.endsWith("Killed   tail -n 1 -f log\n"), output);
+    }
+}
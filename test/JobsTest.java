@@ -0,0 +1,91 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JobsTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void waitPrintsCapturedOutputAndStatus() throws IOException {
+        Files.writeString(dir.resolve("a"), "one\ntwo\n");
+        TestShell shell = new TestShell(dir);
+        assertEquals("[1] cat a | wc\n", shell.ok("cat a | wc &"));
+        assertEquals("[2] rm missing\n", shell.ok("rm missing &"));
+        assertEquals(0, shell.run("wait 1"));
+        assertEquals("2 2 8\n[1] Done     cat a | wc\n", shell.output());
+        assertEquals(1, shell.run("wait %2"));
+        assertEquals("rm: cannot remove 'missing': No such file or directory\n[2] Exit 1   rm missing\n",
+                shell.output());
+        assertEquals("", shell.ok("jobs"));
+    }
+
+    // Ids keep counting up while earlier jobs are still in the table.
+    @Test
+    void jobsListsRunningJobsUntilTheyAreKilled() throws Exception {
+        Files.writeString(dir.resolve("log"), "old\n");
+        TestShell shell = new TestShell(dir);
+        shell.ok("tail -f log &");
+        shell.ok("echo done &");
+        Thread.sleep(200);
+        assertEquals("[1] Running  tail -f log\n[2] Done     echo done\n", shell.ok("jobs"));
+        shell.ok("kill 1");
+        shell.run("wait");
+        String output = shell.output();
+        assertTrue(output.endsWith("[1] Killed   tail -f log\ndone\n[2] Done     echo done\n"), output);
+        assertEquals("[1] echo again\n", shell.ok("echo again &"));
+        shell.run("wait");
+    }
+
+    @Test
+    void largeOutputIsKeptWhole() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; text.length() < 3 * JobTable.SPILL_THRESHOLD; i++) {
+            text.append("line ").append(i).append('\n');
+        }
+        Files.writeString(dir.resolve("big"), text);
+        TestShell shell = new TestShell(dir);
+        shell.ok("cat big &");
+        assertEquals(0, shell.run("wait 1"));
+        assertEquals(text + "[1] Done     cat big\n", shell.output());
+    }
+
+    // Past the threshold the output moves to a file, which goes away once
+    // the output has been written out.
+    @Test
+    void outputSpillsToATemporaryFile() throws IOException {
+        JobTable.Output output = new JobTable.Output();
+        byte[] data = TestFiles.random(3, 3 * JobTable.SPILL_THRESHOLD);
+        for (int i = 0; i < data.length; i += 4096) {
+            output.write(data, i, Math.min(4096, data.length - i));
+        }
+        assertEquals(0, output.buffered());
+        Path file = output.file();
+        assertTrue(Files.exists(file));
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        output.writeTo(copy);
+        assertArrayEquals(data, copy.toByteArray());
+        assertFalse(Files.exists(file));
+        assertNull(output.lost());
+    }
+
+    @Test
+    void unknownJobsAreErrors() {
+        TestShell shell = new TestShell(dir);
+        assertEquals(127, shell.run("wait 3"));
+        assertEquals("wait: 3: no such job\n", shell.output());
+        assertEquals(127, shell.run("kill %x"));
+        assertEquals("kill: %x: no such job\n", shell.output());
+        assertEquals(1, shell.run("kill"));
+    }
+}
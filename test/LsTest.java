@@ -0,0 +1,95 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LsTest {
+    @TempDir
+    Path dir;
+
+    private TestShell shell;
+
+    @BeforeEach
+    void tree() throws IOException {
+        Files.createDirectories(dir.resolve("d/sub/deeper"));
+        Files.writeString(dir.resolve("d/small.txt"), "abc");
+        Files.writeString(dir.resolve("d/big.txt"), "x".repeat(50_000));
+        Files.writeString(dir.resolve("d/.hidden"), "");
+        Files.writeString(dir.resolve("d/sub/inner.txt"), "hi");
+        Files.setLastModifiedTime(dir.resolve("d/small.txt"), FileTime.fromMillis(2_000_000_000_000L));
+        Files.setLastModifiedTime(dir.resolve("d/big.txt"), FileTime.fromMillis(1_000_000_000_000L));
+        shell = new TestShell(dir);
+    }
+
+    @Test
+    void listsAndSorts() {
+        assertEquals("big.txt\nsmall.txt\nsub\n", shell.ok("ls d"));
+        assertEquals(".hidden\nbig.txt\nsmall.txt\nsub\n", shell.ok("ls -a d"));
+        assertTrue(shell.ok("ls -S d").startsWith("big.txt\n"));
+        assertEquals("small.txt\nsub\nbig.txt\n", shell.ok("ls -t d"));
+    }
+
+    @Test
+    void longFormatShowsTypeAndSize() {
+        List<String> lines = shell.ok("ls -l d").lines().toList();
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).matches("-\\s+50000 \\S+ \\S+ big\\.txt"), lines.get(0));
+        assertTrue(lines.get(1).matches("-\\s+3 \\S+ \\S+ small\\.txt"), lines.get(1));
+        assertTrue(lines.get(2).matches("d\\s+\\d+ \\S+ \\S+ sub"), lines.get(2));
+    }
+
+    @Test
+    void recursiveListsEveryDirectoryInTreeOrder() {
+        Path d = dir.resolve("d");
+        assertEquals(d + ":\nbig.txt\nsmall.txt\nsub\n\n"
+                + d.resolve("sub") + ":\ndeeper\ninner.txt\n\n"
+                + d.resolve("sub/deeper") + ":\n", shell.ok("ls -R d"));
+    }
+
+    // A tree wider and deeper than the lister's read-ahead still comes out in
+    // depth-first name order.
+    @Test
+    void recursiveOrderHoldsBeyondTheReadAhead() throws IOException {
+        Path root = dir.resolve("wide");
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            Path child = root.resolve(String.format("c%02d", i));
+            Files.createDirectories(child.resolve("x/y"));
+            Files.writeString(child.resolve("x/f"), "");
+        }
+        expected.append(root).append(":\n");
+        for (int i = 0; i < 40; i++) {
+            expected.append(String.format("c%02d", i)).append('\n');
+        }
+        for (int i = 0; i < 40; i++) {
+            Path child = root.resolve(String.format("c%02d", i));
+            expected.append('\n').append(child).append(":\nx\n")
+                    .append('\n').append(child.resolve("x")).append(":\nf\ny\n")
+                    .append('\n').append(child.resolve("x/y")).append(":\n");
+        }
+        assertEquals(expected.toString(), shell.ok("ls -R wide"));
+    }
+
+    @Test
+    void fileOperandsListTheFileItself() {
+        assertEquals("small.txt\n", shell.ok("ls d/small.txt"));
+        assertEquals(".hidden\n", shell.ok("ls d/.hidden"));
+        assertTrue(shell.ok("ls -l d/big.txt").matches("-\\s+50000 \\S+ \\S+ big\\.txt\n"));
+        assertEquals("small.txt\n\n" + dir.resolve("d/sub") + ":\ndeeper\ninner.txt\n\n"
+                + dir.resolve("d/sub/deeper") + ":\n", shell.ok("ls -R d/small.txt d/sub"));
+    }
+
+    @Test
+    void missingDirectoryFails() {
+        assertEquals(1, shell.run("ls nothing"));
+        assertTrue(shell.output().startsWith("ls: cannot access"), shell.output());
+    }
+}
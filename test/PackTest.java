@@ -0,0 +1,80 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PackTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void packThenUnpackRestoresBinaryFiles() throws IOException {
+        TestFiles.binaryTree(dir.resolve("data"));
+        TestShell shell = new TestShell(dir);
+        String report = shell.ok("pack t.pack data");
+        Matcher counts = Pattern.compile("in (\\d+) chunks \\((\\d+) unique\\)").matcher(report);
+        assertTrue(counts.find(), report);
+        assertTrue(Long.parseLong(counts.group(2)) < Long.parseLong(counts.group(1)), "duplicates are stored once: " + report);
+
+        shell.ok("unpack t.pack -d out");
+        TestFiles.assertSameTree(dir.resolve("data"), dir.resolve("out/data"));
+    }
+
+    @Test
+    void unpackExtractsOnlyMatchingMembers() throws IOException {
+        TestFiles.binaryTree(dir.resolve("data"));
+        TestShell shell = new TestShell(dir);
+        shell.ok("pack t.pack data");
+        shell.ok("unpack t.pack -d out *.txt");
+        assertEquals(TestFiles.files(dir.resolve("data/nested")).stream().filter(name -> name.endsWith(".txt")).toList(),
+                TestFiles.files(dir.resolve("out/data/nested")));
+    }
+
+    // Sizes are taken when the files are collected; the archive must record
+    // what was actually chunked.
+    @Test
+    void membersRecordTheBytesActuallyChunked() throws IOException {
+        Path data = Files.createDirectories(dir.resolve("data"));
+        Path grown = Files.write(data.resolve("grown.bin"), TestFiles.random(4, 100_000));
+        Path shrunk = Files.write(data.resolve("shrunk.bin"), TestFiles.random(5, 1000));
+        ChunkArchive.Summary summary = ChunkArchive.write(dir.resolve("t.pack"), List.of(
+                new ParallelZip.Source(grown, "grown.bin", 10),
+                new ParallelZip.Source(shrunk, "shrunk.bin", 50_000)), System.err, () -> false);
+        assertEquals(101_000, summary.bytes);
+        try (ChunkArchive.Reader reader = new ChunkArchive.Reader(dir.resolve("t.pack"))) {
+            for (ChunkArchive.Member member : reader.members) {
+                assertEquals(Files.size(data.resolve(member.name)), member.size, member.name);
+            }
+        }
+        new TestShell(dir).ok("unpack t.pack -d out");
+        TestFiles.assertSameTree(data, dir.resolve("out"));
+    }
+
+    @Test
+    void failedPackLeavesNoArchive() {
+        TestShell shell = new TestShell(dir);
+        assertEquals(1, shell.run("pack missing/t.pack ."));
+        assertFalse(Files.exists(dir.resolve("missing/t.pack")));
+    }
+
+    @Test
+    void chunksStayWithinBounds() {
+        byte[] data = TestFiles.random(3, 1 << 20);
+        int start = 0;
+        while (start < data.length) {
+            int cut = ChunkArchive.cut(data, start, data.length);
+            assertTrue(cut - start <= ChunkArchive.MAX_CHUNK);
+            assertTrue(cut - start >= ChunkArchive.MIN_CHUNK || cut == data.length);
+            start = cut;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ParserTest {
+    private final Parser parser = new Parser();
+
+    @TempDir
+    Path dir;
+
+    // Tokens as "word" or the operator's type number, for compact assertions.
+    private List<String> tokens(String line) {
+        assertTrue(parser.parse(line), line);
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < parser.size(); i++) {
+            tokens.add(parser.type(i) == Parser.WORD ? parser.word(i) : "#" + parser.type(i));
+        }
+        return tokens;
+    }
+
+    @Test
+    void splitsWordsAndOperators() {
+        assertEquals(List.of("cat", "a", "#1", "sort", "#2", "out"), tokens("cat a|sort>out"));
+        assertEquals(List.of("a", "#3", "f", "#4", "b", "#5", "c", "#6"), tokens("a >>f&&b ; c &"));
+    }
+
+    @Test
+    void quotesAndEscapes() {
+        assertEquals(List.of("it's", "a b", "x|y", "$HOME\"\\"), tokens("\"it's\" 'a b' x\\|y \"\\$HOME\\\"\\\\\""));
+        assertEquals(List.of("a b", "c\\d"), tokens("a\\ b c\\d"));
+        assertEquals(List.of(""), tokens("''"));
+        assertEquals(List.of("ab"), tokens("a'b'"));
+    }
+
+    @Test
+    void commandNameAndArgsAreTheFirstSimpleCommand() {
+        tokens("grep -n foo file | wc");
+        assertEquals("grep", parser.getCommandName());
+        assertArrayEquals(new String[]{"-n", "foo", "file"}, parser.getArgs());
+    }
+
+    @Test
+    void unterminatedQuotesAreErrors() {
+        assertFalse(parser.parse("echo 'open"));
+        assertEquals("unexpected EOF while looking for matching `''", parser.getError());
+        assertFalse(parser.parse("echo \"open"));
+        assertEquals("unexpected EOF while looking for matching `\"'", parser.getError());
+        assertFalse(parser.parse("   "));
+        assertNull(parser.getError());
+    }
+
+    // Buffers are reused, so a long line followed by a short one must not
+    // leave old tokens behind.
+    @Test
+    void reusedBuffersHoldOnlyTheLastLine() {
+        tokens("a b c d e f g h i j k l m n o p q r s t u v w x y z");
+        assertEquals(List.of("x", "#1", "y"), tokens("x|y"));
+        assertArrayEquals(new String[0], parser.getArgs());
+    }
+
+    @Test
+    void shellReportsSyntaxErrors() throws IOException {
+        TestShell shell = new TestShell(dir);
+        assertEquals(2, shell.run("echo 'open"));
+        assertEquals(0, shell.run("rm missing && echo no ; echo yes"));
+        assertEquals("rm: cannot remove 'missing': No such file or directory\nyes\n", shell.output());
+        Files.writeString(dir.resolve("a b.txt"), "spaced\n");
+        assertEquals("spaced\n", shell.ok("cat 'a b.txt'"));
+        assertEquals("spaced\n", shell.ok("cat a\\ b.txt"));
+    }
+}
@@ -0,0 +1,78 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PipelineTest {
+    @TempDir
+    Path dir;
+
+    // Far more than one pipe's capacity, so every stage blocks on the next.
+    @Test
+    void binaryDataPassesThroughEveryStage() throws IOException {
+        byte[] data = TestFiles.random(9, 3_000_000);
+        Files.write(dir.resolve("r.bin"), data);
+        new TestShell(dir).ok("cat r.bin | cat | cat > copy.bin");
+        assertArrayEquals(data, Files.readAllBytes(dir.resolve("copy.bin")));
+    }
+
+    @Test
+    void stagesSeeTheOutputOfThePreviousStage() throws IOException {
+        List<String> numbers = IntStream.rangeClosed(1, 100_000).mapToObj(Integer::toString).toList();
+        Files.write(dir.resolve("n.txt"), numbers);
+        TestShell shell = new TestShell(dir);
+        assertEquals("99999\n100000\n", shell.ok("cat n.txt | tail -n 2"));
+        assertEquals(numbers.stream().filter(n -> n.contains("777")).sorted().map(n -> n + "\n")
+                .collect(Collectors.joining()), shell.ok("cat n.txt | grep 777 | sort"));
+        assertEquals("100000 100000 588895\n", shell.ok("cat n.txt | wc"));
+    }
+
+    // head stops reading after its lines; the stages before it must not
+    // block forever on a pipe nobody drains.
+    @Test
+    void earlyExitDoesNotStallTheUpstreamStages() throws IOException {
+        Files.write(dir.resolve("n.txt"), IntStream.rangeClosed(1, 1_000_000).mapToObj(Integer::toString).toList());
+        TestShell shell = new TestShell(dir);
+        String head = assertTimeoutPreemptively(Duration.ofSeconds(30), () -> shell.ok("cat n.txt | cat | head -n 3"));
+        assertEquals("1\n2\n3\n", head);
+    }
+
+    // Once head has its line and exits, cat must stop reading rather than
+    // push the rest of a 1 GiB (sparse) file into a pipe nobody reads.
+    @Test
+    void upstreamStageStopsWhenTheReaderExits() throws IOException {
+        Path big = dir.resolve("big.txt");
+        try (RandomAccessFile file = new RandomAccessFile(big.toFile(), "rw")) {
+            file.write("first\n".getBytes());
+            file.setLength(1L << 30);
+        }
+        TestShell shell = new TestShell(dir);
+        shell.ok("stats --reset");
+        assertEquals("first\n", shell.ok("cat big.txt | head -n 1"));
+        String json = shell.ok("stats --json");
+        int at = json.indexOf("\"bytesRead\":", json.indexOf("\"cat\":")) + "\"bytesRead\":".length();
+        long read = Long.parseLong(json.substring(at, json.indexOf(',', at)));
+        assertTrue(read < 16 << 20, "cat read " + read + " bytes");
+    }
+
+    @Test
+    void statusIsTheLastStages() throws IOException {
+        Files.writeString(dir.resolve("t.txt"), "x\n");
+        TestShell shell = new TestShell(dir);
+        assertEquals(1, shell.run("cat t.txt | grep nothing"));
+        assertEquals(0, shell.run("cat t.txt | grep x"));
+        assertEquals(127, shell.run("cat t.txt | nosuchcommand"));
+    }
+}
@@ -0,0 +1,55 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RedirectTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void redirectReplacesAndAppendAdds() throws IOException {
+        TestShell shell = new TestShell(dir);
+        assertEquals("", shell.ok("echo a > f"));
+        shell.ok("echo b >> f");
+        assertEquals("a\nb\n", Files.readString(dir.resolve("f")));
+        shell.ok("echo c > f");
+        assertEquals("c\n", Files.readString(dir.resolve("f")));
+    }
+
+    // Output goes to the file as it is written, not collected first.
+    @Test
+    void largeOutputStreamsIntoTheFile() throws IOException {
+        byte[] data = TestFiles.random(11, 5_000_000);
+        Files.write(dir.resolve("r.bin"), data);
+        TestShell shell = new TestShell(dir);
+        shell.ok("cat r.bin > copy.bin");
+        shell.ok("cat r.bin >> copy.bin");
+        byte[] twice = Files.readAllBytes(dir.resolve("copy.bin"));
+        assertEquals(2 * data.length, twice.length);
+        assertArrayEquals(data, Arrays.copyOfRange(twice, data.length, twice.length));
+    }
+
+    @Test
+    void unopenableTargetRunsNothing() throws IOException {
+        TestShell shell = new TestShell(dir);
+        assertEquals(1, shell.run("mkdir made > nodir/f"));
+        assertTrue(shell.output().startsWith("Redirection error: "), shell.output());
+        assertFalse(Files.exists(dir.resolve("made")));
+    }
+
+    @Test
+    void eachStageCanRedirect() throws IOException {
+        TestShell shell = new TestShell(dir);
+        shell.ok("echo one > first | echo two");
+        assertEquals("one\n", Files.readString(dir.resolve("first")));
+    }
+}
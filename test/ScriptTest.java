@@ -0,0 +1,50 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Script mode writes through its own buffered stdout, so it is run in a
+// separate JVM with stdout and stderr going to the same pipe.
+class ScriptTest {
+    @TempDir
+    Path dir;
+
+    private List<String> runScript(String script, String... options) throws IOException, InterruptedException {
+        Files.writeString(dir.resolve("script.txt"), script);
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        List<String> command = new ArrayList<>(List.of(java, "-cp", System.getProperty("java.class.path"), "Terminal"));
+        command.addAll(List.of(options));
+        command.addAll(List.of("-f", "script.txt"));
+        Process process = new ProcessBuilder(command).directory(dir.toFile()).redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        process.waitFor();
+        return output.lines().toList();
+    }
+
+    @Test
+    void errorsAppearBetweenTheOutputAroundThem() throws IOException, InterruptedException {
+        Files.writeString(dir.resolve("notes.txt"), "hello\n");
+        List<String> lines = runScript("echo one\ncat missing\ncat notes.txt\nwc missing\necho two\n");
+        assertEquals(List.of("one", "cat: missing: No such file", "hello", "wc: missing: No such file", "two"),
+                lines.subList(0, 5));
+        assertTrue(lines.get(5).startsWith("script: 5 commands in "), lines.get(5));
+        assertEquals(6, lines.size());
+    }
+
+    @Test
+    void stopOnErrorEndsTheScript() throws IOException, InterruptedException {
+        List<String> lines = runScript("echo one\ncat missing\necho two\n", "-e");
+        assertEquals(List.of("one", "cat: missing: No such file"), lines.subList(0, 2));
+        assertTrue(lines.get(2).startsWith("script: 2 commands in ") && lines.get(2).endsWith("exit status 1"),
+                lines.get(2));
+    }
+}
@@ -0,0 +1,107 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class SortTest {
+    // Every line is 8 bytes, so a budget of RUN lines' footprint (content
+    // plus ExternalSort's 48 bytes of overhead) spills exactly every RUN lines.
+    private static final int RUN = 10;
+    private static final long BUDGET = RUN * (8 + 48);
+
+    @TempDir
+    Path dir;
+
+    // Lines drawn from 300 values, so equal lines land in different runs.
+    private static List<String> lines(int count) {
+        Random random = new Random(count);
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            lines.add(String.format("%08d", random.nextInt(300) * 7919 % 100_000_000));
+        }
+        return lines;
+    }
+
+    private String sort(List<String> lines, boolean unique) throws IOException {
+        String input = lines.stream().map(line -> line + "\n").collect(Collectors.joining());
+        ExternalSort sort = new ExternalSort(ExternalSort.comparator(false, false, 0, 0, -1, unique), unique,
+                BUDGET, dir, () -> false);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        sort.sort(List.of(new LineReader(new ByteArrayInputStream(input.getBytes(StandardCharsets.US_ASCII)), 64)), out);
+        return out.toString(StandardCharsets.US_ASCII);
+    }
+
+    // Around one run, and enough runs (over 128) to need a second merge pass.
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, RUN - 1, RUN, RUN + 1, 2 * RUN, 1000, 1285, 3000})
+    void spilledSortMatchesInMemorySort(int count) throws IOException {
+        List<String> lines = lines(count);
+        assertEquals(lines.stream().sorted().map(line -> line + "\n").collect(Collectors.joining()), sort(lines, false));
+        assertEquals(lines.stream().sorted().distinct().map(line -> line + "\n").collect(Collectors.joining()),
+                sort(lines, true));
+        try (var left = Files.list(dir)) {
+            assertEquals(0, left.count(), "run files are deleted");
+        }
+    }
+
+    @Test
+    void sortCommandWithSmallBudgetMatchesDefault() throws IOException {
+        Files.write(dir.resolve("t.txt"), lines(5000));
+        TestShell shell = new TestShell(dir);
+        String expected = shell.ok("sort t.txt");
+        assertEquals(expected, shell.ok("sort -S 1K -T . t.txt"));
+        assertEquals(shell.ok("sort -u t.txt"), shell.ok("sort -u -S 1K -T . t.txt"));
+        assertEquals(List.of("t.txt"), TestFiles.files(dir));
+    }
+
+    // uniq's line buffer is 64 KiB; 80000 9-byte lines cross it ten times.
+    @Test
+    void uniqCountsRunsAcrossBufferBoundaries() throws IOException {
+        List<String> sorted = lines(80_000).stream().sorted().toList();
+        Files.write(dir.resolve("sorted.txt"), sorted);
+        Map<String, Long> runs = sorted.stream()
+                .collect(Collectors.groupingBy(line -> line, LinkedHashMap::new, Collectors.counting()));
+        TestShell shell = new TestShell(dir);
+        assertEquals(runs.entrySet().stream().map(e -> String.format("%7d %s\n", e.getValue(), e.getKey()))
+                .collect(Collectors.joining()), shell.ok("uniq -c sorted.txt"));
+        assertEquals(runs.keySet().stream().map(line -> line + "\n").collect(Collectors.joining()),
+                shell.ok("uniq sorted.txt"));
+
+        Files.write(dir.resolve("mixed.txt"), List.of("a", "a", "b", "c", "c", "c", "d"));
+        assertEquals("a\nc\n", shell.ok("uniq -d mixed.txt"));
+        assertEquals("b\nd\n", shell.ok("uniq -u mixed.txt"));
+    }
+
+    @Test
+    void lineReaderJoinsLinesLongerThanItsBuffer() throws IOException {
+        byte[] text = "short\nthis line is longer than the buffer\n\nlast".getBytes(StandardCharsets.US_ASCII);
+        LineReader reader = new LineReader(new ByteArrayInputStream(text), 4);
+        List<String> lines = new ArrayList<>();
+        byte[] line;
+        while ((line = reader.readLine()) != null) {
+            lines.add(new String(line, StandardCharsets.US_ASCII));
+        }
+        assertEquals(List.of("short", "this line is longer than the buffer", "", "last"), lines);
+        assertNull(reader.readLine());
+        assertEquals(text.length, reader.bytesRead);
+        assertArrayEquals(new byte[0], new LineReader(new ByteArrayInputStream("\n".getBytes()), 4).readLine());
+        assertNull(new LineReader(new ByteArrayInputStream(new byte[0]), 4).readLine());
+    }
+}
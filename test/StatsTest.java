@@ -0,0 +1,103 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class StatsTest {
+    @TempDir
+    Path dir;
+
+    // Every bucket's range must start right after the previous one ends, and
+    // be no wider than 1/32 of its values.
+    @Test
+    void bucketsCoverEveryValueWithBoundedError() {
+        for (int i = 1; i < 40 << 5; i++) {
+            long lowest = CommandStats.highestInBucket(i - 1) + 1;
+            long highest = CommandStats.highestInBucket(i);
+            assertEquals(i, CommandStats.bucket(lowest), "lowest of " + i);
+            assertEquals(i, CommandStats.bucket(highest), "highest of " + i);
+            assertTrue(highest - lowest < Math.max(1, lowest / 31), "width of " + i);
+        }
+        assertEquals(0, CommandStats.bucket(0));
+        assertEquals(31, CommandStats.bucket(31));
+    }
+
+    @Test
+    void percentilesAreWithinABucketOfTheExactValue() {
+        CommandStats stats = new CommandStats();
+        CommandStats.Usage usage = new CommandStats.Usage();
+        for (long nanos = 1; nanos <= 10_000; nanos++) {
+            stats.record("x", nanos * 1000, nanos % 100 == 0 ? 1 : 0, usage);
+        }
+        String json = stats.toJson();
+        assertTrue(json.startsWith("{\"commands\":{\"x\":{\"invocations\":10000,\"errors\":100,"), json);
+        assertNear(5_000_000, value(json, "p50Nanos"));
+        assertNear(9_000_000, value(json, "p90Nanos"));
+        assertNear(9_900_000, value(json, "p99Nanos"));
+        assertEquals(10_000_000, value(json, "maxNanos"));
+    }
+
+    private static void assertNear(long expected, long actual) {
+        assertTrue(Math.abs(actual - expected) <= expected / 32, expected + " vs " + actual);
+    }
+
+    private static long value(String json, String key) {
+        int start = json.indexOf("\"" + key + "\":") + key.length() + 3;
+        int end = start;
+        while (Character.isDigit(json.charAt(end))) {
+            end++;
+        }
+        return Long.parseLong(json.substring(start, end));
+    }
+
+    // STATS is shared by every shell in the JVM, so each test starts from a reset.
+    @Test
+    void statsCommandCountsCallsErrorsAndBytes() throws IOException {
+        Files.write(dir.resolve("a.bin"), TestFiles.random(1, 1000));
+        TestShell shell = new TestShell(dir);
+        shell.ok("stats --reset");
+        shell.ok("cat a.bin");
+        shell.ok("cat a.bin");
+        assertEquals(1, shell.run("rm missing"));
+        assertEquals(127, shell.run("nosuchcommand"));
+
+        List<String> table = shell.ok("stats").lines().toList();
+        assertTrue(table.get(0).startsWith("command     calls errors"), table.get(0));
+        // The reset itself is recorded once it finishes.
+        assertEquals(List.of("cat", "rm", "stats"), table.subList(1, table.size()).stream()
+                .map(line -> line.split(" +")[0]).toList());
+        assertEquals(List.of("cat", "2", "0"), List.of(table.get(1).split(" +")).subList(0, 3));
+        assertEquals(List.of("rm", "1", "1"), List.of(table.get(2).split(" +")).subList(0, 3));
+
+        String json = shell.ok("stats --json");
+        assertTrue(json.contains("\"cat\":{\"invocations\":2,\"errors\":0,"), json);
+        assertEquals(2000, value(json, "bytesRead"));
+        assertTrue(json.contains("\"stats\":{\"invocations\":2,"), json);
+
+        shell.ok("stats --reset");
+        json = shell.ok("stats --json");
+        assertTrue(json.startsWith("{\"commands\":{\"stats\":{\"invocations\":1,"), json);
+        assertEquals(2, json.split("\"invocations\"").length, json);
+        assertEquals(1, shell.run("stats --bogus"));
+    }
+
+    @Test
+    void statsJsonIsWrittenOnExit() throws IOException, InterruptedException {
+        Files.writeString(dir.resolve("script.txt"), "echo one\necho two\n");
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "Terminal",
+                "--stats-json", "stats.json", "-f", "script.txt")
+                .directory(dir.toFile()).redirectErrorStream(true).start();
+        process.getInputStream().readAllBytes();
+        assertEquals(0, process.waitFor());
+        String json = Files.readString(dir.resolve("stats.json"));
+        assertTrue(json.startsWith("{\"commands\":{\"echo\":{\"invocations\":2,\"errors\":0,"), json);
+    }
+}
@@ -0,0 +1,64 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Generated inputs and tree comparisons shared by the tests.
+final class TestFiles {
+    private TestFiles() {
+    }
+
+    static byte[] random(long seed, int size) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    // A small tree of binary files: incompressible, compressible, empty, a
+    // repeated block and two identical copies, nested two levels deep.
+    static Path binaryTree(Path root) throws IOException {
+        Files.createDirectories(root.resolve("nested/deeper"));
+        Files.write(root.resolve("random.bin"), random(1, 300_000));
+        byte[] text = "0123456789abcdef\n".repeat(20_000).getBytes(StandardCharsets.US_ASCII);
+        Files.write(root.resolve("nested/text.txt"), text);
+        Files.write(root.resolve("nested/empty.bin"), new byte[0]);
+        byte[] block = random(2, 70_000);
+        byte[] repeated = new byte[block.length * 3];
+        for (int i = 0; i < 3; i++) {
+            System.arraycopy(block, 0, repeated, i * block.length, block.length);
+        }
+        Files.write(root.resolve("nested/deeper/repeated.bin"), repeated);
+        Files.write(root.resolve("nested/deeper/copy.bin"), random(1, 300_000));
+        Files.write(root.resolve("zeros.bin"), new byte[1 << 20]);
+        return root;
+    }
+
+    static List<String> files(Path root) throws IOException {
+        try (Stream<Path> walk = Files.walk(root)) {
+            return walk.filter(Files::isRegularFile)
+                    .map(file -> root.relativize(file).toString().replace('\\', '/'))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    static void assertSameTree(Path expected, Path actual) throws IOException {
+        List<String> names = files(expected);
+        assertEquals(names, files(actual));
+        names.forEach(name -> {
+            try {
+                assertArrayEquals(Files.readAllBytes(expected.resolve(name)), Files.readAllBytes(actual.resolve(name)), name);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+}
@@ -0,0 +1,47 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+// A terminal over a test directory whose output is captured, for driving
+// commands the way they are typed.
+final class TestShell {
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private final Terminal terminal;
+
+    TestShell(Path dir) {
+        this(dir, InputStream.nullInputStream());
+    }
+
+    TestShell(Path dir, InputStream in) {
+        terminal = new Terminal(dir, in, new PrintStream(output, true, StandardCharsets.UTF_8));
+    }
+
+    // Keeps the state of cp -u and dupes in stateDir instead of the default.
+    TestShell withStateIn(Path stateDir) {
+        terminal.setStateDirectory(stateDir);
+        return this;
+    }
+
+    // Runs a command line and returns its exit status; its output is kept
+    // for output().
+    int run(String line) {
+        output.reset();
+        return terminal.execute(line);
+    }
+
+    // Runs a command line that must succeed and returns what it printed.
+    String ok(String line) {
+        int status = run(line);
+        String printed = output();
+        assertEquals(0, status, () -> line + " printed:\n" + printed);
+        return printed;
+    }
+
+    String output() {
+        return output.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,64 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TreeRemoverTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void removesATree() throws IOException {
+        TestFiles.binaryTree(dir.resolve("data"));
+        List<String> reports = new CopyOnWriteArrayList<>();
+        TreeRemover remover = new TreeRemover(reports::add);
+        new TreeWalker(remover, null, false, () -> false).walk(dir.resolve("data"));
+        assertEquals(List.of(), reports);
+        assertFalse(Files.exists(dir.resolve("data")));
+        assertEquals(6, remover.files.sum());
+        assertEquals(3, remover.directories.sum());
+    }
+
+    // Tests may run as root, who can list any directory, so "unreadable"
+    // is a directory whose listing the visitor refuses.
+    @Test
+    void unreadableDirectoryIsReportedAndCountedOnce() throws IOException {
+        TestFiles.binaryTree(dir.resolve("data"));
+        Path locked = dir.resolve("data/nested/deeper");
+        List<String> reports = new CopyOnWriteArrayList<>();
+        TreeRemover remover = new TreeRemover(reports::add) {
+            @Override
+            public boolean enterDirectory(Path path, BasicFileAttributes attrs) throws IOException {
+                if (path.equals(locked)) {
+                    throw new AccessDeniedException(path.toString());
+                }
+                return true;
+            }
+        };
+        new TreeWalker(remover, null, false, () -> false).walk(dir.resolve("data"));
+        assertEquals(List.of("rm: cannot remove '" + locked + "': Permission denied"), reports);
+        assertEquals(1, remover.errors.sum());
+        assertTrue(Files.exists(locked.resolve("repeated.bin")));
+        assertFalse(Files.exists(dir.resolve("data/random.bin")));
+        assertFalse(Files.exists(dir.resolve("data/nested/text.txt")));
+    }
+
+    @Test
+    void rmReportsItsCounts() throws IOException {
+        TestFiles.binaryTree(dir.resolve("data"));
+        TestShell shell = new TestShell(dir);
+        assertEquals("rm: removed 6 files, 3 directories\n", shell.ok("rm -r data"));
+        assertEquals(1, shell.run("rm data"));
+        assertEquals(0, shell.run("rm -f data"));
+    }
+}
@@ -0,0 +1,74 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class WordCountTest {
+    private static final int CHUNK = WordCount.CHUNK_SIZE;
+    private static byte[] text;
+
+    @TempDir
+    Path dir;
+
+    // Random words and blanks, with a word written across every chunk edge.
+    @BeforeAll
+    static void generate() {
+        text = new byte[3 * CHUNK + 12345];
+        Random random = new Random(42);
+        byte[] blanks = {' ', ' ', ' ', '\t', '\n', '\n', '\r'};
+        for (int i = 0; i < text.length; i++) {
+            text[i] = random.nextInt(6) == 0 ? blanks[random.nextInt(blanks.length)]
+                    : (byte) ('a' + random.nextInt(26));
+        }
+        for (int edge = CHUNK; edge < text.length; edge += CHUNK) {
+            Arrays.fill(text, edge - 3, edge + 3, (byte) 'x');
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, CHUNK - 1, CHUNK, CHUNK + 1, 2 * CHUNK, 3 * CHUNK + 12345})
+    void parallelCountMatchesSequentialCount(int size) throws IOException {
+        Path file = dir.resolve("text");
+        Files.write(file, Arrays.copyOf(text, size));
+        WordCount expected;
+        try (InputStream in = new ByteArrayInputStream(text, 0, size)) {
+            expected = WordCount.count(in);
+        }
+        WordCount actual = WordCount.count(file);
+        assertEquals(expected.lines, actual.lines, "lines");
+        assertEquals(expected.words, actual.words, "words");
+        assertEquals(size, actual.bytes, "bytes");
+    }
+
+    @Test
+    void countsAnUnterminatedLastLine() throws IOException {
+        Path file = dir.resolve("short");
+        Files.writeString(file, "hello world\n  foo");
+        WordCount counts = WordCount.count(file);
+        assertEquals(2, counts.lines);
+        assertEquals(3, counts.words);
+        assertEquals(17, counts.bytes);
+    }
+
+    @Test
+    void emptyFile() throws IOException {
+        Path file = Files.write(dir.resolve("empty"), new byte[0]);
+        WordCount counts = WordCount.count(file);
+        assertEquals(0, counts.lines);
+        assertEquals(0, counts.words);
+        assertEquals(0, counts.bytes);
+        assertEquals(0, WordCount.count(new ByteArrayInputStream("".getBytes(StandardCharsets.US_ASCII))).bytes);
+    }
+}
@@ -0,0 +1,154 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ZipTest {
+    @TempDir
+    Path dir;
+
+    // Beyond the binary tree: enough small files for several batches, one
+    // too big to compress in memory, and one that is stored as is.
+    private Path sources() throws IOException {
+        Path data = TestFiles.binaryTree(dir.resolve("data"));
+        Files.createDirectories(data.resolve("small"));
+        for (int i = 0; i < ParallelZip.SMALL_ENTRY_BATCH + 44; i++) {
+            Files.write(data.resolve("small/" + i + ".txt"), ("file " + i + "\n").repeat(i).getBytes());
+        }
+        Files.write(data.resolve("big.bin"), TestFiles.random(3, (int) ParallelZip.IN_MEMORY_LIMIT + 12345));
+        Files.write(data.resolve("photo.jpg"), TestFiles.random(4, 100_000));
+        return data;
+    }
+
+    @Test
+    void zipThenVerifiedUnzipRestoresBinaryFiles() throws IOException {
+        Path data = sources();
+        TestShell shell = new TestShell(dir);
+        shell.ok("zip -r t.zip data");
+        assertTrue(shell.ok("unzip --verify t.zip -d out").contains("verified"));
+        TestFiles.assertSameTree(data, dir.resolve("out/data"));
+    }
+
+    // The JDK's reader must agree with our writer, not just our reader.
+    @Test
+    void archiveReadsBackWithZipFile() throws IOException {
+        Path data = sources();
+        new TestShell(dir).ok("zip -r t.zip data");
+        try (ZipFile zip = new ZipFile(dir.resolve("t.zip").toFile())) {
+            int files = 0;
+            for (ZipEntry entry : zip.stream().toList()) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                files++;
+                try (InputStream in = zip.getInputStream(entry)) {
+                    assertArrayEquals(Files.readAllBytes(dir.resolve(entry.getName())), in.readAllBytes(), entry.getName());
+                }
+            }
+            assertEquals(TestFiles.files(data).size(), files);
+            assertEquals(ZipEntry.STORED, zip.getEntry("data/photo.jpg").getMethod());
+        }
+    }
+
+    @Test
+    void unzipExtractsOnlyMatchingEntries() throws IOException {
+        sources();
+        TestShell shell = new TestShell(dir);
+        shell.ok("zip -r t.zip data");
+        shell.ok("unzip t.zip -d out *.bin");
+        assertEquals(TestFiles.files(dir.resolve("data")).stream().filter(name -> name.endsWith(".bin")).toList(),
+                TestFiles.files(dir.resolve("out/data")));
+    }
+
+    // Sizes are taken when the files are collected; files that grow or
+    // shrink before they are compressed must be recorded as they were read.
+    @Test
+    void headersRecordTheBytesActuallyRead() throws IOException {
+        Path grown = Files.write(dir.resolve("grown.txt"), "grown ".repeat(1000).getBytes());
+        Path shrunk = Files.write(dir.resolve("shrunk.bin"), TestFiles.random(6, 1000));
+        Path big = Files.write(dir.resolve("big.bin"), TestFiles.random(7, (int) ParallelZip.IN_MEMORY_LIMIT + 100));
+        List<ParallelZip.Source> sources = List.of(
+                new ParallelZip.Source(grown, "grown.txt", 10),
+                new ParallelZip.Source(shrunk, "shrunk.bin", 50_000),
+                new ParallelZip.Source(big, "big.bin", ParallelZip.IN_MEMORY_LIMIT + 1));
+        assertEquals(0, ParallelZip.write(dir.resolve("t.zip"), sources, System.err, () -> false));
+        try (ZipFile zip = new ZipFile(dir.resolve("t.zip").toFile())) {
+            for (ParallelZip.Source source : sources) {
+                ZipEntry entry = zip.getEntry(source.name);
+                assertEquals(Files.size(source.file), entry.getSize(), source.name);
+                try (InputStream in = zip.getInputStream(entry)) {
+                    assertArrayEquals(Files.readAllBytes(source.file), in.readAllBytes(), source.name);
+                }
+            }
+        }
+        TestShell shell = new TestShell(dir);
+        assertTrue(shell.ok("unzip --verify t.zip -d out").contains("verified 3 entries"));
+    }
+
+    @Test
+    void entriesOutsideTheDestinationAreSkipped() throws IOException {
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(dir.resolve("t.zip")))) {
+            for (String name : new String[]{"../evil.txt", "ok/a.txt", "ok/../../evil2.txt"}) {
+                zip.putNextEntry(new ZipEntry(name));
+                zip.write(name.getBytes());
+                zip.closeEntry();
+            }
+        }
+        TestShell shell = new TestShell(dir);
+        assertEquals(1, shell.run("unzip t.zip -d out"));
+        String output = shell.output();
+        assertTrue(output.contains("unzip: skipping suspicious entry: ../evil.txt\n")
+                && output.contains("unzip: skipping suspicious entry: ok/../../evil2.txt\n"), output);
+        assertEquals(List.of("out/ok/a.txt", "t.zip"), TestFiles.files(dir));
+        assertEquals("ok/a.txt", Files.readString(dir.resolve("out/ok/a.txt")));
+    }
+
+    @Test
+    void unmatchedPatternsAreReported() throws IOException {
+        sources();
+        TestShell shell = new TestShell(dir);
+        shell.ok("zip -r t.zip data");
+        assertEquals(1, shell.run("unzip t.zip -d out *.jpg *.none"));
+        assertTrue(shell.output().contains("unzip: caution: filename not matched: *.none\n"), shell.output());
+        assertEquals(List.of("data/photo.jpg"), TestFiles.files(dir.resolve("out")));
+    }
+
+    @Test
+    void corruptedEntryFailsVerification() throws IOException {
+        Path data = dir.resolve("data");
+        Files.createDirectories(data);
+        Files.write(data.resolve("a.jpg"), TestFiles.random(5, 10_000));
+        TestShell shell = new TestShell(dir);
+        shell.ok("zip -r t.zip data");
+        byte[] archive = Files.readAllBytes(dir.resolve("t.zip"));
+        // a.jpg is stored, so its bytes follow its local header directly.
+        int at = indexOf(archive, Files.readAllBytes(data.resolve("a.jpg")));
+        archive[at + 5000] ^= 1;
+        Files.write(dir.resolve("t.zip"), archive);
+        assertEquals(1, shell.run("unzip --verify t.zip -d out"));
+    }
+
+    private static int indexOf(byte[] haystack, byte[] needle) {
+        outer:
+        for (int i = 0; i + needle.length <= haystack.length; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (haystack[i + j] != needle[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        throw new AssertionError("not found");
+    }
+}